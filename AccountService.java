@@ -1,19 +1,25 @@
-package uk.tw.energy.service;
-
-import org.springframework.stereotype.Service;
-
-import java.util.Map;
-
-@Service
-public class AccountService {
-
-    private final Map<String, String> smartMeterToPricePlanAccounts;
-
-    public AccountService(Map<String, String> smartMeterToPricePlanAccounts) {
-        this.smartMeterToPricePlanAccounts = smartMeterToPricePlanAccounts;
-    }
-
-    public String getPricePlanIdForSmartMeterId(String smartMeterId) {
-        return smartMeterToPricePlanAccounts.get(smartMeterId);
-    }
-}
+package uk.tw.energy.service;
+
+import org.springframework.stereotype.Service;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+@Service
+public class AccountService {
+
+    private final Map<String, String> smartMeterToPricePlanAccounts;
+
+    public AccountService(Map<String, String> smartMeterToPricePlanAccounts) {
+        this.smartMeterToPricePlanAccounts = smartMeterToPricePlanAccounts;
+    }
+
+    public String getPricePlanIdForSmartMeterId(String smartMeterId) {
+        return smartMeterToPricePlanAccounts.get(smartMeterId);
+    }
+
+    public Set<String> getSmartMeterIds() {
+        return Collections.unmodifiableSet(smartMeterToPricePlanAccounts.keySet());
+    }
+}
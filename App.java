@@ -1,12 +1,20 @@
-package uk.tw.energy;
-
-import org.springframework.boot.SpringApplication;
-import org.springframework.boot.autoconfigure.SpringBootApplication;
-
-@SpringBootApplication
-public class App {
-
-    public static void main(String[] args) {
-        SpringApplication.run(App.class);
-    }
-}
+package uk.tw.energy;
+
+import java.util.Map;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+@SpringBootApplication
+@EnableScheduling
+public class App {
+
+    public static void main(String[] args) {
+        SpringApplication application = new SpringApplication(App.class);
+        // serve the application's metrics from /actuator/metrics, and /actuator/prometheus when its registry is present
+        application.setDefaultProperties(Map.of("management.endpoints.web.exposure.include",
+                "health,info,metrics,prometheus"));
+        application.run(args);
+    }
+}
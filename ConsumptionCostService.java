@@ -1,107 +1,397 @@
-package uk.tw.energy.service;
-
-import java.math.BigDecimal;
-import java.math.RoundingMode;
-import java.time.Duration;
-import java.time.Instant;
-import java.time.LocalDateTime;
-import java.time.ZoneOffset;
-import java.util.Comparator;
-import java.util.List;
-import java.util.Map;
-import java.util.Optional;
-import java.util.stream.Collectors;
-
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-import org.springframework.stereotype.Service;
-
-import uk.tw.energy.domain.ElectricityReading;
-import uk.tw.energy.domain.PricePlan;
-import uk.tw.energy.exceptions.NoReadingsException;
-
-/**
- * This service class provides functionality of calculating consumptions cost for different plans
- */
-@Service
-public class ConsumptionCostService {
-	private static final Logger LOGGER = LoggerFactory.getLogger(ConsumptionCostService.class);
-	
-	private final List<PricePlan> pricePlans;
-	private final MeterReadingService meterReadingService;
-	
-	public ConsumptionCostService(List<PricePlan> pricePlans, MeterReadingService meterReadingService) {
-		this.pricePlans = pricePlans;
-		this.meterReadingService = meterReadingService;
-	}
-
-	/**
-	 * Finds cost for each plan using the input electricity readings. If readings
-	 * are not present an exception is raised.
-	 * 
-	 * @param smartMeterId - meterId of the user.
-	 * @return Map of plans and computed cost for each plan.
-	 * @throws NoReadingsException exception if user has no meter readings currently
-	 *                             available
-	 */
-	public Map<String, BigDecimal> computeConsumptionCostPerPlan(String smartMeterId) throws NoReadingsException {
-		Optional<List<ElectricityReading>> electricityReadings = meterReadingService.getReadings(smartMeterId);
-		if (!electricityReadings.isPresent()) {
-			LOGGER.error("Cannot compute cost per plan as no readings were found for meter id "+smartMeterId);
-			throw new NoReadingsException(String.format("No readings were found for meter id %s" , smartMeterId));
-		}
-		Map<String, BigDecimal> consumptionCostPerPlan = pricePlans.stream()
-				.collect(Collectors.toMap(PricePlan::getPlanName, plan -> calculateCost(electricityReadings.get(), plan)));
-		return consumptionCostPerPlan;
-	}
-
-	/**
-	 * Calculate average cost for a electricity plan.
-	 * Formula = Total Cost/Total Time Elapsed
-	 * 
-	 * @param electricityReadings - readings of the user
-	 * @param pricePlan           - plan for which we have to calculate cost
-	 * @return - cost for that plan
-	 */
-	private BigDecimal calculateCost(List<ElectricityReading> electricityReadings, PricePlan pricePlan) {
-		BigDecimal totalCost = calculateTotalCost(electricityReadings, pricePlan);
-		BigDecimal timeElapsed = calculateTimeElapsed(electricityReadings);
-
-		BigDecimal averagedCost = totalCost.divide(timeElapsed, RoundingMode.HALF_UP);
-		return averagedCost;
-	}
-
-	/**
-	 * Calculate total cost of all the electricity readings for that price plan
-	 * 
-	 * @param electricityReadings - electricity readings of the user.
-	 * @param pricePlan - one of the available price plan
-	 * @return average of all the electricity readings
-	 */
-	private BigDecimal calculateTotalCost(List<ElectricityReading> electricityReadings, PricePlan pricePlan) {
-		BigDecimal totalCostForPlan = electricityReadings.stream()
-					.map(electricityReading ->  electricityReading.reading().multiply(pricePlan.getPrice(findLocalDateTimeForReading(electricityReading.time()))))
-					.reduce(BigDecimal.ZERO, (reading, accumulator) -> reading.add(accumulator));
-		return totalCostForPlan;
-	}
-
-	/**
-	 * Calculates the total duration for which readings are recorded. endTime - last
-	 * time reading was recorded startTime - first time reading was recorded
-	 * 
-	 * @param electricityReadings - electricity readings for the user.
-	 * @return total time in gathering these readings
-	 */
-	private BigDecimal calculateTimeElapsed(List<ElectricityReading> electricityReadings) {
-		ElectricityReading startTime = electricityReadings.stream().min(Comparator.comparing(ElectricityReading::time))
-				.get();
-		ElectricityReading endTime = electricityReadings.stream().max(Comparator.comparing(ElectricityReading::time)).get();
-
-		return BigDecimal.valueOf(Duration.between(startTime.time(), endTime.time()).getSeconds() / 3600.0);
-	}
-	
-	private LocalDateTime findLocalDateTimeForReading(Instant time) {
-			return LocalDateTime.ofInstant(time, ZoneOffset.systemDefault());
-	}
-
-}
+package uk.tw.energy.service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.stream.IntStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import uk.tw.energy.domain.HourOfWeek;
+import uk.tw.energy.domain.PricePlan;
+import uk.tw.energy.exceptions.NoReadingsException;
+import uk.tw.energy.store.FixedPointReadings;
+
+/**
+ * This service class provides functionality of calculating consumptions cost for different plans.
+ * Costs are derived from the hour-of-week consumption aggregates of {@link ConsumptionAggregateService}:
+ * a plan's total cost is the dot product of the consumption per slot and the plan's rate per slot,
+ * so a calculation costs O(plans x 168) however many readings the meter has.
+ * With {@code energy.cost.arithmetic=FIXED_POINT} the dot product and division run on scaled
+ * longs (see {@link FixedPointCostCalculator}), producing the same results without allocating
+ * a BigDecimal per slot.
+ * Results are kept in a {@link ConsumptionCostCache} until the meter receives readings,
+ * so repeated requests for a meter that has not uploaded are a cache lookup.
+ * The cheapest few plans are selected with a bounded heap, skipping plans whose lowest rate already
+ * prices them out, so a recommendation does not price the whole catalogue.
+ * Each pricing can be recorded per meter as a {@link ConsumptionCostEvent} with Flight Recorder.
+ */
+@Service
+public class ConsumptionCostService {
+	private static final Logger LOGGER = LoggerFactory.getLogger(ConsumptionCostService.class);
+	// cheapest first, ties in catalogue order
+	private static final Comparator<RankedPlan> RANKING = Comparator.comparing(RankedPlan::cost)
+			.thenComparingInt(RankedPlan::plan);
+	
+	private final List<PricePlan> pricePlans;
+	private final ConsumptionAggregateService consumptionAggregateService;
+	private final CostArithmetic costArithmetic;
+	private final FixedPointCostCalculator fixedPointCostCalculator;
+	private final ConsumptionCostCache consumptionCostCache;
+	// lowest and highest rate of each plan, and the plans by increasing lowest rate
+	private final BigDecimal[] minRates;
+	private final BigDecimal[] maxRates;
+	private final int[] plansByMinRate;
+	// scale of each plan's rate per slot, and the lowest of them
+	private final int[][] rateScales;
+	private final int[] minRateScales;
+	private final Timer costPerPlanTimer;
+	private final DistributionSummary readingsPerPricedMeter;
+	
+	public ConsumptionCostService(List<PricePlan> pricePlans, ConsumptionAggregateService consumptionAggregateService,
+			ConsumptionCostCache consumptionCostCache,
+			@Value("${energy.cost.arithmetic:DECIMAL}") CostArithmetic costArithmetic, MeterRegistry meterRegistry) {
+		this.pricePlans = pricePlans;
+		this.consumptionAggregateService = consumptionAggregateService;
+		this.consumptionCostCache = consumptionCostCache;
+		this.costArithmetic = costArithmetic;
+		this.fixedPointCostCalculator = new FixedPointCostCalculator(pricePlans);
+		this.minRates = new BigDecimal[pricePlans.size()];
+		this.maxRates = new BigDecimal[pricePlans.size()];
+		this.rateScales = new int[pricePlans.size()][HourOfWeek.HOURS_PER_WEEK];
+		this.minRateScales = new int[pricePlans.size()];
+		for (int plan = 0; plan < pricePlans.size(); plan++) {
+			PricePlan pricePlan = pricePlans.get(plan);
+			minRateScales[plan] = Integer.MAX_VALUE;
+			for (int slot = 0; slot < HourOfWeek.HOURS_PER_WEEK; slot++) {
+				BigDecimal rate = pricePlan.getPriceForHourOfWeek(slot);
+				minRates[plan] = minRates[plan] == null ? rate : minRates[plan].min(rate);
+				maxRates[plan] = maxRates[plan] == null ? rate : maxRates[plan].max(rate);
+				rateScales[plan][slot] = rate.scale();
+				minRateScales[plan] = Math.min(minRateScales[plan], rate.scale());
+			}
+		}
+		this.plansByMinRate = IntStream.range(0, pricePlans.size()).boxed()
+				.sorted(Comparator.comparing(plan -> minRates[plan])).mapToInt(Integer::intValue).toArray();
+		this.costPerPlanTimer = Timer.builder("energy.cost.compute")
+				.description("Time to find the cost of every plan for a meter, cached or not")
+				.publishPercentiles(0.5, 0.99, 0.999)
+				.publishPercentileHistogram()
+				.register(meterRegistry);
+		this.readingsPerPricedMeter = DistributionSummary.builder("energy.cost.meter.readings")
+				.baseUnit("readings")
+				.description("Readings of each meter priced")
+				.publishPercentiles(0.5, 0.99, 0.999)
+				.publishPercentileHistogram()
+				.register(meterRegistry);
+		Gauge.builder("energy.cost.plans", pricePlans, List::size)
+				.description("Plans every meter is priced against")
+				.register(meterRegistry);
+		LOGGER.info("Pricing consumption with {} arithmetic", costArithmetic);
+	}
+
+	/**
+	 * Finds cost for each plan using the input electricity readings. If readings
+	 * are not present an exception is raised.
+	 * 
+	 * @param smartMeterId - meterId of the user.
+	 * @return Map of plans and computed cost for each plan, not modifiable.
+	 * @throws NoReadingsException exception if user has no meter readings currently
+	 *                             available
+	 */
+	public Map<String, BigDecimal> computeConsumptionCostPerPlan(String smartMeterId) throws NoReadingsException {
+		ConsumptionCostEvent event = beginEvent("costPerPlan", smartMeterId);
+		long allocatedBefore = event.isEnabled() ? ThreadAllocation.allocatedBytes() : -1;
+		try {
+			return costPerPlanTimer.record(() -> {
+				MeterConsumptionAggregate aggregate = getAggregate(smartMeterId);
+				event.readingCount = aggregate.readingCount();
+				Map<String, BigDecimal> consumptionCostPerPlan = consumptionCostCache.get(smartMeterId,
+						aggregate.readingCount());
+				if (consumptionCostPerPlan == null) {
+					consumptionCostPerPlan = computeAndCacheCostPerPlan(smartMeterId, aggregate);
+					event.plansEvaluated = pricePlans.size();
+				}
+				return consumptionCostPerPlan;
+			});
+		} finally {
+			commitEvent(event, allocatedBefore);
+		}
+	}
+
+	/**
+	 * Finds the cheapest plans for a meter, cheapest first. Costs cached for the
+	 * meter are selected from with a heap of limit entries. Otherwise plans are
+	 * priced in order of their lowest rate, and a plan is skipped without pricing
+	 * when its lowest rates applied to the meter's consumption already cost more than
+	 * the limit-th cheapest plan so far. Plans of equal cost keep their catalogue order.
+	 * 
+	 * @param smartMeterId - meterId of the user.
+	 * @param limit        - maximum number of plans to return
+	 * @return up to limit plans with their cost, cheapest first
+	 * @throws NoReadingsException exception if user has no meter readings currently
+	 *                             available
+	 */
+	public List<Map.Entry<String, BigDecimal>> findCheapestPlans(String smartMeterId, int limit)
+			throws NoReadingsException {
+		ConsumptionCostEvent event = beginEvent("cheapestPlans", smartMeterId);
+		long allocatedBefore = event.isEnabled() ? ThreadAllocation.allocatedBytes() : -1;
+		try {
+			return findCheapestPlans(smartMeterId, limit, event);
+		} finally {
+			commitEvent(event, allocatedBefore);
+		}
+	}
+
+	private List<Map.Entry<String, BigDecimal>> findCheapestPlans(String smartMeterId, int limit,
+			ConsumptionCostEvent event) throws NoReadingsException {
+		MeterConsumptionAggregate aggregate = getAggregate(smartMeterId);
+		event.readingCount = aggregate.readingCount();
+		int count = Math.min(limit, pricePlans.size());
+		if (count <= 0) {
+			return List.of();
+		}
+		Map<String, BigDecimal> consumptionCostPerPlan = consumptionCostCache.get(smartMeterId, aggregate.readingCount());
+		if (consumptionCostPerPlan == null && count == pricePlans.size()) {
+			consumptionCostPerPlan = computeAndCacheCostPerPlan(smartMeterId, aggregate);
+			event.plansEvaluated = pricePlans.size();
+		}
+		// the most expensive of the cheapest plans found so far is at the head
+		PriorityQueue<RankedPlan> cheapest = new PriorityQueue<>(count + 1, RANKING.reversed());
+		if (consumptionCostPerPlan != null) {
+			for (int plan = 0; plan < pricePlans.size(); plan++) {
+				offer(cheapest, count, new RankedPlan(plan, consumptionCostPerPlan.get(pricePlans.get(plan).getPlanName())));
+			}
+		} else {
+			event.plansEvaluated = selectCheapestPlans(cheapest, count, aggregate);
+		}
+		List<Map.Entry<String, BigDecimal>> cheapestPlans = new ArrayList<>(cheapest.size());
+		while (!cheapest.isEmpty()) {
+			RankedPlan rankedPlan = cheapest.poll();
+			cheapestPlans.add(Map.entry(pricePlans.get(rankedPlan.plan()).getPlanName(), rankedPlan.cost()));
+		}
+		Collections.reverse(cheapestPlans);
+		return cheapestPlans;
+	}
+
+	private MeterConsumptionAggregate getAggregate(String smartMeterId) throws NoReadingsException {
+		Optional<MeterConsumptionAggregate> aggregate = consumptionAggregateService.getAggregate(smartMeterId);
+		if (!aggregate.isPresent()) {
+			LOGGER.error("Cannot compute cost per plan as no readings were found for meter id "+smartMeterId);
+			throw new NoReadingsException(String.format("No readings were found for meter id %s" , smartMeterId));
+		}
+		readingsPerPricedMeter.record(aggregate.get().readingCount());
+		return aggregate.get();
+	}
+
+	private static ConsumptionCostEvent beginEvent(String operation, String smartMeterId) {
+		ConsumptionCostEvent event = new ConsumptionCostEvent();
+		event.operation = operation;
+		event.smartMeterId = smartMeterId;
+		event.begin();
+		return event;
+	}
+
+	/**
+	 * Commits an event if a recording has it enabled and it took longer than the
+	 * recording's threshold. Allocation is only measured then.
+	 */
+	private static void commitEvent(ConsumptionCostEvent event, long allocatedBefore) {
+		event.end();
+		if (event.shouldCommit()) {
+			event.allocatedBytes = ThreadAllocation.allocatedSince(allocatedBefore);
+			event.commit();
+		}
+	}
+
+	private Map<String, BigDecimal> computeAndCacheCostPerPlan(String smartMeterId, MeterConsumptionAggregate aggregate) {
+		BigDecimal timeElapsed = calculateTimeElapsed(aggregate);
+		Map<String, BigDecimal> consumptionCostPerPlan = new HashMap<>();
+		for (int plan = 0; plan < pricePlans.size(); plan++) {
+			consumptionCostPerPlan.put(pricePlans.get(plan).getPlanName(), calculateCost(plan, aggregate, timeElapsed));
+		}
+		consumptionCostPerPlan = Collections.unmodifiableMap(consumptionCostPerPlan);
+		consumptionCostCache.put(smartMeterId, aggregate.readingCount(), consumptionCostPerPlan);
+		return consumptionCostPerPlan;
+	}
+
+	/**
+	 * Prices plans into a heap of the count cheapest. A plan's total cost is at least
+	 * its lowest rate times the consumption of slots with positive consumption plus its
+	 * highest rate times the consumption of slots with negative consumption. Once the
+	 * heap is full, a plan whose bound exceeds the head's cost by more than the
+	 * rounding of the plan's cost cannot enter the heap and is not priced. A plan's
+	 * cost has at least the scale of the most precise reading plus the plan's lowest
+	 * rate scale, so it is rounded to within half a unit of that scale.
+	 * 
+	 * @return number of plans priced
+	 */
+	private int selectCheapestPlans(PriorityQueue<RankedPlan> cheapest, int count, MeterConsumptionAggregate aggregate) {
+		BigDecimal timeElapsed = calculateTimeElapsed(aggregate);
+		BigDecimal[] consumptionBySign = consumptionBySign(aggregate);
+		BigDecimal positive = consumptionBySign[0];
+		BigDecimal negative = consumptionBySign[1];
+		int maxReadingScale = maxReadingScale(aggregate);
+		int pricedPlans = 0;
+		for (int plan : plansByMinRate) {
+			if (cheapest.size() == count) {
+				BigDecimal roundingMargin = BigDecimal.valueOf(5, Math.max(0, maxReadingScale + minRateScales[plan]) + 1);
+				// total cost at or above which the plan cannot enter the full heap
+				BigDecimal pruneAtTotalCost = cheapest.peek().cost().add(roundingMargin).multiply(timeElapsed);
+				if (minRates[plan].multiply(positive).add(maxRates[plan].multiply(negative))
+						.compareTo(pruneAtTotalCost) >= 0) {
+					continue;
+				}
+			}
+			pricedPlans++;
+			offer(cheapest, count, new RankedPlan(plan, calculateCost(plan, aggregate, timeElapsed)));
+		}
+		return pricedPlans;
+	}
+
+	/**
+	 * Sums the consumption of the slots with positive and with negative consumption,
+	 * on longs unless a sum does not fit one.
+	 * 
+	 * @return positive and negative consumption in kWh
+	 */
+	private static BigDecimal[] consumptionBySign(MeterConsumptionAggregate aggregate) {
+		if (aggregate.consumptionOverflow() == null) {
+			long positiveConsumption = 0;
+			long negativeConsumption = 0;
+			try {
+				for (long consumption : aggregate.consumptionByHourOfWeek()) {
+					if (consumption > 0) {
+						positiveConsumption = Math.addExact(positiveConsumption, consumption);
+					} else {
+						negativeConsumption = Math.addExact(negativeConsumption, consumption);
+					}
+				}
+				return new BigDecimal[] { FixedPointReadings.toBigDecimal(positiveConsumption),
+						FixedPointReadings.toBigDecimal(negativeConsumption) };
+			} catch (ArithmeticException overflow) {
+				// summed as decimals below
+			}
+		}
+		BigDecimal positive = BigDecimal.ZERO;
+		BigDecimal negative = BigDecimal.ZERO;
+		for (int slot = 0; slot < HourOfWeek.HOURS_PER_WEEK; slot++) {
+			BigDecimal consumption = aggregate.consumption(slot);
+			if (consumption.signum() > 0) {
+				positive = positive.add(consumption);
+			} else {
+				negative = negative.add(consumption);
+			}
+		}
+		return new BigDecimal[] { positive, negative };
+	}
+
+	/**
+	 * Adds a plan to a heap of the count cheapest plans if it is one of them.
+	 * 
+	 * @return true if the heap changed
+	 */
+	private static boolean offer(PriorityQueue<RankedPlan> cheapest, int count, RankedPlan candidate) {
+		if (cheapest.size() == count) {
+			if (RANKING.compare(candidate, cheapest.peek()) >= 0) {
+				return false;
+			}
+			cheapest.poll();
+		}
+		cheapest.add(candidate);
+		return true;
+	}
+
+	/**
+	 * Calculate average cost for a electricity plan.
+	 * Formula = Total Cost/Total Time Elapsed
+	 * 
+	 * @param plan        - index of the plan for which we have to calculate cost
+	 * @param aggregate   - consumption aggregate of the user
+	 * @param timeElapsed - hours between the first and last reading
+	 * @return - cost for that plan
+	 */
+	private BigDecimal calculateCost(int plan, MeterConsumptionAggregate aggregate, BigDecimal timeElapsed) {
+		int costScale = costScale(plan, aggregate);
+		if (costArithmetic == CostArithmetic.FIXED_POINT) {
+			BigDecimal averagedCost = fixedPointCostCalculator.calculateCost(plan, aggregate, timeElapsed, costScale);
+			if (averagedCost != null) {
+				return averagedCost;
+			}
+		}
+		BigDecimal totalCost = calculateTotalCost(aggregate, pricePlans.get(plan)).setScale(costScale);
+		BigDecimal averagedCost = totalCost.divide(timeElapsed, RoundingMode.HALF_UP);
+		return averagedCost;
+	}
+
+	/**
+	 * Calculate total cost of all the electricity readings for that price plan. Only
+	 * slots with readings contribute.
+	 * 
+	 * @param aggregate - consumption aggregate of the user.
+	 * @param pricePlan - one of the available price plan
+	 * @return total cost of the readings on the plan, with the scale of the readings as stored
+	 */
+	private BigDecimal calculateTotalCost(MeterConsumptionAggregate aggregate, PricePlan pricePlan) {
+		BigDecimal totalCostForPlan = BigDecimal.ZERO;
+		for (int slot = 0; slot < HourOfWeek.HOURS_PER_WEEK; slot++) {
+			if (aggregate.readingsByHourOfWeek()[slot] > 0) {
+				totalCostForPlan = totalCostForPlan.add(aggregate.consumption(slot).multiply(pricePlan.getPriceForHourOfWeek(slot)));
+			}
+		}
+		return totalCostForPlan;
+	}
+
+	/**
+	 * Finds the scale of summing reading x price over the individual readings, from
+	 * zero: the largest scale of the products, and at least zero. The total cost is
+	 * exact at that scale, and the averaged cost is rounded to it.
+	 */
+	private int costScale(int plan, MeterConsumptionAggregate aggregate) {
+		int costScale = 0;
+		for (int slot = 0; slot < HourOfWeek.HOURS_PER_WEEK; slot++) {
+			if (aggregate.readingsByHourOfWeek()[slot] > 0) {
+				costScale = Math.max(costScale, aggregate.maxScaleByHourOfWeek()[slot] + rateScales[plan][slot]);
+			}
+		}
+		return costScale;
+	}
+
+	private static int maxReadingScale(MeterConsumptionAggregate aggregate) {
+		int maxReadingScale = Byte.MIN_VALUE;
+		for (int slot = 0; slot < HourOfWeek.HOURS_PER_WEEK; slot++) {
+			if (aggregate.readingsByHourOfWeek()[slot] > 0) {
+				maxReadingScale = Math.max(maxReadingScale, aggregate.maxScaleByHourOfWeek()[slot]);
+			}
+		}
+		return maxReadingScale;
+	}
+
+	/**
+	 * Calculates the total duration for which readings are recorded. endTime - last
+	 * time reading was recorded startTime - first time reading was recorded
+	 * 
+	 * @param aggregate - consumption aggregate of the user.
+	 * @return total time in gathering these readings
+	 */
+	private BigDecimal calculateTimeElapsed(MeterConsumptionAggregate aggregate) {
+		return BigDecimal.valueOf(aggregate.secondsElapsed() / 3600.0);
+	}
+
+	private record RankedPlan(int plan, BigDecimal cost) {
+	}
+}
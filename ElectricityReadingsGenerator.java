@@ -1,30 +1,36 @@
-package uk.tw.energy.generator;
-
-import uk.tw.energy.domain.ElectricityReading;
-
-import java.math.BigDecimal;
-import java.math.RoundingMode;
-import java.time.Instant;
-import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.List;
-import java.util.Random;
-
-public class ElectricityReadingsGenerator {
-
-    public List<ElectricityReading> generate(int number) {
-        List<ElectricityReading> readings = new ArrayList<>();
-        Instant now = Instant.now();
-
-        Random readingRandomiser = new Random();
-        for (int i = 0; i < number; i++) {
-            double positiveRandomValue = Math.abs(readingRandomiser.nextGaussian());
-            BigDecimal randomReading = BigDecimal.valueOf(positiveRandomValue).setScale(4, RoundingMode.CEILING);
-            ElectricityReading electricityReading = new ElectricityReading(now.minusSeconds(i * 10), randomReading);
-            readings.add(electricityReading);
-        }
-
-        readings.sort(Comparator.comparing(ElectricityReading::time));
-        return readings;
-    }
-}
+package uk.tw.energy.generator;
+
+import uk.tw.energy.domain.ElectricityReading;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+public class ElectricityReadingsGenerator {
+
+    public List<ElectricityReading> generate(int number) {
+        return generate(number, Instant.now().truncatedTo(ChronoUnit.SECONDS), new Random());
+    }
+
+    /**
+     * Generates readings 10 seconds apart, the latest at {@code now}. A seeded
+     * randomiser gives the same readings every time, e.g. for benchmark datasets.
+     */
+    public List<ElectricityReading> generate(int number, Instant now, Random readingRandomiser) {
+        List<ElectricityReading> readings = new ArrayList<>(number);
+        for (int i = 0; i < number; i++) {
+            double positiveRandomValue = Math.abs(readingRandomiser.nextGaussian());
+            BigDecimal randomReading = BigDecimal.valueOf(positiveRandomValue).setScale(4, RoundingMode.CEILING);
+            ElectricityReading electricityReading = new ElectricityReading(now.minusSeconds(i * 10), randomReading);
+            readings.add(electricityReading);
+        }
+
+        readings.sort(Comparator.comparing(ElectricityReading::time));
+        return readings;
+    }
+}
@@ -1,65 +1,79 @@
-package uk.tw.energy;
-
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
-import org.springframework.context.annotation.Bean;
-import org.springframework.context.annotation.Configuration;
-import org.springframework.context.annotation.Primary;
-import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
-import uk.tw.energy.domain.ElectricityReading;
-import uk.tw.energy.domain.PricePlan;
-import uk.tw.energy.generator.ElectricityReadingsGenerator;
-
-import java.math.BigDecimal;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-
-import static java.util.Collections.emptyList;
-
-@Configuration
-public class SeedingApplicationDataConfiguration {
-
-    private static final String MOST_EVIL_PRICE_PLAN_ID = "price-plan-0";
-    private static final String RENEWABLES_PRICE_PLAN_ID = "price-plan-1";
-    private static final String STANDARD_PRICE_PLAN_ID = "price-plan-2";
-
-    @Bean
-    public List<PricePlan> pricePlans() {
-        final List<PricePlan> pricePlans = new ArrayList<>();
-        pricePlans.add(new PricePlan(MOST_EVIL_PRICE_PLAN_ID, "Dr Evil's Dark Energy", BigDecimal.TEN, emptyList()));
-        pricePlans.add(new PricePlan(RENEWABLES_PRICE_PLAN_ID, "The Green Eco", BigDecimal.valueOf(2), emptyList()));
-        pricePlans.add(new PricePlan(STANDARD_PRICE_PLAN_ID, "Power for Everyone", BigDecimal.ONE, emptyList()));
-        return pricePlans;
-    }
-
-    @Bean
-    public Map<String, List<ElectricityReading>> perMeterElectricityReadings() {
-        final Map<String, List<ElectricityReading>> readings = new HashMap<>();
-        final ElectricityReadingsGenerator electricityReadingsGenerator = new ElectricityReadingsGenerator();
-        smartMeterToPricePlanAccounts()
-                .keySet()
-                .forEach(smartMeterId -> readings.put(smartMeterId, electricityReadingsGenerator.generate(20)));
-        return readings;
-    }
-
-    @Bean
-    public Map<String, String> smartMeterToPricePlanAccounts() {
-        final Map<String, String> smartMeterToPricePlanAccounts = new HashMap<>();
-        smartMeterToPricePlanAccounts.put("smart-meter-0", MOST_EVIL_PRICE_PLAN_ID);
-        smartMeterToPricePlanAccounts.put("smart-meter-1", RENEWABLES_PRICE_PLAN_ID);
-        smartMeterToPricePlanAccounts.put("smart-meter-2", MOST_EVIL_PRICE_PLAN_ID);
-        smartMeterToPricePlanAccounts.put("smart-meter-3", STANDARD_PRICE_PLAN_ID);
-        smartMeterToPricePlanAccounts.put("smart-meter-4", RENEWABLES_PRICE_PLAN_ID);
-        return smartMeterToPricePlanAccounts;
-    }
-
-    @Bean
-    @Primary
-    public ObjectMapper objectMapper(Jackson2ObjectMapperBuilder builder) {
-        ObjectMapper objectMapper = builder.createXmlMapper(false).build();
-        objectMapper.configure(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, false);
-        return objectMapper;
-    }
-}
+package uk.tw.energy;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import uk.tw.energy.domain.PricePlan;
+import uk.tw.energy.generator.ElectricityReadingsGenerator;
+import uk.tw.energy.store.ColdBlockStore;
+import uk.tw.energy.store.ColumnarMeterReadingStore;
+import uk.tw.energy.store.MeterReadingSnapshot;
+import uk.tw.energy.store.MeterReadingStore;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Collections.emptyList;
+
+@Configuration
+public class SeedingApplicationDataConfiguration {
+
+    private static final String MOST_EVIL_PRICE_PLAN_ID = "price-plan-0";
+    private static final String RENEWABLES_PRICE_PLAN_ID = "price-plan-1";
+    private static final String STANDARD_PRICE_PLAN_ID = "price-plan-2";
+
+    @Bean
+    public List<PricePlan> pricePlans() {
+        final List<PricePlan> pricePlans = new ArrayList<>();
+        pricePlans.add(new PricePlan(MOST_EVIL_PRICE_PLAN_ID, "Dr Evil's Dark Energy", BigDecimal.TEN, emptyList()));
+        pricePlans.add(new PricePlan(RENEWABLES_PRICE_PLAN_ID, "The Green Eco", BigDecimal.valueOf(2), emptyList()));
+        pricePlans.add(new PricePlan(STANDARD_PRICE_PLAN_ID, "Power for Everyone", BigDecimal.ONE, emptyList()));
+        return pricePlans;
+    }
+
+    /**
+     * Seeds random readings for the sample meters only when nothing is restored:
+     * with the write-ahead log enabled the store is rebuilt from the log instead,
+     * and readings seeded outside it would end up in the next snapshot.
+     */
+    @Bean
+    public MeterReadingStore perMeterElectricityReadings(MeterReadingSnapshot restoredSnapshot,
+                                                         ColdBlockStore coldBlockStore,
+                                                         @Value("${energy.wal.enabled:false}") boolean walEnabled) {
+        final MeterReadingStore readings = new ColumnarMeterReadingStore(restoredSnapshot, coldBlockStore);
+        if (walEnabled || !restoredSnapshot.series().isEmpty()) {
+            return readings;
+        }
+        final ElectricityReadingsGenerator electricityReadingsGenerator = new ElectricityReadingsGenerator();
+        smartMeterToPricePlanAccounts()
+                .keySet()
+                .forEach(smartMeterId -> readings.append(smartMeterId, electricityReadingsGenerator.generate(20)));
+        return readings;
+    }
+
+    @Bean
+    public Map<String, String> smartMeterToPricePlanAccounts() {
+        final Map<String, String> smartMeterToPricePlanAccounts = new HashMap<>();
+        smartMeterToPricePlanAccounts.put("smart-meter-0", MOST_EVIL_PRICE_PLAN_ID);
+        smartMeterToPricePlanAccounts.put("smart-meter-1", RENEWABLES_PRICE_PLAN_ID);
+        smartMeterToPricePlanAccounts.put("smart-meter-2", MOST_EVIL_PRICE_PLAN_ID);
+        smartMeterToPricePlanAccounts.put("smart-meter-3", STANDARD_PRICE_PLAN_ID);
+        smartMeterToPricePlanAccounts.put("smart-meter-4", RENEWABLES_PRICE_PLAN_ID);
+        return smartMeterToPricePlanAccounts;
+    }
+
+    @Bean
+    @Primary
+    public ObjectMapper objectMapper(Jackson2ObjectMapperBuilder builder) {
+        ObjectMapper objectMapper = builder.createXmlMapper(false).build();
+        objectMapper.configure(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, false);
+        return objectMapper;
+    }
+}
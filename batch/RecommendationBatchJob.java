@@ -0,0 +1,233 @@
+package uk.tw.energy.batch;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import uk.tw.energy.exceptions.NoReadingsException;
+import uk.tw.energy.service.AccountService;
+import uk.tw.energy.service.ConsumptionCostService;
+
+/**
+ * Writes the cheapest plans of every meter with an account to a newline delimited
+ * JSON file, one object per meter:
+ *
+ * <pre>
+ * {"smartMeterId":"smart-meter-0","pricePlanId":"price-plan-0","recommendations":[{"price-plan-2":1.23},...]}
+ * {"smartMeterId":"smart-meter-9","pricePlanId":"price-plan-1","error":"No readings were found for meter id smart-meter-9"}
+ * </pre>
+ *
+ * Meters are split across a fork/join pool and priced with
+ * {@link ConsumptionCostService#findCheapestPlans}. Each task writes its lines as
+ * one append, so lines are whole but not in meter order. The file is written next
+ * to the target and moved into place when complete. The job runs on
+ * {@code energy.recommendation.batch.cron} when {@code energy.recommendation.batch.enabled}
+ * is set, and logs its progress and throughput while it runs.
+ */
+@Service
+public class RecommendationBatchJob {
+	private static final Logger LOGGER = LoggerFactory.getLogger(RecommendationBatchJob.class);
+	// meters priced by one task before it writes its lines
+	private static final int METERS_PER_TASK = 256;
+	private static final long PROGRESS_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+	private final AccountService accountService;
+	private final ConsumptionCostService consumptionCostService;
+	private final ObjectMapper objectMapper;
+	private final boolean enabled;
+	private final Path path;
+	private final int limit;
+	private final int parallelism;
+
+	public RecommendationBatchJob(AccountService accountService, ConsumptionCostService consumptionCostService,
+			ObjectMapper objectMapper,
+			@Value("${energy.recommendation.batch.enabled:false}") boolean enabled,
+			@Value("${energy.recommendation.batch.path:data/recommendations.ndjson}") String path,
+			@Value("${energy.recommendation.batch.limit:3}") int limit,
+			@Value("${energy.recommendation.batch.parallelism:0}") int parallelism) {
+		this.accountService = accountService;
+		this.consumptionCostService = consumptionCostService;
+		this.objectMapper = objectMapper;
+		this.enabled = enabled;
+		this.path = Path.of(path);
+		this.limit = limit;
+		this.parallelism = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+	}
+
+	@Scheduled(cron = "${energy.recommendation.batch.cron:0 0 2 * * *}")
+	public void scheduledRun() throws IOException {
+		if (enabled) {
+			run();
+		}
+	}
+
+	/**
+	 * Recommends plans for every meter with an account.
+	 * 
+	 * @return counts of the run
+	 * @throws IOException - if the output cannot be written, a previous output is left untouched
+	 */
+	public RecommendationBatchResult run() throws IOException {
+		long start = System.nanoTime();
+		String[] smartMeterIds = accountService.getSmartMeterIds().toArray(new String[0]);
+		LOGGER.info("Recommending plans for {} meters with {} threads", smartMeterIds.length, parallelism);
+		Path directory = path.toAbsolutePath().getParent();
+		Files.createDirectories(directory);
+		Path temporary = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+			Run run = new Run(channel, smartMeterIds.length, start);
+			pool.invoke(new RecommendTask(run, smartMeterIds, 0, smartMeterIds.length));
+			channel.force(false);
+			Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			RecommendationBatchResult result = new RecommendationBatchResult(path, smartMeterIds.length,
+					smartMeterIds.length - run.failed.intValue(), run.failed.intValue(),
+					(System.nanoTime() - start) / 1_000_000);
+			LOGGER.info("Recommended plans for {} of {} meters to {} in {} ms, {} meters/s", result.recommended(),
+					result.meters(), path, result.elapsedMillis(), metersPerSecond(result.meters(), start));
+			return result;
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		} finally {
+			pool.shutdown();
+			Files.deleteIfExists(temporary);
+		}
+	}
+
+	private static long metersPerSecond(long meters, long start) {
+		return meters * TimeUnit.SECONDS.toNanos(1) / Math.max(1, System.nanoTime() - start);
+	}
+
+	/**
+	 * State shared by the tasks of one run.
+	 */
+	private static final class Run {
+		private final FileChannel channel;
+		private final int meters;
+		private final long start;
+		// guards the write position of the output
+		private final ReentrantLock writeLock = new ReentrantLock();
+		private final LongAdder completed = new LongAdder();
+		private final LongAdder failed = new LongAdder();
+		private final AtomicLong lastProgressNanos;
+
+		private Run(FileChannel channel, int meters, long start) {
+			this.channel = channel;
+			this.meters = meters;
+			this.start = start;
+			this.lastProgressNanos = new AtomicLong(start);
+		}
+
+		private void write(ByteBuffer lines, int lineCount) throws IOException {
+			writeLock.lock();
+			try {
+				while (lines.hasRemaining()) {
+					channel.write(lines);
+				}
+			} finally {
+				writeLock.unlock();
+			}
+			completed.add(lineCount);
+			long now = System.nanoTime();
+			long last = lastProgressNanos.get();
+			if (now - last >= PROGRESS_INTERVAL_NANOS && lastProgressNanos.compareAndSet(last, now)) {
+				long done = completed.sum();
+				LOGGER.info("Recommended plans for {} of {} meters, {} meters/s", done, meters,
+						metersPerSecond(done, start));
+			}
+		}
+	}
+
+	/**
+	 * Splits a range of meters in halves down to {@value #METERS_PER_TASK} meters,
+	 * then prices them and writes their lines.
+	 */
+	private final class RecommendTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final transient Run run;
+		private final String[] smartMeterIds;
+		private final int from;
+		private final int to;
+
+		private RecommendTask(Run run, String[] smartMeterIds, int from, int to) {
+			this.run = run;
+			this.smartMeterIds = smartMeterIds;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > METERS_PER_TASK) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new RecommendTask(run, smartMeterIds, from, middle),
+						new RecommendTask(run, smartMeterIds, middle, to));
+				return;
+			}
+			ByteArrayOutputStream lines = new ByteArrayOutputStream();
+			try {
+				for (int i = from; i < to; i++) {
+					writeLine(smartMeterIds[i], lines);
+				}
+				run.write(ByteBuffer.wrap(lines.toByteArray()), to - from);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+
+		private void writeLine(String smartMeterId, ByteArrayOutputStream lines) throws IOException {
+			try (JsonGenerator generator = objectMapper.getFactory().createGenerator(lines, JsonEncoding.UTF8)) {
+				generator.writeStartObject();
+				generator.writeStringField("smartMeterId", smartMeterId);
+				generator.writeStringField("pricePlanId", accountService.getPricePlanIdForSmartMeterId(smartMeterId));
+				try {
+					List<Map.Entry<String, BigDecimal>> recommendations = consumptionCostService
+							.findCheapestPlans(smartMeterId, limit);
+					generator.writeArrayFieldStart("recommendations");
+					for (Map.Entry<String, BigDecimal> recommendation : recommendations) {
+						generator.writeStartObject();
+						generator.writeNumberField(recommendation.getKey(), recommendation.getValue());
+						generator.writeEndObject();
+					}
+					generator.writeEndArray();
+				} catch (NoReadingsException e) {
+					run.failed.increment();
+					generator.writeStringField("error", e.getMessage());
+				} catch (ArithmeticException e) {
+					// a single reading time gives no elapsed time to average over
+					run.failed.increment();
+					generator.writeStringField("error",
+							String.format("Readings of meter id %s cannot be priced", smartMeterId));
+				}
+				generator.writeEndObject();
+			}
+			lines.write('\n');
+		}
+	}
+}
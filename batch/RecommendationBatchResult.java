@@ -0,0 +1,17 @@
+package uk.tw.energy.batch;
+
+import java.nio.file.Path;
+
+/**
+ * Outcome of one run of the {@link RecommendationBatchJob}.
+ * 
+ * @param output          - file the recommendations were written to
+ * @param meters          - meters with an account
+ * @param recommended     - meters a recommendation was written for
+ * @param failed          - meters without readings or whose readings cannot be priced,
+ *                          written with an error
+ * @param elapsedMillis   - duration of the run
+ */
+public record RecommendationBatchResult(Path output, int meters, int recommended, int failed,
+		long elapsedMillis) {
+}
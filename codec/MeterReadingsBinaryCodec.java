@@ -0,0 +1,137 @@
+package uk.tw.energy.codec;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Instant;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import uk.tw.energy.domain.MeterReadingsBatch;
+import uk.tw.energy.store.FixedPointReadings;
+
+/**
+ * Compact binary encoding of the readings of one meter:
+ * <pre>
+ * version      byte, currently 1
+ * meter number unsigned varint, N of smart-meter-N
+ * count        unsigned varint, number of readings
+ * per reading  zig-zag varint of the time delta to the previous reading
+ *              (to 0 for the first), in epoch seconds
+ *              zig-zag varint of the reading in 10^-4 kWh
+ * </pre>
+ * Readings taken at a fixed interval cost one byte for the time and one to three
+ * bytes for the value, against roughly 60 bytes as JSON. Times are whole seconds
+ * and decoded readings have a scale of 4. Times outside the range of {@link Instant}
+ * are rejected.
+ */
+public final class MeterReadingsBinaryCodec {
+
+	public static final String MEDIA_TYPE_VALUE = "application/vnd.tw.meter-readings";
+
+	private static final int VERSION = 1;
+	private static final String METER_ID_PREFIX = "smart-meter-";
+	private static final Pattern CANONICAL_METER_ID = Pattern.compile("smart-meter-(0|[1-9][0-9]{0,17})");
+
+	private MeterReadingsBinaryCodec() {
+	}
+
+	/**
+	 * Encodes the readings of a meter.
+	 * 
+	 * @param batch - readings of one meter, the id must be smart-meter-N without leading zeros
+	 * @return encoded readings
+	 */
+	public static byte[] encode(MeterReadingsBatch batch) {
+		Matcher meterId = CANONICAL_METER_ID.matcher(batch.smartMeterId());
+		if (!meterId.matches()) {
+			throw new IllegalArgumentException(String.format("Cannot encode meter id %s", batch.smartMeterId()));
+		}
+		ByteArrayOutputStream out = new ByteArrayOutputStream(8 + batch.size() * 4);
+		out.write(VERSION);
+		writeVarLong(out, Long.parseLong(meterId.group(1)));
+		writeVarLong(out, batch.size());
+		long previousEpochSecond = 0;
+		for (int i = 0; i < batch.size(); i++) {
+			writeVarLong(out, zigZag(batch.epochSeconds()[i] - previousEpochSecond));
+			writeVarLong(out, zigZag(batch.readings()[i]));
+			previousEpochSecond = batch.epochSeconds()[i];
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * Decodes the readings of a meter straight into primitive arrays.
+	 * 
+	 * @param in          - encoded readings, ideally buffered
+	 * @param maxReadings - largest reading count accepted
+	 * @return decoded readings
+	 * @throws IOException if the input is truncated, malformed, has too many readings or
+	 *                     a time outside the range of Instant
+	 */
+	public static MeterReadingsBatch decode(InputStream in, int maxReadings) throws IOException {
+		int version = in.read();
+		if (version != VERSION) {
+			throw new IOException(String.format("Unsupported encoding version %d", version));
+		}
+		String smartMeterId = METER_ID_PREFIX + readVarLong(in);
+		long count = readVarLong(in);
+		if (count < 0 || count > maxReadings) {
+			throw new IOException(String.format("Reading count %d is not within 0-%d", count, maxReadings));
+		}
+		long[] epochSeconds = new long[(int) count];
+		long[] readings = new long[(int) count];
+		long epochSecond = 0;
+		for (int i = 0; i < count; i++) {
+			epochSecond = nextEpochSecond(epochSecond, unZigZag(readVarLong(in)));
+			epochSeconds[i] = epochSecond;
+			readings[i] = unZigZag(readVarLong(in));
+		}
+		return FixedPointReadings.toBatch(smartMeterId, epochSeconds, readings);
+	}
+
+	private static long nextEpochSecond(long previousEpochSecond, long delta) throws IOException {
+		long epochSecond;
+		try {
+			epochSecond = Math.addExact(previousEpochSecond, delta);
+		} catch (ArithmeticException ex) {
+			throw new IOException("Reading time overflows", ex);
+		}
+		if (epochSecond < Instant.MIN.getEpochSecond() || epochSecond > Instant.MAX.getEpochSecond()) {
+			throw new IOException(String.format("Reading time %d is outside the range of Instant", epochSecond));
+		}
+		return epochSecond;
+	}
+
+	static void writeVarLong(ByteArrayOutputStream out, long value) {
+		while ((value & ~0x7FL) != 0) {
+			out.write((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.write((int) value);
+	}
+
+	static long readVarLong(InputStream in) throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = in.read();
+			if (b < 0) {
+				throw new EOFException("Truncated varint");
+			}
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("Malformed varint");
+	}
+
+	static long zigZag(long value) {
+		return (value << 1) ^ (value >> 63);
+	}
+
+	static long unZigZag(long value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+}
@@ -0,0 +1,38 @@
+package uk.tw.energy.controller;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
+
+import uk.tw.energy.domain.ElectricityReading;
+import uk.tw.energy.store.FixedPointReadings;
+import uk.tw.energy.store.MeterReadingSeries;
+import uk.tw.energy.store.ReadingIterator;
+
+/**
+ * Writes a reading series as a JSON array through the configured ObjectMapper's
+ * serializer for ElectricityReading, one reading at a time, so the output is what it produces for a
+ * List<ElectricityReading>. Only the writer's buffer and the reading being written are held in
+ * memory, however many readings are written, and compressed readings are decoded as a stream.
+ */
+class ElectricityReadingsJsonWriter {
+
+	private final ObjectWriter readingWriter;
+
+	ElectricityReadingsJsonWriter(ObjectMapper objectMapper) {
+		this.readingWriter = objectMapper.writerFor(ElectricityReading.class);
+	}
+
+	void write(MeterReadingSeries readings, OutputStream outputStream) throws IOException {
+		try (SequenceWriter sequenceWriter = readingWriter.writeValuesAsArray(outputStream)) {
+			ReadingIterator iterator = readings.iterator();
+			while (iterator.next()) {
+				sequenceWriter.write(FixedPointReadings.toElectricityReading(iterator.epochSecond(), iterator.nano(),
+						iterator.reading(), iterator.scale()));
+			}
+		}
+	}
+}
@@ -1,88 +1,226 @@
-package uk.tw.energy.controller;
-
-import java.util.List;
-import java.util.Optional;
-
-import org.springframework.http.HttpStatus;
-import org.springframework.http.ResponseEntity;
-import org.springframework.http.converter.HttpMessageConversionException;
-import org.springframework.http.converter.HttpMessageNotReadableException;
-import org.springframework.web.bind.annotation.ExceptionHandler;
-import org.springframework.web.bind.annotation.GetMapping;
-import org.springframework.web.bind.annotation.PathVariable;
-import org.springframework.web.bind.annotation.PostMapping;
-import org.springframework.web.bind.annotation.RequestBody;
-import org.springframework.web.bind.annotation.RequestMapping;
-import org.springframework.web.bind.annotation.ResponseStatus;
-import org.springframework.web.bind.annotation.RestController;
-
-import uk.tw.energy.domain.ElectricityReading;
-import uk.tw.energy.domain.MeterReadings;
-import uk.tw.energy.exceptions.InvalidElectricityReadingException;
-import uk.tw.energy.exceptions.InvalidMeterIdException;
-import uk.tw.energy.service.MeterReadingService;
-
-/**
- * Rest controller for storing and retrieving meter readings.
- */
-@RestController
-@RequestMapping("/readings")
-public class MeterReadingController {
-	
-    private final MeterReadingService meterReadingService;
-
-    public MeterReadingController(MeterReadingService meterReadingService) {
-        this.meterReadingService = meterReadingService;
-    }
-
-    /**
-     * Stores meter readings for the given smart meter id.
-     * 
-     * @param meterReadings - MeterReadings object with readings and id values.
-     * @return HttpStatus 200 with acknowledgement message
-     */
-    @PostMapping("/store")
-    public ResponseEntity<String> storeReadings(@RequestBody MeterReadings meterReadings) {
-    		meterReadingService.storeReadings(meterReadings);
-    		return ResponseEntity.ok("Readings Saved");  
-    }
-
-    /**
-     * Retrieves readings for a given meter id if present.
-     * Else NotFound (Http 404)
-     * 
-     * @param smartMeterId - meter id for which readings need to be retrieved
-     * @return readings or Http 404 if no readings found.
-     */
-    @GetMapping("/read/{smartMeterId}")
-    public ResponseEntity<List<ElectricityReading>> readReadings(@PathVariable String smartMeterId) {
-        Optional<List<ElectricityReading>> readings = meterReadingService.getReadings(smartMeterId);
-        return readings.isPresent()
-                ? ResponseEntity.ok(readings.get())
-                : ResponseEntity.notFound().build();
-    }
-    
-    /**
-     * Exception handler when meter reading provided is not valid. 
-     * @param ex InvalidMeterReadingException object
-     * @return Http bad request 400
-     */
-  	@ExceptionHandler({InvalidMeterIdException.class, InvalidElectricityReadingException.class})
-  	@ResponseStatus(HttpStatus.BAD_REQUEST)
-  	public ResponseEntity<String> handleInvalidMeterReadingException(RuntimeException ex) {
-      return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(ex.getMessage());
-  	}
-  	
-  	/**
-  	 * Handles Exception when the params cannot be parsed.
-  	 * Example electricityReading: {"time" : "HelloWorld", "reading": "Coding is fun"}
-  	 * @param ex HttpMessageConversionException object 
-  	 * @return Http 422 Unprocessable Entity
-  	 */
-  	@ExceptionHandler(HttpMessageNotReadableException.class)
-  	@ResponseStatus(HttpStatus.UNPROCESSABLE_ENTITY)
-  	public ResponseEntity<String> handleJsonParseException(HttpMessageConversionException ex) {
-  		ex.printStackTrace();
-  		return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY).body("Failed to parse incoming data");
-  	}
-}
+package uk.tw.energy.controller;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.HttpMessageConversionException;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import uk.tw.energy.codec.MeterReadingsBinaryCodec;
+import uk.tw.energy.domain.BatchStoreResult;
+import uk.tw.energy.domain.ElectricityReading;
+import uk.tw.energy.domain.MeterReadings;
+import uk.tw.energy.domain.MeterReadingsBatch;
+import uk.tw.energy.domain.ReadingRollup;
+import uk.tw.energy.domain.ReadingRollupsPage;
+import uk.tw.energy.domain.ReadingsPage;
+import uk.tw.energy.domain.ReadingsQuery;
+import uk.tw.energy.domain.RollupResolution;
+import uk.tw.energy.exceptions.InvalidElectricityReadingException;
+import uk.tw.energy.exceptions.InvalidMeterIdException;
+import uk.tw.energy.exceptions.InvalidReadingsQueryException;
+import uk.tw.energy.service.BatchIngestionService;
+import uk.tw.energy.service.MeterReadingService;
+import uk.tw.energy.service.ReadingRollupService;
+import uk.tw.energy.service.ReadingSeriesPage;
+
+/**
+ * Rest controller for storing and retrieving meter readings.
+ */
+@RestController
+@RequestMapping("/readings")
+public class MeterReadingController {
+    public static final String NEXT_CURSOR_HEADER = "Next-Cursor";
+	
+    private final MeterReadingService meterReadingService;
+    private final BatchIngestionService batchIngestionService;
+    private final ReadingRollupService readingRollupService;
+    private final ElectricityReadingsJsonWriter electricityReadingsJsonWriter;
+
+    public MeterReadingController(MeterReadingService meterReadingService,
+            BatchIngestionService batchIngestionService, ReadingRollupService readingRollupService,
+            ObjectMapper objectMapper) {
+        this.meterReadingService = meterReadingService;
+        this.batchIngestionService = batchIngestionService;
+        this.readingRollupService = readingRollupService;
+        this.electricityReadingsJsonWriter = new ElectricityReadingsJsonWriter(objectMapper);
+    }
+
+    /**
+     * Stores meter readings for the given smart meter id. Readings are returned with
+     * the time and the scale they were stored with. Readings with more than 4
+     * decimal places, trailing zeros aside, are rejected rather than rounded.
+     * 
+     * @param meterReadings - MeterReadings object with readings and id values.
+     * @return HttpStatus 200 with acknowledgement message
+     */
+    @PostMapping("/store")
+    public ResponseEntity<String> storeReadings(@RequestBody MeterReadings meterReadings) {
+    		meterReadingService.storeReadings(meterReadings);
+    		return ResponseEntity.ok("Readings Saved");  
+    }
+
+    /**
+     * Stores meter readings sent in the compact binary encoding described in
+     * {@link MeterReadingsBinaryCodec}.
+     * 
+     * @param batch - decoded readings of one meter
+     * @return HttpStatus 200 with acknowledgement message
+     */
+    @PostMapping(value = "/store", consumes = MeterReadingsBinaryCodec.MEDIA_TYPE_VALUE)
+    public ResponseEntity<String> storeReadings(@RequestBody MeterReadingsBatch batch) {
+        meterReadingService.storeReadings(batch);
+        return ResponseEntity.ok("Readings Saved");
+    }
+
+    /**
+     * Stores the readings of many meters sent as newline delimited JSON, one
+     * MeterReadings object per line. The upload is processed as it is received.
+     * 
+     * @param ndjson - upload body
+     * @return HttpStatus 200 with the accepted and rejected records
+     * @throws IOException if the upload cannot be read
+     */
+    @PostMapping(value = "/store-batch", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<BatchStoreResult> storeReadingsBatch(InputStream ndjson) throws IOException {
+        return ResponseEntity.ok(batchIngestionService.storeReadings(ndjson));
+    }
+
+    /**
+     * Retrieves readings for a given meter id if present.
+     * Else NotFound (Http 404)
+     * Optionally restricted to a time range and paged. When more readings remain
+     * the response carries a Next-Cursor header, pass it back as cursor (with the
+     * same range) to get the next page.
+     * 
+     * @param smartMeterId - meter id for which readings need to be retrieved
+     * @param from - optional ISO instant, readings at or after it are returned
+     * @param to - optional ISO instant, readings before it are returned
+     * @param limit - optional max number of readings in the response
+     * @param cursor - optional continuation token from a previous response
+     * @return readings or Http 404 if no readings found.
+     */
+    @GetMapping("/read/{smartMeterId}")
+    public ResponseEntity<List<ElectricityReading>> readReadings(@PathVariable String smartMeterId,
+            @RequestParam(value = "from", required = false) Instant from,
+            @RequestParam(value = "to", required = false) Instant to,
+            @RequestParam(value = "limit", required = false) Integer limit,
+            @RequestParam(value = "cursor", required = false) String cursor) {
+        Optional<ReadingsPage> readings = meterReadingService.getReadings(smartMeterId,
+                new ReadingsQuery(from, to, limit, cursor));
+        if (!readings.isPresent()) {
+            return ResponseEntity.notFound().build();
+        }
+        ReadingsPage page = readings.get();
+        return page.nextCursor() == null
+                ? ResponseEntity.ok(page.readings())
+                : ResponseEntity.ok().header(NEXT_CURSOR_HEADER, page.nextCursor()).body(page.readings());
+    }
+
+    /**
+     * Streaming variant of {@link #readReadings}, selected with stream=true. Readings
+     * are written to the response straight from the store while it is iterated, so
+     * memory per request stays constant however many readings are returned.
+     * 
+     * @param smartMeterId - meter id for which readings need to be retrieved
+     * @param from - optional ISO instant, readings at or after it are returned
+     * @param to - optional ISO instant, readings before it are returned
+     * @param limit - optional max number of readings in the response
+     * @param cursor - optional continuation token from a previous response
+     * @return readings written as a JSON array or Http 404 if no readings found.
+     */
+    @GetMapping(value = "/read/{smartMeterId}", params = { "stream=true", "!resolution" }, produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamReadings(@PathVariable String smartMeterId,
+            @RequestParam(value = "from", required = false) Instant from,
+            @RequestParam(value = "to", required = false) Instant to,
+            @RequestParam(value = "limit", required = false) Integer limit,
+            @RequestParam(value = "cursor", required = false) String cursor) {
+        Optional<ReadingSeriesPage> readings = meterReadingService.getReadingSeries(smartMeterId,
+                new ReadingsQuery(from, to, limit, cursor));
+        if (!readings.isPresent()) {
+            return ResponseEntity.notFound().build();
+        }
+        ReadingSeriesPage page = readings.get();
+        StreamingResponseBody body = outputStream -> electricityReadingsJsonWriter.write(page.readings(), outputStream);
+        return page.nextCursor() == null
+                ? ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body)
+                : ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON)
+                        .header(NEXT_CURSOR_HEADER, page.nextCursor()).body(body);
+    }
+    
+    /**
+     * Downsampled variant of {@link #readReadings}, selected with a resolution of
+     * MINUTE, HOUR or DAY. Returns the sum, count, minimum and maximum of the readings
+     * in each bucket of that width that overlaps the range. Hour and day buckets are
+     * served from rollups kept up to date as readings are stored, minute buckets are
+     * folded from the readings of the page. Limit and cursor page through buckets.
+     * 
+     * @param smartMeterId - meter id for which readings need to be retrieved
+     * @param resolution - width of the buckets
+     * @param from - optional ISO instant, buckets ending after it are returned
+     * @param to - optional ISO instant, buckets starting before it are returned
+     * @param limit - optional max number of buckets in the response
+     * @param cursor - optional continuation token from a previous response
+     * @return buckets in time order or Http 404 if no readings found.
+     */
+    @GetMapping(value = "/read/{smartMeterId}", params = "resolution")
+    public ResponseEntity<List<ReadingRollup>> readRollups(@PathVariable String smartMeterId,
+            @RequestParam("resolution") RollupResolution resolution,
+            @RequestParam(value = "from", required = false) Instant from,
+            @RequestParam(value = "to", required = false) Instant to,
+            @RequestParam(value = "limit", required = false) Integer limit,
+            @RequestParam(value = "cursor", required = false) String cursor) {
+        Optional<ReadingRollupsPage> rollups = readingRollupService.getRollups(smartMeterId, resolution,
+                new ReadingsQuery(from, to, limit, cursor));
+        if (!rollups.isPresent()) {
+            return ResponseEntity.notFound().build();
+        }
+        ReadingRollupsPage page = rollups.get();
+        return page.nextCursor() == null
+                ? ResponseEntity.ok(page.rollups())
+                : ResponseEntity.ok().header(NEXT_CURSOR_HEADER, page.nextCursor()).body(page.rollups());
+    }
+    
+    /**
+     * Exception handler when meter reading provided is not valid. 
+     * @param ex InvalidMeterReadingException object
+     * @return Http bad request 400
+     */
+  	@ExceptionHandler({InvalidMeterIdException.class, InvalidElectricityReadingException.class,
+  			InvalidReadingsQueryException.class})
+  	@ResponseStatus(HttpStatus.BAD_REQUEST)
+  	public ResponseEntity<String> handleInvalidMeterReadingException(RuntimeException ex) {
+      return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(ex.getMessage());
+  	}
+  	
+  	/**
+  	 * Handles Exception when the params cannot be parsed.
+  	 * Example electricityReading: {"time" : "HelloWorld", "reading": "Coding is fun"}
+  	 * @param ex HttpMessageConversionException object 
+  	 * @return Http 422 Unprocessable Entity
+  	 */
+  	@ExceptionHandler(HttpMessageNotReadableException.class)
+  	@ResponseStatus(HttpStatus.UNPROCESSABLE_ENTITY)
+  	public ResponseEntity<String> handleJsonParseException(HttpMessageConversionException ex) {
+  		ex.printStackTrace();
+  		return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY).body("Failed to parse incoming data");
+  	}
+}
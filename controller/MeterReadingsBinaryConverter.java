@@ -0,0 +1,57 @@
+package uk.tw.energy.controller;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+import org.springframework.stereotype.Component;
+
+import uk.tw.energy.codec.MeterReadingsBinaryCodec;
+import uk.tw.energy.domain.MeterReadingsBatch;
+
+/**
+ * Reads request bodies of type {@value MeterReadingsBinaryCodec#MEDIA_TYPE_VALUE}
+ * into a {@link MeterReadingsBatch}. Registered next to the JSON converters, which
+ * keep serving application/json.
+ */
+@Component
+public class MeterReadingsBinaryConverter extends AbstractHttpMessageConverter<MeterReadingsBatch> {
+	// largest upload accepted, about a week of readings at a 10 second interval
+	static final int MAX_READINGS_PER_UPLOAD = 65_536;
+
+	public MeterReadingsBinaryConverter() {
+		super(MediaType.valueOf(MeterReadingsBinaryCodec.MEDIA_TYPE_VALUE));
+	}
+
+	@Override
+	protected boolean supports(Class<?> clazz) {
+		return MeterReadingsBatch.class.equals(clazz);
+	}
+
+	@Override
+	public boolean canWrite(Class<?> clazz, MediaType mediaType) {
+		return false;
+	}
+
+	@Override
+	protected MeterReadingsBatch readInternal(Class<? extends MeterReadingsBatch> clazz, HttpInputMessage inputMessage)
+			throws IOException, HttpMessageNotReadableException {
+		try {
+			return MeterReadingsBinaryCodec.decode(new BufferedInputStream(inputMessage.getBody()),
+					MAX_READINGS_PER_UPLOAD);
+		} catch (IOException ex) {
+			throw new HttpMessageNotReadableException(ex.getMessage(), ex, inputMessage);
+		}
+	}
+
+	@Override
+	protected void writeInternal(MeterReadingsBatch batch, HttpOutputMessage outputMessage)
+			throws HttpMessageNotWritableException {
+		throw new HttpMessageNotWritableException("Meter readings are only read in the binary encoding");
+	}
+}
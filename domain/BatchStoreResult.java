@@ -0,0 +1,20 @@
+package uk.tw.energy.domain;
+
+import java.util.List;
+
+/**
+ * Model for the outcome of a batch upload of meter readings.
+ * Has the number of accepted and rejected records and details of the rejected
+ * records - at most the first {@code rejections.size()} of {@code rejected}.
+ */
+public record BatchStoreResult(int accepted, int rejected, List<RecordRejection> rejections) {
+
+    /**
+     * Model for a rejected record of a batch upload.
+     * Has the record's line number in the upload (1 based), its smartMeterId if it
+     * could be parsed and the reason it was rejected.
+     */
+    public record RecordRejection(int record, String smartMeterId, String reason) {
+
+    }
+}
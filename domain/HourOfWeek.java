@@ -0,0 +1,97 @@
+package uk.tw.energy.domain;
+
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Maps instants to hour-of-week slots (0 = Monday 00:00-01:00, 167 = Sunday 23:00-24:00)
+ * in a time zone. The zone's offset transitions are cached in a sorted table, so
+ * resolving an epoch second is a binary search with no allocation.
+ */
+public final class HourOfWeek {
+
+    public static final int HOURS_PER_WEEK = 7 * 24;
+
+    private static final long SECONDS_PER_DAY = 86_400;
+    private static final long SECONDS_PER_HOUR = 3_600;
+    // 1970-01-01 was a Thursday, three days after the start of the week
+    private static final int EPOCH_DAY_OF_WEEK = 3;
+    // transitions are cached up to 2100-01-01T00:00:00Z, later instants go through ZoneRules
+    private static final long CACHE_END_EPOCH_SECOND = 4_102_444_800L;
+
+    private static final HourOfWeek SYSTEM_DEFAULT = new HourOfWeek(ZoneId.systemDefault());
+
+    private final ZoneRules rules;
+    private final long[] transitionEpochSeconds;
+    // offsetSeconds[i + 1] applies from transitionEpochSeconds[i], offsetSeconds[0] before the first one
+    private final int[] offsetSeconds;
+
+    public HourOfWeek(ZoneId zone) {
+        this.rules = zone.getRules();
+        List<ZoneOffsetTransition> transitions = new ArrayList<>();
+        ZoneOffsetTransition transition = rules.nextTransition(Instant.ofEpochSecond(0));
+        while (transition != null && transition.toEpochSecond() < CACHE_END_EPOCH_SECOND) {
+            transitions.add(transition);
+            transition = rules.nextTransition(transition.getInstant());
+        }
+        this.transitionEpochSeconds = new long[transitions.size()];
+        this.offsetSeconds = new int[transitions.size() + 1];
+        offsetSeconds[0] = rules.getOffset(Instant.ofEpochSecond(0)).getTotalSeconds();
+        for (int i = 0; i < transitions.size(); i++) {
+            transitionEpochSeconds[i] = transitions.get(i).toEpochSecond();
+            offsetSeconds[i + 1] = transitions.get(i).getOffsetAfter().getTotalSeconds();
+        }
+    }
+
+    /**
+     * @return resolver for the JVM's default time zone, captured at class initialisation
+     */
+    public static HourOfWeek systemDefault() {
+        return SYSTEM_DEFAULT;
+    }
+
+    /**
+     * @param dateTime - local date time
+     * @return hour-of-week slot of the date time
+     */
+    public static int of(LocalDateTime dateTime) {
+        return of(dateTime.getDayOfWeek(), dateTime.getHour());
+    }
+
+    /**
+     * @param dayOfWeek - day of the week
+     * @param hour      - hour of the day, 0-23
+     * @return hour-of-week slot
+     */
+    public static int of(DayOfWeek dayOfWeek, int hour) {
+        return (dayOfWeek.getValue() - 1) * 24 + hour;
+    }
+
+    /**
+     * @param epochSecond - instant in seconds since the epoch
+     * @return hour-of-week slot of the instant in this zone
+     */
+    public int hourOfWeek(long epochSecond) {
+        long localSecond = epochSecond + offsetAt(epochSecond);
+        long epochDay = Math.floorDiv(localSecond, SECONDS_PER_DAY);
+        int dayOfWeek = (int) Math.floorMod(epochDay + EPOCH_DAY_OF_WEEK, 7);
+        int hour = (int) (Math.floorMod(localSecond, SECONDS_PER_DAY) / SECONDS_PER_HOUR);
+        return dayOfWeek * 24 + hour;
+    }
+
+    private int offsetAt(long epochSecond) {
+        if (epochSecond < 0 || epochSecond >= CACHE_END_EPOCH_SECOND) {
+            return rules.getOffset(Instant.ofEpochSecond(epochSecond)).getTotalSeconds();
+        }
+        int index = Arrays.binarySearch(transitionEpochSeconds, epochSecond);
+        // an exact match means the transition applies, otherwise take the last transition before
+        return offsetSeconds[index >= 0 ? index + 1 : -index - 1];
+    }
+}
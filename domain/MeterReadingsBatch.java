@@ -0,0 +1,17 @@
+package uk.tw.energy.domain;
+
+/**
+ * Primitive form of {@link MeterReadings}, used by uploads that are decoded without
+ * creating an object per reading.
+ * Has five properties smartMeterId (String), epochSeconds and nanos (reading times in
+ * seconds since the epoch and nanoseconds within the second), readings (fixed-point
+ * readings in 10^-4 kWh) and scales (number of decimal places each reading was
+ * uploaded with, which it is returned with) - the arrays are of equal length, one
+ * position per reading.
+ */
+public record MeterReadingsBatch(String smartMeterId, long[] epochSeconds, int[] nanos, long[] readings, byte[] scales) {
+
+    public int size() {
+        return epochSeconds.length;
+    }
+}
@@ -1,53 +1,101 @@
-package uk.tw.energy.domain;
-
-import java.math.BigDecimal;
-import java.time.DayOfWeek;
-import java.time.LocalDateTime;
-import java.util.List;
-
-public class PricePlan {
-
-    private final String energySupplier;
-    private final String planName;
-    private final BigDecimal unitRate; // unit price per kWh
-    private final List<PeakTimeMultiplier> peakTimeMultipliers;
-
-    public PricePlan(String planName, String energySupplier, BigDecimal unitRate, List<PeakTimeMultiplier> peakTimeMultipliers) {
-        this.planName = planName;
-        this.energySupplier = energySupplier;
-        this.unitRate = unitRate;
-        this.peakTimeMultipliers = peakTimeMultipliers;
-    }
-
-    public String getEnergySupplier() {
-        return energySupplier;
-    }
-
-    public String getPlanName() {
-        return planName;
-    }
-
-    public BigDecimal getUnitRate() {
-        return unitRate;
-    }
-
-    public BigDecimal getPrice(LocalDateTime dateTime) {
-        return peakTimeMultipliers.stream()
-                .filter(multiplier -> multiplier.dayOfWeek.equals(dateTime.getDayOfWeek()))
-                .findFirst()
-                .map(multiplier -> unitRate.multiply(multiplier.multiplier))
-                .orElse(unitRate);
-    }
-
-
-    static class PeakTimeMultiplier {
-
-        DayOfWeek dayOfWeek;
-        BigDecimal multiplier;
-
-        public PeakTimeMultiplier(DayOfWeek dayOfWeek, BigDecimal multiplier) {
-            this.dayOfWeek = dayOfWeek;
-            this.multiplier = multiplier;
-        }
-    }
-}
+package uk.tw.energy.domain;
+
+import java.math.BigDecimal;
+import java.time.DayOfWeek;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Time-of-use tariff. Peak multipliers are compiled into a rate per hour-of-week
+ * slot when the plan is created, so looking up a price is an array index.
+ */
+public class PricePlan {
+
+    private final String energySupplier;
+    private final String planName;
+    private final BigDecimal unitRate; // unit price per kWh
+    private final List<PeakTimeMultiplier> peakTimeMultipliers;
+    private final BigDecimal[] ratesByHourOfWeek;
+
+    public PricePlan(String planName, String energySupplier, BigDecimal unitRate, List<PeakTimeMultiplier> peakTimeMultipliers) {
+        this.planName = planName;
+        this.energySupplier = energySupplier;
+        this.unitRate = unitRate;
+        this.peakTimeMultipliers = peakTimeMultipliers;
+        this.ratesByHourOfWeek = compileRates(unitRate, peakTimeMultipliers);
+    }
+
+    public String getEnergySupplier() {
+        return energySupplier;
+    }
+
+    public String getPlanName() {
+        return planName;
+    }
+
+    public BigDecimal getUnitRate() {
+        return unitRate;
+    }
+
+    public BigDecimal getPrice(LocalDateTime dateTime) {
+        return ratesByHourOfWeek[HourOfWeek.of(dateTime)];
+    }
+
+    /**
+     * @param hourOfWeek - slot as computed by {@link HourOfWeek}
+     * @return unit price per kWh in that slot
+     */
+    public BigDecimal getPriceForHourOfWeek(int hourOfWeek) {
+        return ratesByHourOfWeek[hourOfWeek];
+    }
+
+    // the first multiplier covering a slot wins, slots without one use the unit rate
+    private static BigDecimal[] compileRates(BigDecimal unitRate, List<PeakTimeMultiplier> peakTimeMultipliers) {
+        BigDecimal[] rates = new BigDecimal[HourOfWeek.HOURS_PER_WEEK];
+        for (DayOfWeek dayOfWeek : DayOfWeek.values()) {
+            for (int hour = 0; hour < 24; hour++) {
+                BigDecimal rate = unitRate;
+                for (PeakTimeMultiplier peakTimeMultiplier : peakTimeMultipliers) {
+                    if (peakTimeMultiplier.appliesTo(dayOfWeek, hour)) {
+                        rate = unitRate.multiply(peakTimeMultiplier.multiplier);
+                        break;
+                    }
+                }
+                rates[HourOfWeek.of(dayOfWeek, hour)] = rate;
+            }
+        }
+        return rates;
+    }
+
+
+    /**
+     * Multiplier applied to the unit rate on a day of the week, either for the whole
+     * day or for a band of hours [fromHour, toHour).
+     */
+    public static class PeakTimeMultiplier {
+
+        DayOfWeek dayOfWeek;
+        int fromHour;
+        int toHour;
+        BigDecimal multiplier;
+
+        public PeakTimeMultiplier(DayOfWeek dayOfWeek, BigDecimal multiplier) {
+            this(dayOfWeek, 0, 24, multiplier);
+        }
+
+        public PeakTimeMultiplier(DayOfWeek dayOfWeek, int fromHour, int toHour, BigDecimal multiplier) {
+            if (fromHour < 0 || toHour > 24 || fromHour >= toHour) {
+                throw new IllegalArgumentException(
+                        String.format("Peak hours must be within 0-24 and not empty, got %d-%d", fromHour, toHour));
+            }
+            this.dayOfWeek = dayOfWeek;
+            this.fromHour = fromHour;
+            this.toHour = toHour;
+            this.multiplier = multiplier;
+        }
+
+        boolean appliesTo(DayOfWeek day, int hour) {
+            return dayOfWeek.equals(day) && hour >= fromHour && hour < toHour;
+        }
+    }
+}
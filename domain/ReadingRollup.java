@@ -0,0 +1,13 @@
+package uk.tw.energy.domain;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+/**
+ * Model for the readings of one meter in one rollup bucket.
+ * Has five properties time (Instant, start of the bucket), sum, min and max (BigDecimal,
+ * of the readings in the bucket) and count (number of readings in the bucket)
+ */
+public record ReadingRollup(Instant time, BigDecimal sum, int count, BigDecimal min, BigDecimal max) {
+
+}
@@ -0,0 +1,11 @@
+package uk.tw.energy.domain;
+
+import java.util.List;
+
+/**
+ * Model for one page of rollup buckets.
+ * Has two properties rollups (List<ReadingRollup>) and nextCursor (String, null on the last page)
+ */
+public record ReadingRollupsPage(List<ReadingRollup> rollups, String nextCursor) {
+
+}
@@ -0,0 +1,11 @@
+package uk.tw.energy.domain;
+
+import java.util.List;
+
+/**
+ * Model for one page of readings. 
+ * Has two properties readings (List<ElectricityReading>) and nextCursor (String, null on the last page)
+ */
+public record ReadingsPage(List<ElectricityReading> readings, String nextCursor) {
+
+}
@@ -0,0 +1,14 @@
+package uk.tw.energy.domain;
+
+import java.time.Instant;
+
+/**
+ * Model for a query over the readings of a meter. All properties are optional:
+ * from (Instant, inclusive), to (Instant, exclusive), limit (max readings per page)
+ * and cursor (continuation token returned with the previous page).
+ */
+public record ReadingsQuery(Instant from, Instant to, Integer limit, String cursor) {
+
+    public static final ReadingsQuery ALL = new ReadingsQuery(null, null, null, null);
+
+}
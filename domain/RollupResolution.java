@@ -0,0 +1,29 @@
+package uk.tw.energy.domain;
+
+/**
+ * Bucket widths readings are rolled up into for downsampled history. Buckets are
+ * fixed width and aligned to the epoch, so a day bucket is a UTC day.
+ */
+public enum RollupResolution {
+    MINUTE(60),
+    HOUR(3_600),
+    DAY(86_400);
+
+    private final long bucketSeconds;
+
+    RollupResolution(long bucketSeconds) {
+        this.bucketSeconds = bucketSeconds;
+    }
+
+    public long bucketSeconds() {
+        return bucketSeconds;
+    }
+
+    /**
+     * @param epochSecond - instant in seconds since the epoch
+     * @return start of the bucket holding the instant, in seconds since the epoch
+     */
+    public long bucketStart(long epochSecond) {
+        return epochSecond - Math.floorMod(epochSecond, bucketSeconds);
+    }
+}
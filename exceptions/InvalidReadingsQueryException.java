@@ -0,0 +1,14 @@
+package uk.tw.energy.exceptions;
+
+/**
+ * Exception when a readings query cannot be answered - the time range is inverted,
+ * the limit is not positive or the cursor is not one we issued.
+ */
+public class InvalidReadingsQueryException extends RuntimeException {
+
+	private static final long serialVersionUID = 4181934307155263120L;
+
+	public InvalidReadingsQueryException(String errorMessage) {
+		super(errorMessage);
+	}
+}
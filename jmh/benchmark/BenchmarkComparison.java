@@ -0,0 +1,94 @@
+package uk.tw.energy.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Compares two JSON result files written by {@link BenchmarkRunner}, e.g. of a
+ * base commit and a change. Every scenario - benchmark, parameters and thread
+ * count - present in both files is printed with its change in percent, positive
+ * meaning slower. A scenario is reported as a regression when it is slower by more
+ * than the threshold (5% by default) and by more than the error of both scores.
+ * <p>
+ * Usage: {@code BenchmarkComparison <baseline.json> <candidate.json> [threshold-percent]}.
+ * Exits with 1 if there is a regression, so a build can fail on it.
+ */
+public final class BenchmarkComparison {
+	private static final double DEFAULT_THRESHOLD_PERCENT = 5;
+	private static final String THROUGHPUT_MODE = "thrpt";
+
+	private BenchmarkComparison() {
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.err.println("Usage: BenchmarkComparison <baseline.json> <candidate.json> [threshold-percent]");
+			System.exit(2);
+		}
+		double thresholdPercent = args.length > 2 ? Double.parseDouble(args[2]) : DEFAULT_THRESHOLD_PERCENT;
+		ObjectMapper objectMapper = new ObjectMapper();
+		Map<String, JsonNode> baseline = resultsByScenario(objectMapper.readTree(Path.of(args[0]).toFile()));
+		Map<String, JsonNode> candidate = resultsByScenario(objectMapper.readTree(Path.of(args[1]).toFile()));
+		int regressions = 0;
+		for (Map.Entry<String, JsonNode> result : candidate.entrySet()) {
+			JsonNode before = baseline.get(result.getKey());
+			if (before == null) {
+				System.out.printf("%-10s %9s  %s%n", "NEW", "", result.getKey());
+				continue;
+			}
+			JsonNode beforeMetric = before.path("primaryMetric");
+			JsonNode afterMetric = result.getValue().path("primaryMetric");
+			double beforeScore = beforeMetric.path("score").asDouble();
+			double afterScore = afterMetric.path("score").asDouble();
+			// positive when the candidate is slower, whichever way the mode scores
+			double slowerBy = (THROUGHPUT_MODE.equals(before.path("mode").asText()) ? beforeScore - afterScore
+					: afterScore - beforeScore);
+			double slowerByPercent = beforeScore == 0 ? 0 : 100 * slowerBy / beforeScore;
+			double error = errorOf(beforeMetric) + errorOf(afterMetric);
+			String verdict = "SAME";
+			if (Math.abs(slowerBy) > error && slowerByPercent > thresholdPercent) {
+				verdict = "REGRESSION";
+				regressions++;
+			} else if (Math.abs(slowerBy) > error && slowerByPercent < -thresholdPercent) {
+				verdict = "IMPROVED";
+			}
+			System.out.printf("%-10s %+8.1f%%  %s%n", verdict, slowerByPercent, result.getKey());
+		}
+		for (String scenario : baseline.keySet()) {
+			if (!candidate.containsKey(scenario)) {
+				System.out.printf("%-10s %9s  %s%n", "MISSING", "", scenario);
+			}
+		}
+		System.exit(regressions > 0 ? 1 : 0);
+	}
+
+	private static Map<String, JsonNode> resultsByScenario(JsonNode results) {
+		Map<String, JsonNode> byScenario = new LinkedHashMap<>();
+		for (JsonNode result : results) {
+			StringBuilder scenario = new StringBuilder(result.path("benchmark").asText());
+			Map<String, String> params = new TreeMap<>();
+			Iterator<Map.Entry<String, JsonNode>> fields = result.path("params").fields();
+			while (fields.hasNext()) {
+				Map.Entry<String, JsonNode> param = fields.next();
+				params.put(param.getKey(), param.getValue().asText());
+			}
+			params.forEach((name, value) -> scenario.append(' ').append(name).append('=').append(value));
+			scenario.append(" threads=").append(result.path("threads").asInt());
+			byScenario.put(scenario.toString(), result);
+		}
+		return byScenario;
+	}
+
+	// JMH writes NaN, as a string, when there were too few iterations for an error
+	private static double errorOf(JsonNode metric) {
+		double error = metric.path("scoreError").asDouble(0);
+		return Double.isNaN(error) ? 0 : error;
+	}
+}
@@ -0,0 +1,129 @@
+package uk.tw.energy.benchmark;
+
+import java.math.BigDecimal;
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import uk.tw.energy.domain.ElectricityReading;
+import uk.tw.energy.domain.MeterReadings;
+import uk.tw.energy.domain.MeterReadingsBatch;
+import uk.tw.energy.domain.PricePlan;
+import uk.tw.energy.generator.ElectricityReadingsGenerator;
+import uk.tw.energy.service.MeterReadingService;
+import uk.tw.energy.service.MeterReadingValidationService;
+import uk.tw.energy.store.ColumnarMeterReadingStore;
+import uk.tw.energy.store.MeterReadingSeries;
+import uk.tw.energy.store.MeterReadingStore;
+import uk.tw.energy.store.ReadingAppendListener;
+import uk.tw.energy.wal.ReadingLog;
+
+/**
+ * Datasets shared by the benchmarks. Readings come from
+ * {@link ElectricityReadingsGenerator} with a fixed seed and end time, and plan
+ * catalogues from a fixed seed, so every run and every commit measures the same
+ * data.
+ */
+final class BenchmarkData {
+	static final long SEED = 20_240_101L;
+	static final Instant LATEST_READING = Instant.parse("2024-01-01T00:00:00Z");
+	// services record their metrics as in the application
+	static final MeterRegistry METER_REGISTRY = new SimpleMeterRegistry();
+	// readings generated and stored at a time while loading a meter
+	private static final int LOAD_CHUNK = 100_000;
+	private static final int READING_INTERVAL_SECONDS = 10;
+
+	private BenchmarkData() {
+	}
+
+	/**
+	 * @return readings 10 seconds apart, the latest at {@link #LATEST_READING}
+	 */
+	static List<ElectricityReading> readings(int count) {
+		return new ElectricityReadingsGenerator().generate(count, LATEST_READING, new Random(SEED));
+	}
+
+	/**
+	 * @return service storing to the given store without a reading log
+	 */
+	static MeterReadingService meterReadingService(MeterReadingStore meterReadingStore) {
+		return new MeterReadingService(meterReadingStore, ReadingLog.NONE,
+				new MeterReadingValidationService(METER_REGISTRY), METER_REGISTRY);
+	}
+
+	/**
+	 * Creates a store holding one meter's readings, stored oldest first in chunks so
+	 * that ten million readings never exist as objects at once.
+	 */
+	static MeterReadingStore storeWithReadings(String smartMeterId, int count) {
+		MeterReadingStore meterReadingStore = new ColumnarMeterReadingStore();
+		MeterReadingService meterReadingService = meterReadingService(meterReadingStore);
+		ElectricityReadingsGenerator generator = new ElectricityReadingsGenerator();
+		int chunks = (count + LOAD_CHUNK - 1) / LOAD_CHUNK;
+		for (int chunk = chunks - 1; chunk >= 0; chunk--) {
+			int size = Math.min(LOAD_CHUNK, count - chunk * LOAD_CHUNK);
+			Instant latest = LATEST_READING.minusSeconds((long) chunk * LOAD_CHUNK * READING_INTERVAL_SECONDS);
+			meterReadingService.storeReadings(new MeterReadings(smartMeterId,
+					generator.generate(size, latest, new Random(SEED + chunk))));
+		}
+		return meterReadingStore;
+	}
+
+	/**
+	 * Read-only view of a store that ignores listeners, so services built over it
+	 * per invocation start cold and are not kept alive by the store.
+	 */
+	static MeterReadingStore readOnlyView(MeterReadingStore meterReadingStore) {
+		return new MeterReadingStore() {
+			@Override
+			public void append(MeterReadingsBatch batch) {
+				throw new UnsupportedOperationException("Benchmark store view is read-only");
+			}
+
+			@Override
+			public Optional<MeterReadingSeries> getSeries(String smartMeterId) {
+				return meterReadingStore.getSeries(smartMeterId);
+			}
+
+			@Override
+			public Map<String, MeterReadingSeries> getAllSeries() {
+				return meterReadingStore.getAllSeries();
+			}
+
+			@Override
+			public void addAppendListener(ReadingAppendListener listener) {
+			}
+		};
+	}
+
+	/**
+	 * Creates a plan catalogue with unit rates between 0.05 and 1.00. With peak
+	 * multipliers every plan charges 1.5 to 3 times its rate on weekday evenings
+	 * and 0.5 to 1 times its rate at weekends.
+	 */
+	static List<PricePlan> pricePlans(int count, boolean peakMultipliers) {
+		Random random = new Random(SEED);
+		List<PricePlan> pricePlans = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			BigDecimal unitRate = BigDecimal.valueOf(5 + random.nextInt(96), 2);
+			List<PricePlan.PeakTimeMultiplier> multipliers = new ArrayList<>();
+			if (peakMultipliers) {
+				BigDecimal peak = BigDecimal.valueOf(150 + random.nextInt(151), 2);
+				BigDecimal offPeak = BigDecimal.valueOf(50 + random.nextInt(51), 2);
+				for (DayOfWeek dayOfWeek : DayOfWeek.values()) {
+					multipliers.add(dayOfWeek.getValue() >= DayOfWeek.SATURDAY.getValue()
+							? new PricePlan.PeakTimeMultiplier(dayOfWeek, offPeak)
+							: new PricePlan.PeakTimeMultiplier(dayOfWeek, 17, 21, peak));
+				}
+			}
+			pricePlans.add(new PricePlan("price-plan-" + i, "supplier-" + (i % 10), unitRate, multipliers));
+		}
+		return pricePlans;
+	}
+}
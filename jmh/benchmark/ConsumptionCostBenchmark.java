@@ -0,0 +1,94 @@
+package uk.tw.energy.benchmark;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.tw.energy.domain.PricePlan;
+import uk.tw.energy.service.ConsumptionAggregateService;
+import uk.tw.energy.service.ConsumptionCostCache;
+import uk.tw.energy.service.ConsumptionCostService;
+import uk.tw.energy.service.CostArithmetic;
+import uk.tw.energy.store.MeterReadingStore;
+
+/**
+ * Pricing one meter against every plan of a catalogue, and picking its cheapest
+ * plans. Pricing starts from the meter's consumption aggregate, which is built
+ * once in setup. Cold pricing builds the aggregate from the stored readings first,
+ * as the first request for a meter after a restart does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ConsumptionCostBenchmark {
+	private static final String SMART_METER_ID = "smart-meter-0";
+	private static final int RECOMMENDATION_LIMIT = 3;
+
+	@Param({ "1000", "100000", "10000000" })
+	int readingsPerMeter;
+
+	@Param({ "3", "100", "10000" })
+	int planCount;
+
+	@Param({ "false", "true" })
+	boolean peakMultipliers;
+
+	@Param({ "DECIMAL", "FIXED_POINT" })
+	CostArithmetic arithmetic;
+
+	private List<PricePlan> pricePlans;
+	private MeterReadingStore meterReadingStore;
+	private ConsumptionCostService consumptionCostService;
+	private ConsumptionCostService cachedConsumptionCostService;
+
+	@Setup
+	public void setUp() {
+		pricePlans = BenchmarkData.pricePlans(planCount, peakMultipliers);
+		meterReadingStore = BenchmarkData.storeWithReadings(SMART_METER_ID, readingsPerMeter);
+		ConsumptionAggregateService consumptionAggregateService = new ConsumptionAggregateService(meterReadingStore);
+		consumptionCostService = new ConsumptionCostService(pricePlans, consumptionAggregateService,
+				new ConsumptionCostCache(0, 0), arithmetic, BenchmarkData.METER_REGISTRY);
+		cachedConsumptionCostService = new ConsumptionCostService(pricePlans, consumptionAggregateService,
+				new ConsumptionCostCache(1, Long.MAX_VALUE), arithmetic, BenchmarkData.METER_REGISTRY);
+		cachedConsumptionCostService.computeConsumptionCostPerPlan(SMART_METER_ID);
+	}
+
+	@Benchmark
+	public Map<String, BigDecimal> costPerPlan() {
+		return consumptionCostService.computeConsumptionCostPerPlan(SMART_METER_ID);
+	}
+
+	@Benchmark
+	public Map<String, BigDecimal> cachedCostPerPlan() {
+		return cachedConsumptionCostService.computeConsumptionCostPerPlan(SMART_METER_ID);
+	}
+
+	@Benchmark
+	public List<Map.Entry<String, BigDecimal>> cheapestPlans() {
+		return consumptionCostService.findCheapestPlans(SMART_METER_ID, RECOMMENDATION_LIMIT);
+	}
+
+	@Benchmark
+	public Map<String, BigDecimal> coldCostPerPlan() {
+		ConsumptionAggregateService coldAggregates = new ConsumptionAggregateService(
+				BenchmarkData.readOnlyView(meterReadingStore));
+		return new ConsumptionCostService(pricePlans, coldAggregates, new ConsumptionCostCache(0, 0), arithmetic,
+				BenchmarkData.METER_REGISTRY).computeConsumptionCostPerPlan(SMART_METER_ID);
+	}
+}
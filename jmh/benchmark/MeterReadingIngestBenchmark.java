@@ -0,0 +1,96 @@
+package uk.tw.energy.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.tw.energy.domain.ElectricityReading;
+import uk.tw.energy.domain.MeterReadings;
+import uk.tw.energy.service.MeterReadingService;
+import uk.tw.energy.store.ColumnarMeterReadingStore;
+
+/**
+ * Storing readings through {@link MeterReadingService#storeReadings(MeterReadings)}
+ * from concurrent writers. One operation is a round in which each of
+ * {@code writerThreads} writers stores {@code REQUESTS_PER_WRITER} consecutive
+ * requests of {@code readingsPerRequest} readings to a meter of its own. Every
+ * round writes to new meters and the store is recreated every iteration, so
+ * appends are always in time order and the store does not grow without bound.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class MeterReadingIngestBenchmark {
+	private static final int REQUESTS_PER_WRITER = 64;
+
+	@Param({ "1", "4", "16" })
+	int writerThreads;
+
+	@Param({ "10", "1000" })
+	int readingsPerRequest;
+
+	private ExecutorService writers;
+	// consecutive requests of one meter, oldest first
+	private List<List<ElectricityReading>> requests;
+	private MeterReadingService meterReadingService;
+	private long round;
+
+	@Setup
+	public void setUp() {
+		writers = Executors.newFixedThreadPool(writerThreads);
+		List<ElectricityReading> readings = BenchmarkData.readings(REQUESTS_PER_WRITER * readingsPerRequest);
+		requests = new ArrayList<>(REQUESTS_PER_WRITER);
+		for (int i = 0; i < REQUESTS_PER_WRITER; i++) {
+			requests.add(List.copyOf(readings.subList(i * readingsPerRequest, (i + 1) * readingsPerRequest)));
+		}
+	}
+
+	@Setup(Level.Iteration)
+	public void createStore() {
+		meterReadingService = BenchmarkData.meterReadingService(new ColumnarMeterReadingStore());
+		round = 0;
+	}
+
+	@TearDown
+	public void tearDown() {
+		writers.shutdownNow();
+	}
+
+	@Benchmark
+	public void storeReadings() throws InterruptedException, ExecutionException {
+		long firstMeter = round++ * writerThreads;
+		List<Future<?>> writes = new ArrayList<>(writerThreads);
+		for (int writer = 0; writer < writerThreads; writer++) {
+			String smartMeterId = "smart-meter-" + (firstMeter + writer);
+			writes.add(writers.submit(() -> {
+				for (List<ElectricityReading> request : requests) {
+					meterReadingService.storeReadings(new MeterReadings(smartMeterId, request));
+				}
+			}));
+		}
+		for (Future<?> write : writes) {
+			write.get();
+		}
+	}
+}
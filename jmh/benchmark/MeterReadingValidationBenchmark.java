@@ -0,0 +1,59 @@
+package uk.tw.energy.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.tw.energy.domain.ElectricityReading;
+import uk.tw.energy.domain.MeterReadingsBatch;
+import uk.tw.energy.service.MeterReadingValidationService;
+import uk.tw.energy.store.FixedPointReadings;
+
+/**
+ * Validating an upload of one meter's readings, as JSON decoded reading objects
+ * and as a decoded binary upload.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class MeterReadingValidationBenchmark {
+	private static final String SMART_METER_ID = "smart-meter-0";
+
+	@Param({ "1000", "100000", "10000000" })
+	int readingsPerMeter;
+
+	private final MeterReadingValidationService meterReadingValidationService = new MeterReadingValidationService(
+			BenchmarkData.METER_REGISTRY);
+	private List<ElectricityReading> electricityReadings;
+	private MeterReadingsBatch batch;
+
+	@Setup
+	public void setUp() {
+		electricityReadings = BenchmarkData.readings(readingsPerMeter);
+		batch = FixedPointReadings.toBatch(SMART_METER_ID, electricityReadings);
+	}
+
+	@Benchmark
+	public void validateReadings() {
+		meterReadingValidationService.validateMeterReading(SMART_METER_ID, electricityReadings);
+	}
+
+	@Benchmark
+	public void validateBatch() {
+		meterReadingValidationService.validateMeterReading(batch);
+	}
+}
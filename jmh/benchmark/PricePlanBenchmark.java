@@ -0,0 +1,66 @@
+package uk.tw.energy.benchmark;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.tw.energy.domain.HourOfWeek;
+import uk.tw.energy.domain.PricePlan;
+
+/**
+ * Looking up the price of a plan at a point in time, by date-time and by
+ * hour-of-week slot, cycling through a fixed set of times spread over a year.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PricePlanBenchmark {
+	// power of two, so the next time is picked with a mask
+	private static final int TIMES = 1024;
+
+	@Param({ "false", "true" })
+	boolean peakMultipliers;
+
+	private PricePlan pricePlan;
+	private final LocalDateTime[] dateTimes = new LocalDateTime[TIMES];
+	private final int[] hoursOfWeek = new int[TIMES];
+	private int next;
+
+	@Setup
+	public void setUp() {
+		pricePlan = BenchmarkData.pricePlans(1, peakMultipliers).get(0);
+		Random random = new Random(BenchmarkData.SEED);
+		long latest = BenchmarkData.LATEST_READING.getEpochSecond();
+		for (int i = 0; i < TIMES; i++) {
+			dateTimes[i] = LocalDateTime.ofEpochSecond(latest - random.nextInt(365 * 86_400), 0, ZoneOffset.UTC);
+			hoursOfWeek[i] = HourOfWeek.of(dateTimes[i]);
+		}
+	}
+
+	@Benchmark
+	public BigDecimal priceAtDateTime() {
+		return pricePlan.getPrice(dateTimes[next++ & (TIMES - 1)]);
+	}
+
+	@Benchmark
+	public BigDecimal priceForHourOfWeek() {
+		return pricePlan.getPriceForHourOfWeek(hoursOfWeek[next++ & (TIMES - 1)]);
+	}
+}
@@ -0,0 +1,99 @@
+package uk.tw.energy.benchmark;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.tw.energy.domain.ElectricityReading;
+import uk.tw.energy.domain.PricePlan;
+import uk.tw.energy.service.ConsumptionAggregateService;
+import uk.tw.energy.service.ConsumptionCostCache;
+import uk.tw.energy.service.ConsumptionCostService;
+import uk.tw.energy.service.CostArithmetic;
+import uk.tw.energy.store.ColumnarMeterReadingStore;
+import uk.tw.energy.store.MeterReadingStore;
+
+/**
+ * Pricing one meter against every plan the way the cost service did before
+ * aggregates - streaming the reading list once per plan and twice more for the
+ * time bounds - against the single pass that builds the meter's aggregate from
+ * its stored readings and prices every plan from it. Both price the same readings.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class SinglePassCostBenchmark {
+	private static final String SMART_METER_ID = "smart-meter-0";
+
+	@Param({ "1000000" })
+	int readingsPerMeter;
+
+	@Param({ "10" })
+	int planCount;
+
+	@Param({ "DECIMAL", "FIXED_POINT" })
+	CostArithmetic arithmetic;
+
+	private List<PricePlan> pricePlans;
+	private List<ElectricityReading> readings;
+	private MeterReadingStore meterReadingStore;
+
+	@Setup
+	public void setUp() {
+		pricePlans = BenchmarkData.pricePlans(planCount, true);
+		readings = BenchmarkData.readings(readingsPerMeter);
+		meterReadingStore = new ColumnarMeterReadingStore();
+		meterReadingStore.append(SMART_METER_ID, readings);
+	}
+
+	@Benchmark
+	public Map<String, BigDecimal> perPlanScan() {
+		return pricePlans.stream()
+				.collect(Collectors.toMap(PricePlan::getPlanName, plan -> perPlanScanCost(readings, plan)));
+	}
+
+	@Benchmark
+	public Map<String, BigDecimal> singlePass() {
+		ConsumptionAggregateService aggregates = new ConsumptionAggregateService(
+				BenchmarkData.readOnlyView(meterReadingStore));
+		return new ConsumptionCostService(pricePlans, aggregates, new ConsumptionCostCache(0, 0), arithmetic,
+				BenchmarkData.METER_REGISTRY).computeConsumptionCostPerPlan(SMART_METER_ID);
+	}
+
+	// the cost service's calculation before aggregates, kept as it was
+	private static BigDecimal perPlanScanCost(List<ElectricityReading> electricityReadings, PricePlan pricePlan) {
+		BigDecimal totalCost = electricityReadings.stream()
+				.map(electricityReading -> electricityReading.reading().multiply(pricePlan
+						.getPrice(LocalDateTime.ofInstant(electricityReading.time(), ZoneId.systemDefault()))))
+				.reduce(BigDecimal.ZERO, (reading, accumulator) -> reading.add(accumulator));
+		ElectricityReading startTime = electricityReadings.stream().min(Comparator.comparing(ElectricityReading::time))
+				.get();
+		ElectricityReading endTime = electricityReadings.stream().max(Comparator.comparing(ElectricityReading::time))
+				.get();
+		BigDecimal timeElapsed = BigDecimal
+				.valueOf(Duration.between(startTime.time(), endTime.time()).getSeconds() / 3600.0);
+		return totalCost.divide(timeElapsed, RoundingMode.HALF_UP);
+	}
+}
@@ -0,0 +1,144 @@
+package uk.tw.energy.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.tw.energy.domain.MeterReadingsBatch;
+import uk.tw.energy.store.ColumnarMeterReadingStore;
+import uk.tw.energy.store.FixedPointReadings;
+import uk.tw.energy.wal.DurabilityMode;
+import uk.tw.energy.wal.WriteAheadLog;
+
+/**
+ * Appending uploads to the {@link WriteAheadLog} from concurrent writers, to
+ * measure what sharing syncs saves over syncing every upload on its own. One
+ * operation is a round in which each of {@code writerThreads} writers appends
+ * {@code APPENDS_PER_WRITER} uploads of {@code READINGS_PER_APPEND} readings.
+ * <p>
+ * {@code FSYNC_PER_REQUEST} is the baseline: appends are serialized, so every
+ * upload runs a sync of its own. {@code SYNC} and {@code GROUP_COMMIT} are the
+ * durability modes, in which uploads arriving during a sync share the next one.
+ * The log directory is created under {@code java.io.tmpdir}, which should be on
+ * the disk being measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1)
+public class WriteAheadLogBenchmark {
+	private static final int APPENDS_PER_WRITER = 16;
+	private static final int READINGS_PER_APPEND = 10;
+	private static final long GROUP_COMMIT_INTERVAL_MILLIS = 2;
+	private static final long SEGMENT_SIZE_BYTES = 64 << 20;
+
+	public enum Commit {
+		FSYNC_PER_REQUEST, SYNC, GROUP_COMMIT
+	}
+
+	@Param({ "FSYNC_PER_REQUEST", "SYNC", "GROUP_COMMIT" })
+	Commit commit;
+
+	@Param({ "1", "16", "64" })
+	int writerThreads;
+
+	private ExecutorService writers;
+	private MeterReadingsBatch[] uploads;
+	private Path directory;
+	private WriteAheadLog log;
+	private final ReentrantLock serialAppends = new ReentrantLock();
+
+	@Setup
+	public void setUp() {
+		writers = Executors.newFixedThreadPool(writerThreads);
+		long[] epochSeconds = new long[READINGS_PER_APPEND];
+		long[] readings = new long[READINGS_PER_APPEND];
+		for (int i = 0; i < READINGS_PER_APPEND; i++) {
+			epochSeconds[i] = BenchmarkData.LATEST_READING.getEpochSecond() + 10L * i;
+			readings[i] = 500 + i;
+		}
+		uploads = new MeterReadingsBatch[writerThreads];
+		for (int writer = 0; writer < writerThreads; writer++) {
+			uploads[writer] = FixedPointReadings.toBatch("smart-meter-" + writer, epochSeconds, readings);
+		}
+	}
+
+	@Setup(Level.Iteration)
+	public void openLog() throws IOException {
+		directory = Files.createTempDirectory("wal-benchmark");
+		DurabilityMode durabilityMode = commit == Commit.GROUP_COMMIT ? DurabilityMode.GROUP_COMMIT
+				: DurabilityMode.SYNC;
+		log = WriteAheadLog.open(directory, durabilityMode, GROUP_COMMIT_INTERVAL_MILLIS, SEGMENT_SIZE_BYTES,
+				new ColumnarMeterReadingStore(), 0);
+	}
+
+	@TearDown(Level.Iteration)
+	public void deleteLog() throws IOException {
+		log.close();
+		try (Stream<Path> files = Files.walk(directory)) {
+			for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+				Files.delete(file);
+			}
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		writers.shutdownNow();
+	}
+
+	@Benchmark
+	public void append() throws InterruptedException, ExecutionException {
+		List<Future<?>> appends = new ArrayList<>(writerThreads);
+		for (int writer = 0; writer < writerThreads; writer++) {
+			MeterReadingsBatch upload = uploads[writer];
+			appends.add(writers.submit(() -> {
+				for (int i = 0; i < APPENDS_PER_WRITER; i++) {
+					appendOne(upload);
+				}
+			}));
+		}
+		for (Future<?> append : appends) {
+			append.get();
+		}
+	}
+
+	private void appendOne(MeterReadingsBatch upload) {
+		if (commit != Commit.FSYNC_PER_REQUEST) {
+			log.append(upload);
+			return;
+		}
+		serialAppends.lock();
+		try {
+			log.append(upload);
+		} finally {
+			serialAppends.unlock();
+		}
+	}
+}
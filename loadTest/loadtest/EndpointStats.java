@@ -0,0 +1,71 @@
+package uk.tw.energy.loadtest;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.HdrHistogram.ConcurrentHistogram;
+
+/**
+ * Latencies and failures of the measured requests to one endpoint. Latency is
+ * taken from the time a request was scheduled to start, not the time it was
+ * sent, so time a request waited behind a stalled server or a late sender is
+ * counted.
+ */
+final class EndpointStats {
+	private static final int SIGNIFICANT_DIGITS = 3;
+
+	// microseconds, resized as needed
+	private final ConcurrentHistogram latencies = new ConcurrentHistogram(SIGNIFICANT_DIGITS);
+	private final LongAdder errors = new LongAdder();
+	private final LongAdder dropped = new LongAdder();
+
+	/**
+	 * @param latencyNanos - time from the scheduled start to the response
+	 * @param success      - whether the response status was 2xx
+	 */
+	void record(long latencyNanos, boolean success) {
+		latencies.recordValue(Math.max(0, TimeUnit.NANOSECONDS.toMicros(latencyNanos)));
+		if (!success) {
+			errors.increment();
+		}
+	}
+
+	/**
+	 * Records a request that was not sent because too many were waiting for a
+	 * response until it timed out. It counts as a failure at the time it gave up, so
+	 * the requests a stalled server held back stay in the latency percentiles.
+	 *
+	 * @param latencyNanos - time from the scheduled start to giving up
+	 */
+	void drop(long latencyNanos) {
+		dropped.increment();
+		record(latencyNanos, false);
+	}
+
+	long completed() {
+		return latencies.getTotalCount();
+	}
+
+	/**
+	 * @return requests that failed, including dropped requests
+	 */
+	long errors() {
+		return errors.sum();
+	}
+
+	long dropped() {
+		return dropped.sum();
+	}
+
+	/**
+	 * @param percentile - percentile between 0 and 100
+	 * @return latency in milliseconds
+	 */
+	double latencyMillisAt(double percentile) {
+		return latencies.getValueAtPercentile(percentile) / 1000.0;
+	}
+
+	double maxLatencyMillis() {
+		return latencies.getMaxValue() / 1000.0;
+	}
+}
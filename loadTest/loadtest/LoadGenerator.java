@@ -0,0 +1,206 @@
+package uk.tw.energy.loadtest;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Sends requests to an application following an open model: request start times
+ * are drawn up front from the target rate, and every request is sent on its own
+ * virtual thread at its start time whether or not earlier requests have been
+ * answered. A slow server therefore faces more outstanding requests, as it would
+ * from independent clients, instead of slowing the load down and hiding its own
+ * latency (coordinated omission). Requests beyond the in-flight limit wait for a
+ * slot on their own thread, the wait counting towards their latency.
+ */
+final class LoadGenerator {
+	private static final long READING_INTERVAL_SECONDS = 10;
+	private static final int PRELOAD_SENDERS = 16;
+
+	private final LoadTestOptions options;
+	private final URI target;
+	private final HttpClient client;
+	// each endpoint repeated by its weight, a uniform pick follows the mix
+	private final LoadTestEndpoint[] weightedEndpoints;
+	// time of the next reading stored to each meter
+	private final AtomicLongArray nextEpochSeconds;
+
+	LoadGenerator(LoadTestOptions options, URI target) {
+		this.options = options;
+		this.target = target;
+		this.client = HttpClient.newBuilder().connectTimeout(options.requestTimeout()).build();
+		List<LoadTestEndpoint> weighted = new ArrayList<>();
+		options.mix().forEach((endpoint, weight) -> weighted.addAll(Collections.nCopies(weight, endpoint)));
+		this.weightedEndpoints = weighted.toArray(LoadTestEndpoint[]::new);
+		this.nextEpochSeconds = new AtomicLongArray(options.meters());
+		long firstEpochSecond = Instant.now().getEpochSecond() + READING_INTERVAL_SECONDS;
+		for (int meter = 0; meter < options.meters(); meter++) {
+			nextEpochSeconds.set(meter, firstEpochSecond);
+		}
+	}
+
+	/**
+	 * Stores readings to every meter, so that pricing requests during the run find
+	 * readings.
+	 *
+	 * @throws IllegalStateException - if a meter could not be preloaded
+	 */
+	void preload() throws InterruptedException, ExecutionException {
+		if (options.preloadReadings() == 0) {
+			return;
+		}
+		ExecutorService senders = Executors.newFixedThreadPool(PRELOAD_SENDERS);
+		try {
+			List<Future<Integer>> statuses = new ArrayList<>(options.meters());
+			for (int meter = 0; meter < options.meters(); meter++) {
+				HttpRequest request = storeRequest(meter, options.preloadReadings());
+				statuses.add(senders.submit(() -> client.send(request, HttpResponse.BodyHandlers.discarding())
+						.statusCode()));
+			}
+			for (int meter = 0; meter < options.meters(); meter++) {
+				int status = statuses.get(meter).get();
+				if (status / 100 != 2) {
+					throw new IllegalStateException(
+							String.format("Preloading %s failed with status %d", smartMeterId(meter), status));
+				}
+			}
+		} finally {
+			senders.shutdownNow();
+		}
+	}
+
+	/**
+	 * Sends requests for the warmup and the measured duration, then waits for the
+	 * outstanding requests.
+	 *
+	 * @return latencies and failures of the requests scheduled after the warmup
+	 */
+	Map<LoadTestEndpoint, EndpointStats> run() throws InterruptedException {
+		Map<LoadTestEndpoint, EndpointStats> statsByEndpoint = new EnumMap<>(LoadTestEndpoint.class);
+		for (LoadTestEndpoint endpoint : options.mix().keySet()) {
+			statsByEndpoint.put(endpoint, new EndpointStats());
+		}
+		SplittableRandom random = new SplittableRandom();
+		// fair, so requests waiting for a slot are sent in the order they were scheduled
+		Semaphore inFlight = new Semaphore(options.maxInFlight(), true);
+		double meanIntervalNanos = TimeUnit.SECONDS.toNanos(1) / options.rate();
+		long start = System.nanoTime();
+		long measureFrom = start + options.warmup().toNanos();
+		long end = measureFrom + options.duration().toNanos();
+		// fractional, so the rate holds when the interval is not a whole number of nanoseconds
+		double nextStart = start;
+		ExecutorService senders = Executors.newVirtualThreadPerTaskExecutor();
+		try {
+			while ((long) nextStart < end) {
+				long scheduledStart = (long) nextStart;
+				parkUntil(scheduledStart);
+				LoadTestEndpoint endpoint = weightedEndpoints[random.nextInt(weightedEndpoints.length)];
+				int meter = random.nextInt(options.meters());
+				EndpointStats stats = scheduledStart >= measureFrom ? statsByEndpoint.get(endpoint) : null;
+				senders.execute(() -> send(endpoint, meter, scheduledStart, stats, inFlight));
+				nextStart += options.poissonArrivals() ? -Math.log(1 - random.nextDouble()) * meanIntervalNanos
+						: meanIntervalNanos;
+			}
+		} finally {
+			senders.shutdown();
+			// requests wait for a slot and then for a response, each at most the timeout
+			senders.awaitTermination(options.requestTimeout().toNanos() * 3, TimeUnit.NANOSECONDS);
+		}
+		return statsByEndpoint;
+	}
+
+	/**
+	 * Waits for one of the in-flight slots, then sends a request. A request that
+	 * finds no slot within the timeout is not sent and counts as a failure at the
+	 * time it gave up, so requests held back by a slow server stay in the latencies.
+	 */
+	private void send(LoadTestEndpoint endpoint, int meter, long scheduledStart, EndpointStats stats,
+			Semaphore inFlight) {
+		boolean success = false;
+		try {
+			long slotTimeoutNanos = scheduledStart + options.requestTimeout().toNanos() - System.nanoTime();
+			if (!inFlight.tryAcquire(slotTimeoutNanos, TimeUnit.NANOSECONDS)) {
+				if (stats != null) {
+					stats.drop(System.nanoTime() - scheduledStart);
+				}
+				return;
+			}
+			try {
+				success = client.send(request(endpoint, meter), HttpResponse.BodyHandlers.discarding())
+						.statusCode() / 100 == 2;
+			} catch (IOException ex) {
+				success = false;
+			} finally {
+				inFlight.release();
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+		if (stats != null) {
+			stats.record(System.nanoTime() - scheduledStart, success);
+		}
+	}
+
+	private HttpRequest request(LoadTestEndpoint endpoint, int meter) {
+		return switch (endpoint) {
+		case STORE -> storeRequest(meter, options.readingsPerRequest());
+		case COMPARE_ALL -> HttpRequest.newBuilder(target.resolve("/price-plans/compare-all/" + smartMeterId(meter)))
+				.timeout(options.requestTimeout()).GET().build();
+		case RECOMMEND -> HttpRequest.newBuilder(target.resolve("/price-plans/recommend/" + smartMeterId(meter)
+				+ "?limit=" + options.recommendLimit())).timeout(options.requestTimeout()).GET().build();
+		};
+	}
+
+	/**
+	 * Creates a store request continuing the meter's readings, 10 seconds apart.
+	 */
+	private HttpRequest storeRequest(int meter, int readings) {
+		long firstEpochSecond = nextEpochSeconds.getAndAdd(meter, readings * READING_INTERVAL_SECONDS);
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		StringBuilder body = new StringBuilder(64 + readings * 56)
+				.append("{\"smartMeterId\":\"").append(smartMeterId(meter)).append("\",\"electricityReadings\":[");
+		for (int i = 0; i < readings; i++) {
+			if (i > 0) {
+				body.append(',');
+			}
+			body.append("{\"time\":\"").append(Instant.ofEpochSecond(firstEpochSecond + i * READING_INTERVAL_SECONDS))
+					.append("\",\"reading\":").append(BigDecimal.valueOf(random.nextInt(1, 20_000), 4).toPlainString())
+					.append('}');
+		}
+		body.append("]}");
+		return HttpRequest.newBuilder(target.resolve("/readings/store"))
+				.timeout(options.requestTimeout())
+				.header("Content-Type", "application/json")
+				.POST(HttpRequest.BodyPublishers.ofString(body.toString()))
+				.build();
+	}
+
+	private static String smartMeterId(int meter) {
+		return "smart-meter-" + meter;
+	}
+
+	private static void parkUntil(long nanoTime) {
+		for (long delay = nanoTime - System.nanoTime(); delay > 0; delay = nanoTime - System.nanoTime()) {
+			LockSupport.parkNanos(delay);
+		}
+	}
+}
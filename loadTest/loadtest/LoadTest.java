@@ -0,0 +1,87 @@
+package uk.tw.energy.loadtest;
+
+import java.io.PrintStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import uk.tw.energy.App;
+
+/**
+ * Load test of the whole application: starts {@link App} on a free local port (or
+ * targets a running one with {@code --target}), preloads readings for a set of
+ * synthetic meters, then sends a mix of store, compare-all and recommend requests
+ * at a target rate and prints throughput and latency percentiles per endpoint.
+ * See {@link LoadTestOptions#USAGE} for the options, e.g.
+ *
+ * <pre>
+ * LoadTest --rate=2000 --duration=120 --meters=10000 --mix=store:8,compare:1,recommend:1 --spring.threads.virtual.enabled=true
+ * </pre>
+ *
+ * Requests are sent as described in {@link LoadGenerator}, so latencies include
+ * the time a request was held up behind earlier ones.
+ */
+public final class LoadTest {
+	private static final double[] PERCENTILES = { 50, 99, 99.9 };
+
+	private LoadTest() {
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (List.of(args).contains("--help")) {
+			System.out.println(LoadTestOptions.USAGE);
+			return;
+		}
+		LoadTestOptions options = LoadTestOptions.parse(args);
+		ConfigurableApplicationContext application = null;
+		URI target = options.target();
+		if (target == null) {
+			List<String> applicationArgs = new ArrayList<>(options.applicationArgs());
+			if (applicationArgs.stream().noneMatch(arg -> arg.startsWith("--server.port="))) {
+				applicationArgs.add("--server.port=0");
+			}
+			application = SpringApplication.run(App.class, applicationArgs.toArray(String[]::new));
+			target = URI.create("http://localhost:" + application.getEnvironment().getProperty("local.server.port"));
+		}
+		try {
+			LoadGenerator loadGenerator = new LoadGenerator(options, target);
+			System.out.printf("Preloading %d meters with %d readings each%n", options.meters(),
+					options.preloadReadings());
+			loadGenerator.preload();
+			System.out.printf("Sending %.0f requests/s (%s arrivals) to %s for %ds after a %ds warmup%n",
+					options.rate(), options.poissonArrivals() ? "poisson" : "uniform", target,
+					options.duration().toSeconds(), options.warmup().toSeconds());
+			report(System.out, options, loadGenerator.run());
+		} finally {
+			if (application != null) {
+				application.close();
+			}
+		}
+	}
+
+	private static void report(PrintStream out, LoadTestOptions options, Map<LoadTestEndpoint, EndpointStats> stats) {
+		double seconds = options.duration().toNanos() / 1e9;
+		out.printf("%-10s %10s %8s %8s %10s %10s %10s %10s %10s%n", "endpoint", "requests", "errors", "dropped",
+				"req/s", "p50 ms", "p99 ms", "p99.9 ms", "max ms");
+		long completed = 0;
+		long errors = 0;
+		long dropped = 0;
+		for (Map.Entry<LoadTestEndpoint, EndpointStats> endpoint : stats.entrySet()) {
+			EndpointStats endpointStats = endpoint.getValue();
+			out.printf("%-10s %10d %8d %8d %10.1f", endpoint.getKey().mixName(), endpointStats.completed(),
+					endpointStats.errors(), endpointStats.dropped(), endpointStats.completed() / seconds);
+			for (double percentile : PERCENTILES) {
+				out.printf(" %10.3f", endpointStats.latencyMillisAt(percentile));
+			}
+			out.printf(" %10.3f%n", endpointStats.maxLatencyMillis());
+			completed += endpointStats.completed();
+			errors += endpointStats.errors();
+			dropped += endpointStats.dropped();
+		}
+		out.printf("%-10s %10d %8d %8d %10.1f%n", "total", completed, errors, dropped, completed / seconds);
+	}
+}
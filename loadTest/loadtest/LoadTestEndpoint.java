@@ -0,0 +1,29 @@
+package uk.tw.energy.loadtest;
+
+/**
+ * Endpoints the load test sends requests to, by the name used in the request mix.
+ */
+enum LoadTestEndpoint {
+	STORE("store"),
+	COMPARE_ALL("compare"),
+	RECOMMEND("recommend");
+
+	private final String mixName;
+
+	LoadTestEndpoint(String mixName) {
+		this.mixName = mixName;
+	}
+
+	String mixName() {
+		return mixName;
+	}
+
+	static LoadTestEndpoint ofMixName(String mixName) {
+		for (LoadTestEndpoint endpoint : values()) {
+			if (endpoint.mixName.equals(mixName)) {
+				return endpoint;
+			}
+		}
+		throw new IllegalArgumentException(String.format("Unknown endpoint in request mix %s", mixName));
+	}
+}
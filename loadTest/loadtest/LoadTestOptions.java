@@ -0,0 +1,117 @@
+package uk.tw.energy.loadtest;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Options of a load test run, parsed from {@code --name=value} arguments. Arguments
+ * that are not load test options are passed on to the application, e.g.
+ * {@code --spring.threads.virtual.enabled=true}.
+ *
+ * @param target             - URI of a running application, null to start one
+ * @param rate               - requests started per second, across all endpoints
+ * @param poissonArrivals    - whether requests arrive at random (exponential) intervals
+ *                           rather than evenly spaced
+ * @param warmup             - time requests are sent but not measured
+ * @param duration           - time requests are sent and measured
+ * @param meters             - synthetic meters requests are spread over
+ * @param readingsPerRequest - readings per store request
+ * @param preloadReadings    - readings stored to every meter before the run
+ * @param recommendLimit     - limit of recommend requests
+ * @param mix                - relative weight of each endpoint
+ * @param maxInFlight        - requests waiting for a response at most, further
+ *                           requests wait for one to complete, and are dropped
+ *                           and counted as failures after the timeout
+ * @param requestTimeout     - time a request waits for its response at most
+ * @param applicationArgs    - arguments for the application started for the run
+ */
+record LoadTestOptions(URI target, double rate, boolean poissonArrivals, Duration warmup, Duration duration,
+		int meters, int readingsPerRequest, int preloadReadings, int recommendLimit,
+		Map<LoadTestEndpoint, Integer> mix, int maxInFlight, Duration requestTimeout, List<String> applicationArgs) {
+
+	static final String USAGE = String.join(System.lineSeparator(),
+			"Options (defaults in brackets):",
+			"  --target=URI                  running application to test [start one on a free port]",
+			"  --rate=N                      requests per second [200]",
+			"  --arrivals=poisson|uniform    spacing of requests [poisson]",
+			"  --warmup=SECONDS              unmeasured time before the run [10]",
+			"  --duration=SECONDS            measured time [60]",
+			"  --meters=N                    synthetic meters [1000]",
+			"  --readings-per-request=N      readings per store request [10]",
+			"  --preload-readings=N          readings stored to every meter first [100]",
+			"  --recommend-limit=N           limit of recommend requests [3]",
+			"  --mix=NAME:WEIGHT,...         store, compare and recommend weights [store:8,compare:1,recommend:1]",
+			"  --max-in-flight=N             outstanding requests before queueing [10000]",
+			"  --timeout=SECONDS             response timeout [30]",
+			"Any other --name=value argument is passed to the application.");
+
+	static LoadTestOptions parse(String[] args) {
+		URI target = null;
+		double rate = 200;
+		boolean poissonArrivals = true;
+		Duration warmup = Duration.ofSeconds(10);
+		Duration duration = Duration.ofSeconds(60);
+		int meters = 1000;
+		int readingsPerRequest = 10;
+		int preloadReadings = 100;
+		int recommendLimit = 3;
+		Map<LoadTestEndpoint, Integer> mix = parseMix("store:8,compare:1,recommend:1");
+		int maxInFlight = 10_000;
+		Duration requestTimeout = Duration.ofSeconds(30);
+		List<String> applicationArgs = new ArrayList<>();
+		for (String arg : args) {
+			int separator = arg.indexOf('=');
+			String name = arg.startsWith("--") && separator > 0 ? arg.substring(2, separator) : "";
+			String value = separator > 0 ? arg.substring(separator + 1) : "";
+			switch (name) {
+			case "target" -> target = URI.create(value);
+			case "rate" -> rate = Double.parseDouble(value);
+			case "arrivals" -> poissonArrivals = switch (value) {
+				case "poisson" -> true;
+				case "uniform" -> false;
+				default -> throw new IllegalArgumentException(String.format("Unknown arrivals %s", value));
+			};
+			case "warmup" -> warmup = Duration.ofSeconds(Long.parseLong(value));
+			case "duration" -> duration = Duration.ofSeconds(Long.parseLong(value));
+			case "meters" -> meters = Integer.parseInt(value);
+			case "readings-per-request" -> readingsPerRequest = Integer.parseInt(value);
+			case "preload-readings" -> preloadReadings = Integer.parseInt(value);
+			case "recommend-limit" -> recommendLimit = Integer.parseInt(value);
+			case "mix" -> mix = parseMix(value);
+			case "max-in-flight" -> maxInFlight = Integer.parseInt(value);
+			case "timeout" -> requestTimeout = Duration.ofSeconds(Long.parseLong(value));
+			default -> applicationArgs.add(arg);
+			}
+		}
+		if (rate <= 0 || duration.isZero() || meters <= 0 || readingsPerRequest <= 0 || preloadReadings < 0
+				|| maxInFlight <= 0) {
+			throw new IllegalArgumentException("Rate, duration, meters, readings per request and max in flight"
+					+ " must be positive");
+		}
+		return new LoadTestOptions(target, rate, poissonArrivals, warmup, duration, meters, readingsPerRequest,
+				preloadReadings, recommendLimit, mix, maxInFlight, requestTimeout, List.copyOf(applicationArgs));
+	}
+
+	private static Map<LoadTestEndpoint, Integer> parseMix(String mix) {
+		Map<LoadTestEndpoint, Integer> weights = new EnumMap<>(LoadTestEndpoint.class);
+		for (String entry : mix.split(",")) {
+			String[] nameAndWeight = entry.split(":");
+			if (nameAndWeight.length != 2) {
+				throw new IllegalArgumentException(String.format("Request mix entry is not name:weight %s", entry));
+			}
+			int weight = Integer.parseInt(nameAndWeight[1].trim());
+			if (weight < 0) {
+				throw new IllegalArgumentException(String.format("Request mix weight is negative %s", entry));
+			}
+			weights.put(LoadTestEndpoint.ofMixName(nameAndWeight[0].trim()), weight);
+		}
+		if (weights.values().stream().mapToInt(Integer::intValue).sum() == 0) {
+			throw new IllegalArgumentException("Request mix has no weight");
+		}
+		return weights;
+	}
+}
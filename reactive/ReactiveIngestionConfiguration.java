@@ -0,0 +1,70 @@
+package uk.tw.energy.reactive;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.codec.json.Jackson2JsonDecoder;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import org.springframework.web.reactive.function.server.HandlerStrategies;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import uk.tw.energy.service.BatchIngestionService;
+import uk.tw.energy.service.MeterReadingService;
+
+/**
+ * Starts the non-blocking ingestion endpoints. They are off unless
+ * {@code energy.reactive.enabled} is set, and then served on {@code port} next to
+ * the servlet endpoints. Store work runs on at most {@code store-threads} threads
+ * (the number of processors by default) with at most {@code store-queue-capacity}
+ * tasks waiting per thread; a batch upload keeps {@code prefetch} records ahead of
+ * the store, and a single record or body is decoded within {@code max-record-bytes}.
+ * Bodies are read and written with the application's ObjectMapper.
+ */
+@Configuration
+public class ReactiveIngestionConfiguration {
+	private static final Logger LOGGER = LoggerFactory.getLogger(ReactiveIngestionConfiguration.class);
+
+	@Bean(destroyMethod = "close")
+	public ReactiveIngestionServer reactiveIngestionServer(MeterReadingService meterReadingService,
+			BatchIngestionService batchIngestionService, ObjectMapper objectMapper,
+			@Value("${energy.reactive.enabled:false}") boolean enabled,
+			@Value("${energy.reactive.host:0.0.0.0}") String host,
+			@Value("${energy.reactive.port:8081}") int port,
+			@Value("${energy.reactive.store-threads:0}") int storeThreads,
+			@Value("${energy.reactive.store-queue-capacity:256}") int storeQueueCapacity,
+			@Value("${energy.reactive.prefetch:32}") int prefetch,
+			@Value("${energy.reactive.max-record-bytes:4194304}") int maxRecordBytes) {
+		if (!enabled) {
+			return ReactiveIngestionServer.NONE;
+		}
+		if (storeThreads < 0 || storeQueueCapacity <= 0 || prefetch <= 0 || maxRecordBytes <= 0) {
+			throw new IllegalArgumentException("Reactive ingestion limits must be positive");
+		}
+		Scheduler storeScheduler = Schedulers.newBoundedElastic(
+				storeThreads == 0 ? Runtime.getRuntime().availableProcessors() : storeThreads, storeQueueCapacity,
+				"reactive-store");
+		HandlerStrategies strategies = HandlerStrategies.builder()
+				.codecs(codecs -> {
+					codecs.defaultCodecs().jackson2JsonEncoder(new Jackson2JsonEncoder(objectMapper));
+					codecs.defaultCodecs().jackson2JsonDecoder(new Jackson2JsonDecoder(objectMapper));
+					codecs.defaultCodecs().maxInMemorySize(maxRecordBytes);
+				})
+				.build();
+		ReactiveMeterReadingHandler handler = new ReactiveMeterReadingHandler(meterReadingService,
+				batchIngestionService, storeScheduler, prefetch);
+		ReactiveIngestionServer server;
+		try {
+			server = ReactiveIngestionServer.start(host, port, handler.routes(), strategies, storeScheduler);
+		} catch (RuntimeException ex) {
+			storeScheduler.dispose();
+			throw ex;
+		}
+		LOGGER.info("Serving non-blocking ingestion on port {}", server.port());
+		return server;
+	}
+}
@@ -0,0 +1,64 @@
+package uk.tw.energy.reactive;
+
+import org.springframework.http.server.reactive.ReactorHttpHandlerAdapter;
+import org.springframework.web.reactive.function.server.HandlerStrategies;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+import org.springframework.web.reactive.function.server.ServerResponse;
+
+import reactor.core.scheduler.Scheduler;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+
+/**
+ * Reactor Netty server for the non-blocking ingestion endpoints. It listens on its
+ * own port next to the servlet container, so clients can move between the two.
+ */
+public final class ReactiveIngestionServer implements AutoCloseable {
+	/**
+	 * No server, the non-blocking endpoints are not served.
+	 */
+	public static final ReactiveIngestionServer NONE = new ReactiveIngestionServer(null, null);
+
+	private final DisposableServer server;
+	private final Scheduler storeScheduler;
+
+	private ReactiveIngestionServer(DisposableServer server, Scheduler storeScheduler) {
+		this.server = server;
+		this.storeScheduler = storeScheduler;
+	}
+
+	/**
+	 * Binds a server to a port.
+	 *
+	 * @param host           - address to listen on
+	 * @param port           - port to listen on, 0 for any free port
+	 * @param routes         - endpoints to serve
+	 * @param strategies     - codecs the endpoints read and write bodies with
+	 * @param storeScheduler - scheduler the endpoints hand store work to, disposed
+	 *                       with the server
+	 * @return the bound server
+	 */
+	static ReactiveIngestionServer start(String host, int port, RouterFunction<ServerResponse> routes,
+			HandlerStrategies strategies, Scheduler storeScheduler) {
+		ReactorHttpHandlerAdapter adapter = new ReactorHttpHandlerAdapter(
+				RouterFunctions.toHttpHandler(routes, strategies));
+		DisposableServer server = HttpServer.create().host(host).port(port).handle(adapter).bindNow();
+		return new ReactiveIngestionServer(server, storeScheduler);
+	}
+
+	/**
+	 * @return port the server listens on, -1 if there is no server
+	 */
+	public int port() {
+		return server != null ? server.port() : -1;
+	}
+
+	@Override
+	public void close() {
+		if (server != null) {
+			server.disposeNow();
+			storeScheduler.dispose();
+		}
+	}
+}
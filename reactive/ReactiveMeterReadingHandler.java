@@ -0,0 +1,271 @@
+package uk.tw.energy.reactive;
+
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.buffer.DataBufferLimitException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.server.RequestPredicates;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import org.springframework.web.server.ServerWebInputException;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import uk.tw.energy.controller.MeterReadingController;
+import uk.tw.energy.domain.BatchStoreResult;
+import uk.tw.energy.domain.BatchStoreResult.RecordRejection;
+import uk.tw.energy.domain.ElectricityReading;
+import uk.tw.energy.domain.MeterReadings;
+import uk.tw.energy.domain.ReadingsQuery;
+import uk.tw.energy.exceptions.InvalidElectricityReadingException;
+import uk.tw.energy.exceptions.InvalidMeterIdException;
+import uk.tw.energy.exceptions.InvalidReadingsQueryException;
+import uk.tw.energy.service.BatchIngestionService;
+import uk.tw.energy.service.MeterReadingService;
+import uk.tw.energy.service.ReadingSeriesPage;
+import uk.tw.energy.store.FixedPointReadings;
+import uk.tw.energy.store.MeterReadingSeries;
+import uk.tw.energy.store.ReadingIterator;
+
+/**
+ * Non-blocking variant of {@link MeterReadingController}'s store and read endpoints.
+ * Request bodies are decoded on the event loop and handed to a bounded scheduler
+ * for validation and the store appends, which take locks and write the reading log.
+ * Store work is handed over as a task of its own that is not disposed with the
+ * request, so a client that goes away never interrupts a thread half way through
+ * an append.
+ * <p>
+ * A batch upload is a stream of records with bounded demand: at most
+ * {@code prefetch} decoded records wait for the store, and no more of the body is
+ * read from the connection until the store catches up, so a slow store slows the
+ * client down rather than filling the heap. When the scheduler's queue is full the
+ * request is refused with Http 503 and a Retry-After header - for a batch upload
+ * only until its first record is stored, so that a retried upload does not store
+ * records twice; records refused after that are reported as rejected.
+ */
+class ReactiveMeterReadingHandler {
+	private static final Logger LOGGER = LoggerFactory.getLogger(ReactiveMeterReadingHandler.class);
+
+	private static final String RETRY_AFTER_SECONDS = "1";
+	private static final String TOO_MANY_PENDING_REQUESTS = "Too many pending requests";
+
+	private final MeterReadingService meterReadingService;
+	private final BatchIngestionService batchIngestionService;
+	private final Scheduler storeScheduler;
+	private final int prefetch;
+
+	ReactiveMeterReadingHandler(MeterReadingService meterReadingService, BatchIngestionService batchIngestionService,
+			Scheduler storeScheduler, int prefetch) {
+		this.meterReadingService = meterReadingService;
+		this.batchIngestionService = batchIngestionService;
+		this.storeScheduler = storeScheduler;
+		this.prefetch = prefetch;
+	}
+
+	RouterFunction<ServerResponse> routes() {
+		return RouterFunctions.route()
+				.POST("/readings/store", RequestPredicates.contentType(MediaType.APPLICATION_JSON), this::storeReadings)
+				.POST("/readings/store-batch", RequestPredicates.contentType(MediaType.APPLICATION_NDJSON),
+						this::storeReadingsBatch)
+				.GET("/readings/read/{smartMeterId}", this::readReadings)
+				.build();
+	}
+
+	/**
+	 * Stores meter readings for the given smart meter id.
+	 *
+	 * @return Http 200 with acknowledgement message
+	 */
+	Mono<ServerResponse> storeReadings(ServerRequest request) {
+		return request.bodyToMono(MeterReadings.class)
+				.switchIfEmpty(Mono.error(() -> new ServerWebInputException("Missing request body")))
+				.flatMap(meterReadings -> onStoreScheduler(() -> {
+					meterReadingService.storeReadings(meterReadings);
+					return meterReadings;
+				}))
+				.flatMap(stored -> ServerResponse.ok().bodyValue("Readings Saved"))
+				.onErrorResume(this::errorResponse);
+	}
+
+	/**
+	 * Stores the readings of many meters sent as newline delimited JSON, one
+	 * MeterReadings object per line, with the same per record outcome as the MVC
+	 * endpoint. Once a record is stored, records the store scheduler refuses are
+	 * rejected rather than failing the upload.
+	 *
+	 * @return Http 200 with the accepted and rejected records, or Http 503 if the
+	 *         store scheduler refuses the upload before any record is stored
+	 */
+	Mono<ServerResponse> storeReadingsBatch(ServerRequest request) {
+		AtomicBoolean stored = new AtomicBoolean();
+		return request.bodyToFlux(String.class)
+				.index()
+				.filter(line -> !line.getT2().isBlank())
+				.concatMap(line -> storeRecord(Math.toIntExact(line.getT1() + 1), line.getT2(), stored), prefetch)
+				.collect(BatchTally::new, (tally, rejection) -> tally.add(rejection.orElse(null)))
+				.map(BatchTally::toResult)
+				.doOnNext(result -> LOGGER.info("Stored batch upload with {} accepted and {} rejected records",
+						result.accepted(), result.rejected()))
+				.flatMap(result -> ServerResponse.ok().contentType(MediaType.APPLICATION_JSON).bodyValue(result))
+				.onErrorResume(this::errorResponse);
+	}
+
+	/**
+	 * Stores one record of a batch upload on the store scheduler.
+	 *
+	 * @param lineNumber - line of the record in the upload, 1 based
+	 * @param line       - the record as a JSON object
+	 * @param stored     - set once a record of the upload is stored
+	 * @return why the record was rejected, empty if it was stored
+	 */
+	private Mono<Optional<RecordRejection>> storeRecord(int lineNumber, String line, AtomicBoolean stored) {
+		return onStoreScheduler(() -> {
+			RecordRejection rejection = batchIngestionService.storeRecord(lineNumber, line);
+			if (rejection == null) {
+				stored.set(true);
+			}
+			return Optional.ofNullable(rejection);
+		}).onErrorResume(RejectedExecutionException.class, ex -> stored.get()
+				? Mono.just(Optional.of(new RecordRejection(lineNumber, null, TOO_MANY_PENDING_REQUESTS)))
+				: Mono.error(ex));
+	}
+
+	/**
+	 * Retrieves readings for a given meter id, optionally restricted to a time range
+	 * and paged like {@link MeterReadingController#readReadings}. Readings are
+	 * decoded from the store as the response is written.
+	 *
+	 * @return readings or Http 404 if no readings found
+	 */
+	Mono<ServerResponse> readReadings(ServerRequest request) {
+		return onStoreScheduler(() -> meterReadingService.getReadingSeries(request.pathVariable("smartMeterId"),
+						readingsQuery(request)))
+				.flatMap(readings -> readings.isPresent() ? readingsResponse(readings.get())
+						: ServerResponse.notFound().build())
+				.onErrorResume(this::errorResponse);
+	}
+
+	/**
+	 * Runs store work on the store scheduler. Unlike {@code subscribeOn}, the task is
+	 * not disposed when the request is cancelled, which would interrupt the thread
+	 * running it: the work completes and its result is dropped.
+	 *
+	 * @param work - store work, returning a value
+	 * @return the value returned by the work, or a {@link RejectedExecutionException}
+	 *         if the scheduler's queue is full
+	 */
+	private <T> Mono<T> onStoreScheduler(Callable<T> work) {
+		return Mono.create(sink -> {
+			try {
+				storeScheduler.schedule(() -> {
+					T result;
+					try {
+						result = work.call();
+					} catch (Exception ex) {
+						sink.error(ex);
+						return;
+					}
+					sink.success(result);
+				});
+			} catch (RejectedExecutionException ex) {
+				sink.error(ex);
+			}
+		});
+	}
+
+	private Mono<ServerResponse> readingsResponse(ReadingSeriesPage page) {
+		ServerResponse.BodyBuilder response = ServerResponse.ok().contentType(MediaType.APPLICATION_JSON);
+		if (page.nextCursor() != null) {
+			response.header(MeterReadingController.NEXT_CURSOR_HEADER, page.nextCursor());
+		}
+		return response.body(electricityReadings(page.readings()).subscribeOn(storeScheduler),
+				ElectricityReading.class);
+	}
+
+	/**
+	 * Maps failures to the statuses the MVC endpoints answer with, adding Http 503
+	 * when the store scheduler refuses more work and Http 413 for a record beyond the
+	 * codec's in-memory limit.
+	 */
+	private Mono<ServerResponse> errorResponse(Throwable error) {
+		if (error instanceof InvalidMeterIdException || error instanceof InvalidElectricityReadingException
+				|| error instanceof InvalidReadingsQueryException) {
+			return ServerResponse.status(HttpStatus.BAD_REQUEST).bodyValue(error.getMessage());
+		}
+		if (error instanceof ServerWebInputException) {
+			return ServerResponse.status(HttpStatus.UNPROCESSABLE_ENTITY).bodyValue("Failed to parse incoming data");
+		}
+		if (error instanceof DataBufferLimitException) {
+			return ServerResponse.status(HttpStatus.PAYLOAD_TOO_LARGE).bodyValue("Record is too large");
+		}
+		if (error instanceof RejectedExecutionException) {
+			return ServerResponse.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, RETRY_AFTER_SECONDS)
+					.bodyValue(TOO_MANY_PENDING_REQUESTS);
+		}
+		return Mono.error(error);
+	}
+
+	private static ReadingsQuery readingsQuery(ServerRequest request) {
+		try {
+			return new ReadingsQuery(request.queryParam("from").map(Instant::parse).orElse(null),
+					request.queryParam("to").map(Instant::parse).orElse(null),
+					request.queryParam("limit").map(Integer::valueOf).orElse(null),
+					request.queryParam("cursor").orElse(null));
+		} catch (DateTimeParseException | NumberFormatException ex) {
+			throw new InvalidReadingsQueryException("Failed to parse readings query " + ex.getMessage());
+		}
+	}
+
+	/**
+	 * Decodes readings one at a time as they are requested.
+	 */
+	private static Flux<ElectricityReading> electricityReadings(MeterReadingSeries readings) {
+		return Flux.<ElectricityReading, ReadingIterator>generate(readings::iterator, (iterator, sink) -> {
+			if (iterator.next()) {
+				sink.next(FixedPointReadings.toElectricityReading(iterator.epochSecond(), iterator.nano(),
+						iterator.reading(), iterator.scale()));
+			} else {
+				sink.complete();
+			}
+			return iterator;
+		});
+	}
+
+	/**
+	 * Counts the outcome of the records of one upload, keeping the first rejections.
+	 */
+	private static final class BatchTally {
+		private final List<RecordRejection> rejections = new ArrayList<>();
+		private int accepted;
+		private int rejected;
+
+		void add(RecordRejection rejection) {
+			if (rejection == null) {
+				accepted++;
+				return;
+			}
+			rejected++;
+			if (rejections.size() < BatchIngestionService.MAX_REPORTED_REJECTIONS) {
+				rejections.add(rejection);
+			}
+		}
+
+		BatchStoreResult toResult() {
+			return new BatchStoreResult(accepted, rejected, rejections);
+		}
+	}
+}
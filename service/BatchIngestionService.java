@@ -0,0 +1,197 @@
+package uk.tw.energy.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import uk.tw.energy.domain.BatchStoreResult;
+import uk.tw.energy.domain.BatchStoreResult.RecordRejection;
+import uk.tw.energy.domain.MeterReadings;
+import uk.tw.energy.exceptions.InvalidElectricityReadingException;
+import uk.tw.energy.exceptions.InvalidMeterIdException;
+
+/**
+ * This service class stores uploads carrying the readings of many meters as newline
+ * delimited JSON - one MeterReadings object per line. Records are parsed, validated
+ * and stored one at a time as the upload is read, so the upload is never held in
+ * memory as a whole, and a record longer than {@code energy.batch.max-record-bytes}
+ * is skipped as it is read and rejected.
+ * Assumption - each record is accepted or rejected on its own, a bad record does
+ * not prevent the rest of the upload from being stored.
+ */
+@Service
+public class BatchIngestionService {
+	private static final Logger LOGGER = LoggerFactory.getLogger(BatchIngestionService.class);
+
+	// detailed rejections reported per upload, further rejections are only counted
+	public static final int MAX_REPORTED_REJECTIONS = 1000;
+	public static final String RECORD_TOO_LARGE = "Record is too large";
+
+	private static final int READ_BUFFER_BYTES = 8192;
+
+	private final MeterReadingService meterReadingService;
+	private final ObjectReader meterReadingsReader;
+	private final int maxRecordBytes;
+
+	public BatchIngestionService(MeterReadingService meterReadingService, ObjectMapper objectMapper,
+			@Value("${energy.batch.max-record-bytes:4194304}") int maxRecordBytes) {
+		if (maxRecordBytes <= 0) {
+			throw new IllegalArgumentException("Batch record size limit must be positive");
+		}
+		this.meterReadingService = meterReadingService;
+		this.meterReadingsReader = objectMapper.readerFor(MeterReadings.class);
+		this.maxRecordBytes = maxRecordBytes;
+	}
+
+	/**
+	 * Stores every valid record of a newline delimited JSON upload.
+	 * 
+	 * @param ndjson - upload body, UTF-8 encoded
+	 * @return number of accepted and rejected records with rejection details
+	 * @throws IOException if the upload cannot be read
+	 */
+	public BatchStoreResult storeReadings(InputStream ndjson) throws IOException {
+		RecordReader reader = new RecordReader(ndjson, maxRecordBytes);
+		List<RecordRejection> rejections = new ArrayList<>();
+		int accepted = 0;
+		int rejected = 0;
+		int lineNumber = 0;
+		while (reader.next()) {
+			lineNumber++;
+			RecordRejection rejection;
+			if (reader.isTooLarge()) {
+				rejection = new RecordRejection(lineNumber, null, RECORD_TOO_LARGE);
+			} else {
+				String line = reader.line();
+				if (line.isBlank()) {
+					continue;
+				}
+				rejection = storeRecord(lineNumber, line);
+			}
+			if (rejection == null) {
+				accepted++;
+			} else {
+				rejected++;
+				if (rejections.size() < MAX_REPORTED_REJECTIONS) {
+					rejections.add(rejection);
+				}
+			}
+		}
+		LOGGER.info("Stored batch upload with {} accepted and {} rejected records", accepted, rejected);
+		return new BatchStoreResult(accepted, rejected, rejections);
+	}
+
+	/**
+	 * Parses, validates and stores one record of an upload.
+	 * 
+	 * @param lineNumber - line of the record in the upload, 1 based
+	 * @param line       - the record as a JSON object
+	 * @return why the record was rejected, null if it was stored
+	 */
+	public RecordRejection storeRecord(int lineNumber, String line) {
+		MeterReadings meterReadings;
+		try {
+			meterReadings = meterReadingsReader.readValue(line);
+		} catch (JsonProcessingException ex) {
+			return new RecordRejection(lineNumber, null, "Failed to parse record");
+		}
+		if (meterReadings == null) {
+			return new RecordRejection(lineNumber, null, "Failed to parse record");
+		}
+		try {
+			meterReadingService.storeReadings(meterReadings);
+			return null;
+		} catch (InvalidMeterIdException | InvalidElectricityReadingException ex) {
+			return new RecordRejection(lineNumber, meterReadings.smartMeterId(), ex.getMessage());
+		}
+	}
+
+	/**
+	 * Splits an upload into lines, holding at most {@code maxRecordBytes} of a line:
+	 * the rest of a longer line is read past without being kept.
+	 */
+	private static final class RecordReader {
+		private final InputStream input;
+		private final int maxRecordBytes;
+		private final byte[] buffer = new byte[READ_BUFFER_BYTES];
+		private int position;
+		private int limit;
+		private byte[] record = new byte[256];
+		private int recordLength;
+		private boolean tooLarge;
+
+		RecordReader(InputStream input, int maxRecordBytes) {
+			this.input = input;
+			this.maxRecordBytes = maxRecordBytes;
+		}
+
+		/**
+		 * Reads the next line.
+		 *
+		 * @return false at the end of the upload
+		 * @throws IOException if the upload cannot be read
+		 */
+		boolean next() throws IOException {
+			recordLength = 0;
+			tooLarge = false;
+			boolean read = false;
+			while (true) {
+				if (position == limit) {
+					position = 0;
+					limit = Math.max(input.read(buffer), 0);
+					if (limit == 0) {
+						return read;
+					}
+				}
+				read = true;
+				int end = position;
+				while (end < limit && buffer[end] != '\n') {
+					end++;
+				}
+				append(position, end);
+				if (end < limit) {
+					position = end + 1;
+					return true;
+				}
+				position = limit;
+			}
+		}
+
+		boolean isTooLarge() {
+			return tooLarge;
+		}
+
+		String line() {
+			return new String(record, 0, recordLength, StandardCharsets.UTF_8);
+		}
+
+		private void append(int from, int to) {
+			int bytes = to - from;
+			if (tooLarge || bytes == 0) {
+				return;
+			}
+			if (bytes > maxRecordBytes - recordLength) {
+				tooLarge = true;
+				recordLength = 0;
+				return;
+			}
+			if (recordLength + bytes > record.length) {
+				record = Arrays.copyOf(record, Math.min(Math.max(record.length * 2, recordLength + bytes), maxRecordBytes));
+			}
+			System.arraycopy(buffer, from, record, recordLength, bytes);
+			recordLength += bytes;
+		}
+	}
+}
@@ -0,0 +1,137 @@
+package uk.tw.energy.service;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.springframework.stereotype.Service;
+
+import uk.tw.energy.domain.HourOfWeek;
+import uk.tw.energy.domain.MeterReadingsBatch;
+import uk.tw.energy.store.FixedPointReadings;
+import uk.tw.energy.store.MeterReadingSeries;
+import uk.tw.energy.store.MeterReadingStore;
+import uk.tw.energy.store.ReadingAppendListener;
+import uk.tw.energy.store.ReadingIterator;
+
+/**
+ * This service class maintains per meter consumption aggregates - consumption per
+ * hour-of-week slot and the reading time bounds. Aggregates are updated as readings
+ * are stored, so pricing a meter does not depend on the length of its history, and
+ * storing readings does not depend on the number of plans.
+ * Assumption - readings already in the store when the application starts (seeded
+ * data) are aggregated the first time the meter is priced.
+ * Slot totals are fixed-point longs, consumption beyond their range is carried as
+ * a decimal, so folding readings into an aggregate never overflows or throws.
+ */
+@Service
+public class ConsumptionAggregateService implements ReadingAppendListener {
+
+	private final MeterReadingStore meterReadingStore;
+	private final HourOfWeek hourOfWeek = HourOfWeek.systemDefault();
+	private final ConcurrentMap<String, MeterConsumptionAggregate> perMeterAggregates = new ConcurrentHashMap<>();
+
+	public ConsumptionAggregateService(MeterReadingStore meterReadingStore) {
+		this.meterReadingStore = meterReadingStore;
+		meterReadingStore.addAppendListener(this);
+	}
+
+	/**
+	 * Gets the up to date aggregate of a meter. If the stored aggregate is missing or
+	 * behind the meter's readings it is rebuilt from the full series once.
+	 * 
+	 * @param smartMeterId - meter id
+	 * @return aggregate of all readings of the meter, empty if it has no readings
+	 */
+	Optional<MeterConsumptionAggregate> getAggregate(String smartMeterId) {
+		Optional<MeterReadingSeries> series = meterReadingStore.getSeries(smartMeterId);
+		if (!series.isPresent()) {
+			return Optional.empty();
+		}
+		MeterConsumptionAggregate aggregate = perMeterAggregates.get(smartMeterId);
+		if (aggregate != null && aggregate.readingCount() >= series.get().size()) {
+			return Optional.of(aggregate);
+		}
+		MeterConsumptionAggregate rebuilt = aggregate(series.get());
+		return Optional.of(perMeterAggregates.merge(smartMeterId, rebuilt,
+				(current, candidate) -> current.readingCount() >= candidate.readingCount() ? current : candidate));
+	}
+
+	/**
+	 * Folds appended readings into the meter's aggregate. An aggregate that does not
+	 * line up with the append is dropped and rebuilt on the next read.
+	 */
+	@Override
+	public void onAppend(long readingsBefore, MeterReadingsBatch batch) {
+		perMeterAggregates.computeIfPresent(batch.smartMeterId(), (id, aggregate) -> {
+			if (aggregate.readingCount() >= readingsBefore + batch.size()) {
+				return aggregate;
+			}
+			if (aggregate.readingCount() != readingsBefore) {
+				return null;
+			}
+			return accumulate(aggregate, MeterReadingSeries.of(batch));
+		});
+	}
+
+	/**
+	 * Builds the aggregate of a whole series in a single pass: each reading is decoded
+	 * once, resolved to its hour-of-week slot once and folded into the time bounds
+	 * and the slot totals that every plan is priced from.
+	 */
+	private MeterConsumptionAggregate aggregate(MeterReadingSeries series) {
+		byte[] maxScaleByHourOfWeek = new byte[HourOfWeek.HOURS_PER_WEEK];
+		Arrays.fill(maxScaleByHourOfWeek, Byte.MIN_VALUE);
+		MeterConsumptionAggregate empty = new MeterConsumptionAggregate(0, Long.MAX_VALUE, Integer.MAX_VALUE,
+				Long.MIN_VALUE, Integer.MIN_VALUE, new long[HourOfWeek.HOURS_PER_WEEK], null,
+				new int[HourOfWeek.HOURS_PER_WEEK], maxScaleByHourOfWeek);
+		return accumulate(empty, series);
+	}
+
+	private MeterConsumptionAggregate accumulate(MeterConsumptionAggregate aggregate, MeterReadingSeries readings) {
+		long minEpochSecond = aggregate.minEpochSecond();
+		int minNano = aggregate.minNano();
+		long maxEpochSecond = aggregate.maxEpochSecond();
+		int maxNano = aggregate.maxNano();
+		long[] consumptionByHourOfWeek = aggregate.consumptionByHourOfWeek().clone();
+		BigDecimal[] consumptionOverflow = aggregate.consumptionOverflow() == null ? null
+				: aggregate.consumptionOverflow().clone();
+		int[] readingsByHourOfWeek = aggregate.readingsByHourOfWeek().clone();
+		byte[] maxScaleByHourOfWeek = aggregate.maxScaleByHourOfWeek().clone();
+		ReadingIterator iterator = readings.iterator();
+		while (iterator.next()) {
+			long epochSecond = iterator.epochSecond();
+			int nano = iterator.nano();
+			if (epochSecond < minEpochSecond || (epochSecond == minEpochSecond && nano < minNano)) {
+				minEpochSecond = epochSecond;
+				minNano = nano;
+			}
+			if (epochSecond > maxEpochSecond || (epochSecond == maxEpochSecond && nano > maxNano)) {
+				maxEpochSecond = epochSecond;
+				maxNano = nano;
+			}
+			int slot = hourOfWeek.hourOfWeek(epochSecond);
+			long consumption = consumptionByHourOfWeek[slot];
+			long reading = iterator.reading();
+			long sum = consumption + reading;
+			if (((consumption ^ sum) & (reading ^ sum)) < 0) {
+				// the slot's sum left the long range, its fixed-point part restarts from the reading
+				if (consumptionOverflow == null) {
+					consumptionOverflow = new BigDecimal[HourOfWeek.HOURS_PER_WEEK];
+				}
+				BigDecimal overflow = FixedPointReadings.toBigDecimal(consumption);
+				consumptionOverflow[slot] = consumptionOverflow[slot] == null ? overflow
+						: consumptionOverflow[slot].add(overflow);
+				sum = reading;
+			}
+			consumptionByHourOfWeek[slot] = sum;
+			readingsByHourOfWeek[slot]++;
+			maxScaleByHourOfWeek[slot] = (byte) Math.max(maxScaleByHourOfWeek[slot], iterator.scale());
+		}
+		return new MeterConsumptionAggregate(aggregate.readingCount() + readings.size(), minEpochSecond, minNano,
+				maxEpochSecond, maxNano, consumptionByHourOfWeek, consumptionOverflow, readingsByHourOfWeek,
+				maxScaleByHourOfWeek);
+	}
+}
@@ -0,0 +1,184 @@
+package uk.tw.energy.service;
+
+import java.math.BigDecimal;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Cache of the cost per plan of recently priced meters. Each entry is tagged with
+ * the meter's version - the number of readings it was priced from - and is only
+ * served while the meter has no newer readings, so a meter polled more often than
+ * it uploads is priced once per upload.
+ * <p>
+ * At most {@code energy.cost.cache.max-entries} meters are kept, the least recently
+ * used is dropped first, and an entry not used for
+ * {@code energy.cost.cache.max-idle-ms} is dropped when it is next looked at or
+ * reaches the head of the queue. A maximum of 0 turns caching off.
+ */
+@Component
+public class ConsumptionCostCache {
+
+	private final int maxEntries;
+	private final long maxIdleNanos;
+
+	// guards the cache, in least recently used first order
+	private final ReentrantLock lock = new ReentrantLock();
+	private final LinkedHashMap<String, CachedCosts> cache = new LinkedHashMap<>(16, 0.75f, true);
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder sizeEvictions = new LongAdder();
+	private final LongAdder idleEvictions = new LongAdder();
+
+	public ConsumptionCostCache(@Value("${energy.cost.cache.max-entries:10000}") int maxEntries,
+			@Value("${energy.cost.cache.max-idle-ms:600000}") long maxIdleMillis) {
+		if (maxEntries < 0 || maxIdleMillis < 0) {
+			throw new IllegalArgumentException("Cost cache size and idle time must not be negative");
+		}
+		this.maxEntries = maxEntries;
+		this.maxIdleNanos = TimeUnit.MILLISECONDS.toNanos(maxIdleMillis);
+	}
+
+	/**
+	 * Gets the costs of a meter if they were cached at its current version.
+	 *
+	 * @param smartMeterId - meter id
+	 * @param version      - number of readings the meter has now
+	 * @return cost per plan, null if not cached, cached at another version or idle for too long
+	 */
+	Map<String, BigDecimal> get(String smartMeterId, long version) {
+		long now = System.nanoTime();
+		lock.lock();
+		try {
+			CachedCosts cached = cache.get(smartMeterId);
+			if (cached == null) {
+				misses.increment();
+				return null;
+			}
+			if (now - cached.lastUsedNanos > maxIdleNanos) {
+				cache.remove(smartMeterId);
+				idleEvictions.increment();
+				misses.increment();
+				return null;
+			}
+			if (cached.version < version) {
+				// versions only grow, an outdated entry is never served again
+				cache.remove(smartMeterId);
+				misses.increment();
+				return null;
+			}
+			if (cached.version > version) {
+				// cached by a caller that saw newer readings, kept for the callers after it
+				misses.increment();
+				return null;
+			}
+			cached.lastUsedNanos = now;
+			hits.increment();
+			return cached.costs;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Caches the costs of a meter unless newer costs were cached meanwhile.
+	 *
+	 * @param smartMeterId - meter id
+	 * @param version      - number of readings the costs were computed from
+	 * @param costs        - cost per plan, must not be modified afterwards
+	 */
+	void put(String smartMeterId, long version, Map<String, BigDecimal> costs) {
+		long now = System.nanoTime();
+		lock.lock();
+		try {
+			CachedCosts cached = cache.get(smartMeterId);
+			if (cached != null && cached.version > version) {
+				return;
+			}
+			cache.put(smartMeterId, new CachedCosts(version, costs, now));
+			// entries are only moved when used, so the queue is in order of last use
+			Iterator<CachedCosts> leastRecentlyUsed = cache.values().iterator();
+			while (leastRecentlyUsed.hasNext()) {
+				CachedCosts head = leastRecentlyUsed.next();
+				if (cache.size() > maxEntries) {
+					sizeEvictions.increment();
+				} else if (now - head.lastUsedNanos > maxIdleNanos) {
+					idleEvictions.increment();
+				} else {
+					break;
+				}
+				leastRecentlyUsed.remove();
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return lookups served from the cache
+	 */
+	public long hits() {
+		return hits.sum();
+	}
+
+	/**
+	 * @return lookups that had to price the meter
+	 */
+	public long misses() {
+		return misses.sum();
+	}
+
+	/**
+	 * @return entries dropped to stay within the maximum number of meters
+	 */
+	public long sizeEvictions() {
+		return sizeEvictions.sum();
+	}
+
+	/**
+	 * @return entries dropped after going unused for too long
+	 */
+	public long idleEvictions() {
+		return idleEvictions.sum();
+	}
+
+	/**
+	 * @return share of lookups served from the cache, NaN before the first lookup
+	 */
+	public double hitRatio() {
+		long hitCount = hits.sum();
+		long lookups = hitCount + misses.sum();
+		return lookups == 0 ? Double.NaN : (double) hitCount / lookups;
+	}
+
+	/**
+	 * @return number of meters cached
+	 */
+	public int size() {
+		lock.lock();
+		try {
+			return cache.size();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private static final class CachedCosts {
+		private final long version;
+		private final Map<String, BigDecimal> costs;
+		private long lastUsedNanos;
+
+		private CachedCosts(long version, Map<String, BigDecimal> costs, long lastUsedNanos) {
+			this.version = version;
+			this.costs = costs;
+			this.lastUsedNanos = lastUsedNanos;
+		}
+	}
+}
@@ -0,0 +1,48 @@
+package uk.tw.energy.service;
+
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * Publishes the cost cache's hits, misses, evictions and size, to check how much
+ * pricing work polling saves and to size the cache against.
+ */
+@Component
+public class ConsumptionCostCacheMetrics implements MeterBinder {
+
+	private final ConsumptionCostCache consumptionCostCache;
+
+	public ConsumptionCostCacheMetrics(ConsumptionCostCache consumptionCostCache) {
+		this.consumptionCostCache = consumptionCostCache;
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		FunctionCounter.builder("energy.cost.cache.requests", consumptionCostCache, ConsumptionCostCache::hits)
+				.tag("result", "hit")
+				.description("Cost lookups served from the cache")
+				.register(registry);
+		FunctionCounter.builder("energy.cost.cache.requests", consumptionCostCache, ConsumptionCostCache::misses)
+				.tag("result", "miss")
+				.description("Cost lookups that priced the meter")
+				.register(registry);
+		FunctionCounter.builder("energy.cost.cache.evictions", consumptionCostCache, ConsumptionCostCache::sizeEvictions)
+				.tag("cause", "size")
+				.description("Cached costs dropped to stay within the maximum number of meters")
+				.register(registry);
+		FunctionCounter.builder("energy.cost.cache.evictions", consumptionCostCache, ConsumptionCostCache::idleEvictions)
+				.tag("cause", "idle")
+				.description("Cached costs dropped after going unused")
+				.register(registry);
+		Gauge.builder("energy.cost.cache.hit.ratio", consumptionCostCache, ConsumptionCostCache::hitRatio)
+				.description("Share of cost lookups served from the cache")
+				.register(registry);
+		Gauge.builder("energy.cost.cache.size", consumptionCostCache, ConsumptionCostCache::size)
+				.description("Meters with cached costs")
+				.register(registry);
+	}
+}
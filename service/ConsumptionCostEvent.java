@@ -0,0 +1,42 @@
+package uk.tw.energy.service;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for pricing one meter, committed by
+ * {@link ConsumptionCostService} when enabled (see jfr/energy.jfc). Its duration
+ * and thread line it up with GC pauses and lock contention in the same recording.
+ */
+@Name("uk.tw.energy.ConsumptionCost")
+@Label("Consumption Cost")
+@Category({ "Energy", "Pricing" })
+@Description("Pricing of one meter's consumption against the price plans")
+@StackTrace(false)
+final class ConsumptionCostEvent extends Event {
+
+	@Label("Operation")
+	@Description("costPerPlan for every plan's cost, cheapestPlans for a recommendation")
+	String operation;
+
+	@Label("Smart Meter Id")
+	String smartMeterId;
+
+	@Label("Readings")
+	@Description("Readings of the meter, 0 if it has none")
+	long readingCount;
+
+	@Label("Plans Evaluated")
+	@Description("Plans priced, 0 when the costs were cached")
+	int plansEvaluated;
+
+	@Label("Allocated")
+	@Description("Heap allocated by the thread while pricing, -1 if it cannot be measured, e.g. on a virtual thread")
+	@DataAmount
+	long allocatedBytes;
+}
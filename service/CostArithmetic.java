@@ -0,0 +1,12 @@
+package uk.tw.energy.service;
+
+/**
+ * Arithmetic used to price consumption, selected with the {@code energy.cost.arithmetic}
+ * property. Both modes produce identical results.
+ */
+public enum CostArithmetic {
+	/** BigDecimal throughout. */
+	DECIMAL,
+	/** Scaled longs, falling back to BigDecimal for a plan if a value does not fit. */
+	FIXED_POINT
+}
@@ -0,0 +1,128 @@
+package uk.tw.energy.service;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import uk.tw.energy.domain.HourOfWeek;
+import uk.tw.energy.domain.PricePlan;
+import uk.tw.energy.store.FixedPointReadings;
+
+/**
+ * Prices consumption aggregates with long arithmetic only. Plan rates are converted
+ * once to unscaled longs at a common scale per plan; the dot product with the
+ * consumption per slot and the division by elapsed hours then run on longs and
+ * reproduce exactly the value and scale of the equivalent BigDecimal operations,
+ * rounding {@link java.math.RoundingMode#HALF_UP}. Any overflow or value outside the
+ * supported range is reported by returning null so the caller can use BigDecimal.
+ */
+class FixedPointCostCalculator {
+	private static final int MAX_SCALE = 18;
+	// elapsed hours come from BigDecimal.valueOf(double), so at most 17 significant digits
+	private static final long MAX_DIVISOR = 100_000_000_000_000_000L;
+	private static final long[] POWERS_OF_TEN = new long[MAX_SCALE + 1];
+
+	static {
+		POWERS_OF_TEN[0] = 1;
+		for (int i = 1; i <= MAX_SCALE; i++) {
+			POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+		}
+	}
+
+	// per plan: rates unscaled to the plan's largest rate scale, or null if not representable
+	private final long[][] unscaledRatesPerPlan;
+	private final int[] commonScalePerPlan;
+
+	FixedPointCostCalculator(List<PricePlan> pricePlans) {
+		int planCount = pricePlans.size();
+		this.unscaledRatesPerPlan = new long[planCount][];
+		this.commonScalePerPlan = new int[planCount];
+		for (int plan = 0; plan < planCount; plan++) {
+			compileRates(plan, pricePlans.get(plan));
+		}
+	}
+
+	/**
+	 * Calculates {@code sum(consumption x rate) / timeElapsed} for a plan.
+	 * 
+	 * @param plan        - index of the plan in the price plan list
+	 * @param aggregate   - consumption aggregate of the meter
+	 * @param timeElapsed - hours between the first and last reading
+	 * @param costScale   - scale of the total cost, which the cost is rounded to
+	 * @return cost for the plan, or null if it cannot be computed with longs
+	 */
+	BigDecimal calculateCost(int plan, MeterConsumptionAggregate aggregate, BigDecimal timeElapsed, int costScale) {
+		long[] unscaledRates = unscaledRatesPerPlan[plan];
+		if (unscaledRates == null || aggregate.consumptionOverflow() != null || timeElapsed.signum() <= 0 || timeElapsed.scale() < 0
+				|| timeElapsed.scale() > MAX_SCALE || timeElapsed.precision() > 17) {
+			return null;
+		}
+		long[] consumption = aggregate.consumptionByHourOfWeek();
+		int[] readings = aggregate.readingsByHourOfWeek();
+		long totalCost = 0;
+		try {
+			for (int slot = 0; slot < HourOfWeek.HOURS_PER_WEEK; slot++) {
+				if (readings[slot] > 0) {
+					totalCost = Math.addExact(totalCost, Math.multiplyExact(consumption[slot], unscaledRates[slot]));
+				}
+			}
+			// the total is exact at the cost scale, so moving it there only drops zeros
+			int scaleShift = FixedPointReadings.SCALE + commonScalePerPlan[plan] - costScale;
+			if (Math.abs(scaleShift) > MAX_SCALE) {
+				return null;
+			}
+			totalCost = scaleShift >= 0 ? totalCost / POWERS_OF_TEN[scaleShift]
+					: Math.multiplyExact(totalCost, POWERS_OF_TEN[-scaleShift]);
+			long divisor = timeElapsed.unscaledValue().longValueExact();
+			long quotient = divideHalfUp(totalCost, divisor, timeElapsed.scale());
+			return BigDecimal.valueOf(quotient, costScale);
+		} catch (ArithmeticException overflow) {
+			return null;
+		}
+	}
+
+	/**
+	 * Computes {@code dividend x 10^shift / divisor} rounded half up, one decimal digit
+	 * at a time so that no intermediate value exceeds 10 x divisor.
+	 */
+	private static long divideHalfUp(long dividend, long divisor, int shift) {
+		if (dividend == Long.MIN_VALUE || divisor >= MAX_DIVISOR) {
+			throw new ArithmeticException("Out of fixed-point range");
+		}
+		long magnitude = Math.abs(dividend);
+		long quotient = magnitude / divisor;
+		long remainder = magnitude % divisor;
+		for (int digit = 0; digit < shift; digit++) {
+			remainder *= 10;
+			quotient = Math.addExact(Math.multiplyExact(quotient, 10), remainder / divisor);
+			remainder %= divisor;
+		}
+		if (remainder >= divisor - remainder) {
+			quotient = Math.addExact(quotient, 1);
+		}
+		return dividend < 0 ? -quotient : quotient;
+	}
+
+	private void compileRates(int plan, PricePlan pricePlan) {
+		int commonScale = 0;
+		for (int slot = 0; slot < HourOfWeek.HOURS_PER_WEEK; slot++) {
+			commonScale = Math.max(commonScale, pricePlan.getPriceForHourOfWeek(slot).scale());
+		}
+		if (commonScale > MAX_SCALE) {
+			return;
+		}
+		long[] unscaledRates = new long[HourOfWeek.HOURS_PER_WEEK];
+		for (int slot = 0; slot < HourOfWeek.HOURS_PER_WEEK; slot++) {
+			BigDecimal rate = pricePlan.getPriceForHourOfWeek(slot);
+			if (rate.scale() < 0) {
+				return;
+			}
+			try {
+				unscaledRates[slot] = rate.setScale(commonScale).unscaledValue().longValueExact();
+			} catch (ArithmeticException overflow) {
+				return;
+			}
+		}
+		unscaledRatesPerPlan[plan] = unscaledRates;
+		commonScalePerPlan[plan] = commonScale;
+	}
+}
@@ -0,0 +1,43 @@
+package uk.tw.energy.service;
+
+import java.math.BigDecimal;
+
+import uk.tw.energy.store.FixedPointReadings;
+
+/**
+ * Running totals over every reading of one meter, enough to price the meter's
+ * consumption on any plan without rescanning its readings. Consumption is bucketed
+ * by hour-of-week slot, the granularity at which plan rates vary.
+ * 
+ * @param readingCount             - number of readings covered by the aggregate
+ * @param minEpochSecond           - time of the earliest reading
+ * @param minNano                  - nanoseconds within the second of the earliest reading
+ * @param maxEpochSecond           - time of the latest reading
+ * @param maxNano                  - nanoseconds within the second of the latest reading
+ * @param consumptionByHourOfWeek  - sum of the fixed-point readings in each slot, less the overflow
+ * @param consumptionOverflow      - kWh of each slot that did not fit its fixed-point sum, null
+ *                                 while every sum fits a long
+ * @param readingsByHourOfWeek     - number of readings in each slot
+ * @param maxScaleByHourOfWeek     - largest scale of the readings in each slot, as stored
+ */
+record MeterConsumptionAggregate(long readingCount, long minEpochSecond, int minNano, long maxEpochSecond,
+		int maxNano, long[] consumptionByHourOfWeek, BigDecimal[] consumptionOverflow, int[] readingsByHourOfWeek,
+		byte[] maxScaleByHourOfWeek) {
+
+	/**
+	 * @param slot - hour-of-week slot
+	 * @return exact consumption of the slot in kWh
+	 */
+	BigDecimal consumption(int slot) {
+		BigDecimal consumption = FixedPointReadings.toBigDecimal(consumptionByHourOfWeek[slot]);
+		return consumptionOverflow == null || consumptionOverflow[slot] == null ? consumption
+				: consumption.add(consumptionOverflow[slot]);
+	}
+
+	/**
+	 * @return whole seconds between the earliest and the latest reading
+	 */
+	long secondsElapsed() {
+		return maxEpochSecond - minEpochSecond - (maxNano < minNano ? 1 : 0);
+	}
+}
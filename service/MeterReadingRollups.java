@@ -0,0 +1,99 @@
+package uk.tw.energy.service;
+
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+import uk.tw.energy.domain.RollupResolution;
+import uk.tw.energy.store.MeterReadingSeries;
+import uk.tw.energy.store.ReadingIterator;
+
+/**
+ * Rollups of one meter at the resolutions coarse enough to keep for its whole
+ * history. Readings are folded in while the meter's append lock is held and read
+ * under a shared lock, so a page of buckets is always taken between two appends.
+ * <p>
+ * Minute buckets are not kept: a meter reporting every few seconds has almost as
+ * many of them as readings, so they would grow with the history like the readings
+ * themselves. They are folded from the readings of the requested page instead.
+ */
+final class MeterReadingRollups {
+	private static final Set<RollupResolution> KEPT_RESOLUTIONS = EnumSet.of(RollupResolution.HOUR,
+			RollupResolution.DAY);
+
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	private final Map<RollupResolution, RollupColumns> columnsByResolution = new EnumMap<>(RollupResolution.class);
+	private volatile long readingCount;
+
+	MeterReadingRollups() {
+		for (RollupResolution resolution : KEPT_RESOLUTIONS) {
+			columnsByResolution.put(resolution, new RollupColumns(resolution));
+		}
+	}
+
+	/**
+	 * @param resolution - resolution of buckets
+	 * @return true if rollups are kept at the resolution
+	 */
+	static boolean keeps(RollupResolution resolution) {
+		return KEPT_RESOLUTIONS.contains(resolution);
+	}
+
+	/**
+	 * @return number of readings folded into the rollups
+	 */
+	long readingCount() {
+		return readingCount;
+	}
+
+	/**
+	 * Folds readings into the buckets of every resolution, decoding each reading once.
+	 *
+	 * @param readingsBefore - readings of the meter before these ones
+	 * @param readings       - readings to fold in
+	 * @return false if the rollups do not cover exactly the readings before, they
+	 *         are left as they are and are out of date
+	 */
+	boolean add(long readingsBefore, MeterReadingSeries readings) {
+		RollupColumns[] columns = columnsByResolution.values().toArray(new RollupColumns[0]);
+		lock.writeLock().lock();
+		try {
+			if (readingCount >= readingsBefore + readings.size()) {
+				return true;
+			}
+			if (readingCount != readingsBefore) {
+				return false;
+			}
+			ReadingIterator iterator = readings.iterator();
+			while (iterator.next()) {
+				for (RollupColumns resolutionColumns : columns) {
+					resolutionColumns.add(iterator.epochSecond(), iterator.reading());
+				}
+			}
+			readingCount += readings.size();
+			return true;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Reads the buckets of one resolution without appends in between.
+	 *
+	 * @param resolution - resolution to read, one of those {@link #keeps kept}
+	 * @param reader     - reads what it needs out of the buckets, must not keep them
+	 * @return what the reader returned
+	 */
+	<T> T read(RollupResolution resolution, Function<RollupColumns, T> reader) {
+		lock.readLock().lock();
+		try {
+			return reader.apply(columnsByResolution.get(resolution));
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+}
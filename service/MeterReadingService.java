@@ -1,61 +1,251 @@
-package uk.tw.energy.service;
-
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
-import java.util.Optional;
-
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-import org.springframework.stereotype.Service;
-
-import uk.tw.energy.domain.ElectricityReading;
-import uk.tw.energy.domain.MeterReadings;
-import uk.tw.energy.exceptions.InvalidElectricityReadingException;
-import uk.tw.energy.exceptions.InvalidMeterIdException;
-
-/**
- * This service class provides methods for managing meter readings - storing and
- * retrieval.
- */
-@Service
-public class MeterReadingService {
-	private static final Logger LOGGER = LoggerFactory.getLogger(MeterReadingService.class);
-
-	private final Map<String, List<ElectricityReading>> meterAssociatedReadings;
-	private final MeterReadingValidationService meterReadingValidationService;
-
-	public MeterReadingService(Map<String, List<ElectricityReading>> meterAssociatedReadings,
-			MeterReadingValidationService meterReadingValidationService) {
-		this.meterAssociatedReadings = meterAssociatedReadings;
-		this.meterReadingValidationService = meterReadingValidationService;
-	}
-
-	/**
-	 * Gets the meter reading if present
-	 * 
-	 * @param smartMeterId - the meter id of the associated meter
-	 * @return the reading of the corresponding meter id
-	 */
-	public Optional<List<ElectricityReading>> getReadings(String smartMeterId) {
-		return Optional.ofNullable(meterAssociatedReadings.get(smartMeterId));
-	}
-
-	/**
-	 * Validates and stores meter readings. Assumption - we only save if all
-	 * electricity readings and the respective meterId is valid i.e. If one of the
-	 * electricity reading is incorrect(not valid) we don't save the entire
-	 * meterReadings object
-	 * 
-	 * @param meterReadings - input meterReadings
-	 * @throws InvalidMeterReadingException - raises an exception if meter reading
-	 *                                      is not valid
-	 */
-	public void storeReadings(MeterReadings meterReadings)
-			throws InvalidMeterIdException, InvalidElectricityReadingException {
-		String smartMeterId = meterReadings.smartMeterId();
-		List<ElectricityReading> electricityReadings = meterReadings.electricityReadings();
-		meterReadingValidationService.validateMeterReading(smartMeterId, electricityReadings);
-		meterAssociatedReadings.computeIfAbsent(smartMeterId, k -> new ArrayList<>()).addAll(electricityReadings);
-	}
-}
+package uk.tw.energy.service;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import uk.tw.energy.domain.ElectricityReading;
+import uk.tw.energy.domain.MeterReadings;
+import uk.tw.energy.domain.MeterReadingsBatch;
+import uk.tw.energy.domain.ReadingsPage;
+import uk.tw.energy.domain.ReadingsQuery;
+import uk.tw.energy.exceptions.InvalidElectricityReadingException;
+import uk.tw.energy.exceptions.InvalidMeterIdException;
+import uk.tw.energy.exceptions.InvalidReadingsQueryException;
+import uk.tw.energy.store.FixedPointReadings;
+import uk.tw.energy.store.MeterReadingSeries;
+import uk.tw.energy.store.MeterReadingStore;
+import uk.tw.energy.wal.ReadingLog;
+
+/**
+ * This service class provides methods for managing meter readings - storing and
+ * retrieval.
+ */
+@Service
+public class MeterReadingService {
+	private static final Logger LOGGER = LoggerFactory.getLogger(MeterReadingService.class);
+
+	private final MeterReadingStore meterReadingStore;
+	private final ReadingLog readingLog;
+	private final MeterReadingValidationService meterReadingValidationService;
+	// held shared by stores, exclusively while taking a checkpoint
+	private final ReadWriteLock checkpointLock = new ReentrantReadWriteLock();
+	private final Timer jsonStoreTimer;
+	private final Timer binaryStoreTimer;
+	private final Timer checkpointLockWaitTimer;
+	private final DistributionSummary readingsPerUpload;
+
+	public MeterReadingService(MeterReadingStore meterReadingStore, ReadingLog readingLog,
+			MeterReadingValidationService meterReadingValidationService, MeterRegistry meterRegistry) {
+		this.meterReadingStore = meterReadingStore;
+		this.readingLog = readingLog;
+		this.meterReadingValidationService = meterReadingValidationService;
+		this.jsonStoreTimer = storeTimer("json", meterRegistry);
+		this.binaryStoreTimer = storeTimer("binary", meterRegistry);
+		this.checkpointLockWaitTimer = Timer.builder("energy.readings.store.lock.wait")
+				.description("Time uploads wait for the checkpoint lock, long while a snapshot is taken")
+				.publishPercentiles(0.5, 0.99, 0.999)
+				.publishPercentileHistogram()
+				.register(meterRegistry);
+		this.readingsPerUpload = DistributionSummary.builder("energy.readings.upload.readings")
+				.baseUnit("readings")
+				.description("Readings per stored upload of one meter")
+				.publishPercentiles(0.5, 0.99, 0.999)
+				.publishPercentileHistogram()
+				.register(meterRegistry);
+	}
+
+	/**
+	 * Gets the meter reading if present
+	 * 
+	 * @param smartMeterId - the meter id of the associated meter
+	 * @return the reading of the corresponding meter id
+	 */
+	public Optional<List<ElectricityReading>> getReadings(String smartMeterId) {
+		return meterReadingStore.getSeries(smartMeterId).map(MeterReadingSeries::asElectricityReadings);
+	}
+
+	/**
+	 * Gets one page of the readings of a meter in a time range, if the meter has
+	 * readings. The range bounds are located by binary search over the time ordered
+	 * series, so the cost of a page does not depend on the history outside it.
+	 * 
+	 * @param smartMeterId - the meter id of the associated meter
+	 * @param query        - time range, page size and cursor of the previous page
+	 * @return the page of readings with the cursor of the next page if there is one
+	 * @throws InvalidReadingsQueryException - if the range or limit is not valid or
+	 *                                       the cursor cannot be decoded
+	 */
+	public Optional<ReadingsPage> getReadings(String smartMeterId, ReadingsQuery query)
+			throws InvalidReadingsQueryException {
+		return getReadingSeries(smartMeterId, query)
+				.map(page -> new ReadingsPage(page.readings().asElectricityReadings(), page.nextCursor()));
+	}
+
+	/**
+	 * Same as {@link #getReadings(String, ReadingsQuery)} but returns the page as a
+	 * view over the store.
+	 * 
+	 * @param smartMeterId - the meter id of the associated meter
+	 * @param query        - time range, page size and cursor of the previous page
+	 * @return the page of readings with the cursor of the next page if there is one
+	 * @throws InvalidReadingsQueryException - if the range or limit is not valid or
+	 *                                       the cursor cannot be decoded
+	 */
+	public Optional<ReadingSeriesPage> getReadingSeries(String smartMeterId, ReadingsQuery query)
+			throws InvalidReadingsQueryException {
+		validateQuery(query);
+		return meterReadingStore.getSeries(smartMeterId).map(series -> findPage(series, query));
+	}
+
+	/**
+	 * Gets the primitive reading series of a meter if present. Preferred over
+	 * {@link #getReadings(String)} for computations as no domain objects are created.
+	 * 
+	 * @param smartMeterId - the meter id of the associated meter
+	 * @return the reading series of the corresponding meter id
+	 */
+	public Optional<MeterReadingSeries> getSeries(String smartMeterId) {
+		return meterReadingStore.getSeries(smartMeterId);
+	}
+
+	/**
+	 * Captures the readings of all meters together with the position of the
+	 * {@link ReadingLog} they are complete up to. Stores are held back while the
+	 * series are collected, so every logged upload before the position is in the
+	 * checkpoint and none after it.
+	 * 
+	 * @return the readings of all meters and the matching log position
+	 */
+	public StoreCheckpoint checkpoint() {
+		checkpointLock.writeLock().lock();
+		try {
+			return new StoreCheckpoint(readingLog.position(), meterReadingStore.getAllSeries());
+		} finally {
+			checkpointLock.writeLock().unlock();
+		}
+	}
+
+	private ReadingSeriesPage findPage(MeterReadingSeries series, ReadingsQuery query) {
+		int start = query.from() == null ? 0 : series.indexAtOrAfter(query.from().getEpochSecond(),
+				query.from().getNano());
+		if (query.cursor() != null) {
+			ReadingsCursor cursor = ReadingsCursor.decode(query.cursor());
+			start = Math.max(start, Math.min(series.size(), series.indexAtOrAfter(cursor.epochSecond()) + cursor.skip()));
+		}
+		int end = query.to() == null ? series.size() : series.indexAtOrAfter(query.to().getEpochSecond(),
+				query.to().getNano());
+		end = Math.max(start, end);
+		String nextCursor = null;
+		if (query.limit() != null && end - start > query.limit()) {
+			end = start + query.limit();
+			long nextEpochSecond = series.epochSecond(end);
+			nextCursor = new ReadingsCursor(nextEpochSecond, end - series.indexAtOrAfter(nextEpochSecond)).encode();
+		}
+		return new ReadingSeriesPage(series.subSeries(start, end), nextCursor);
+	}
+
+	static void validateQuery(ReadingsQuery query) throws InvalidReadingsQueryException {
+		if (query.from() != null && query.to() != null && query.from().isAfter(query.to())) {
+			throw new InvalidReadingsQueryException("Readings range start is after its end");
+		}
+		if (query.limit() != null && query.limit() <= 0) {
+			throw new InvalidReadingsQueryException(String.format("Limit must be positive %d", query.limit()));
+		}
+	}
+
+	/**
+	 * Validates and stores meter readings. Assumption - we only save if all
+	 * electricity readings and the respective meterId is valid i.e. If one of the
+	 * electricity reading is incorrect(not valid) we don't save the entire
+	 * meterReadings object. Readings are written to the {@link ReadingLog} before
+	 * they become visible in the store.
+	 * 
+	 * @param meterReadings - input meterReadings
+	 * @throws InvalidMeterReadingException - raises an exception if meter reading
+	 *                                      is not valid
+	 */
+	public void storeReadings(MeterReadings meterReadings)
+			throws InvalidMeterIdException, InvalidElectricityReadingException {
+		String smartMeterId = meterReadings.smartMeterId();
+		List<ElectricityReading> electricityReadings = meterReadings.electricityReadings();
+		store(jsonStoreTimer, "json", smartMeterId, electricityReadings == null ? 0 : electricityReadings.size(), () -> {
+			meterReadingValidationService.validateMeterReading(smartMeterId, electricityReadings);
+			append(FixedPointReadings.toBatch(smartMeterId, electricityReadings));
+		});
+	}
+
+	/**
+	 * Validates and stores readings decoded from a binary upload. The primitive
+	 * arrays are appended to the store as they are, no reading objects are created.
+	 * 
+	 * @param batch - decoded readings of one meter
+	 * @throws InvalidMeterIdException - if the meter id is not valid
+	 * @throws InvalidElectricityReadingException - if there are no readings or a time is
+	 *                                            outside the range of Instant
+	 */
+	public void storeReadings(MeterReadingsBatch batch)
+			throws InvalidMeterIdException, InvalidElectricityReadingException {
+		store(binaryStoreTimer, "binary", batch.smartMeterId(), batch.size(), () -> {
+			meterReadingValidationService.validateMeterReading(batch);
+			append(batch);
+		});
+	}
+
+	/**
+	 * Runs an upload under its timer and, while a recording has it enabled, records
+	 * a {@link MeterReadingStoreEvent} for it. Allocation is only measured then.
+	 */
+	private static void store(Timer storeTimer, String format, String smartMeterId, int readingCount,
+			Runnable upload) {
+		MeterReadingStoreEvent event = new MeterReadingStoreEvent();
+		event.begin();
+		long allocatedBefore = event.isEnabled() ? ThreadAllocation.allocatedBytes() : -1;
+		boolean stored = false;
+		try {
+			storeTimer.record(upload);
+			stored = true;
+		} finally {
+			event.end();
+			if (event.shouldCommit()) {
+				event.format = format;
+				event.smartMeterId = smartMeterId;
+				event.readingCount = readingCount;
+				event.stored = stored;
+				event.allocatedBytes = ThreadAllocation.allocatedSince(allocatedBefore);
+				event.commit();
+			}
+		}
+	}
+
+	private void append(MeterReadingsBatch batch) {
+		readingsPerUpload.record(batch.size());
+		long lockRequested = System.nanoTime();
+		checkpointLock.readLock().lock();
+		checkpointLockWaitTimer.record(System.nanoTime() - lockRequested, TimeUnit.NANOSECONDS);
+		try {
+			readingLog.append(batch);
+			meterReadingStore.append(batch);
+		} finally {
+			checkpointLock.readLock().unlock();
+		}
+	}
+
+	private static Timer storeTimer(String format, MeterRegistry meterRegistry) {
+		return Timer.builder("energy.readings.store")
+				.tag("format", format)
+				.description("Time to validate, log and store an upload of one meter, including rejected uploads")
+				.publishPercentiles(0.5, 0.99, 0.999)
+				.publishPercentileHistogram()
+				.register(meterRegistry);
+	}
+}
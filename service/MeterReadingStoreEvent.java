@@ -0,0 +1,42 @@
+package uk.tw.energy.service;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for storing one upload of one meter, committed by
+ * {@link MeterReadingService} when enabled (see jfr/energy.jfc). Rejected uploads
+ * are recorded too.
+ */
+@Name("uk.tw.energy.MeterReadingStore")
+@Label("Meter Reading Store")
+@Category({ "Energy", "Ingest" })
+@Description("Validation, logging and storing of one upload of one meter")
+@StackTrace(false)
+final class MeterReadingStoreEvent extends Event {
+
+	@Label("Format")
+	@Description("json or binary")
+	String format;
+
+	@Label("Smart Meter Id")
+	String smartMeterId;
+
+	@Label("Readings")
+	@Description("Readings in the upload")
+	int readingCount;
+
+	@Label("Stored")
+	@Description("Whether the upload was stored, false if it was rejected or failed")
+	boolean stored;
+
+	@Label("Allocated")
+	@Description("Heap allocated by the thread while storing, -1 if it cannot be measured, e.g. on a virtual thread")
+	@DataAmount
+	long allocatedBytes;
+}
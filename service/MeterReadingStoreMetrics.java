@@ -0,0 +1,33 @@
+package uk.tw.energy.service;
+
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import uk.tw.energy.store.MeterReadingStore;
+
+/**
+ * Publishes the number of stored readings and of meters with readings, to relate
+ * ingest and pricing latency to the volume held.
+ */
+@Component
+public class MeterReadingStoreMetrics implements MeterBinder {
+
+	private final MeterReadingStore meterReadingStore;
+
+	public MeterReadingStoreMetrics(MeterReadingStore meterReadingStore) {
+		this.meterReadingStore = meterReadingStore;
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		Gauge.builder("energy.readings.stored", meterReadingStore, MeterReadingStore::readingCount)
+				.baseUnit("readings")
+				.description("Readings held for all meters")
+				.register(registry);
+		Gauge.builder("energy.readings.meters", meterReadingStore, MeterReadingStore::meterCount)
+				.description("Meters with readings")
+				.register(registry);
+	}
+}
@@ -1,61 +1,134 @@
-package uk.tw.energy.service;
-
-import java.util.List;
-
-import org.springframework.stereotype.Service;
-
-import uk.tw.energy.domain.ElectricityReading;
-import uk.tw.energy.exceptions.InvalidElectricityReadingException;
-import uk.tw.energy.exceptions.InvalidMeterIdException;
-
-/**
- * Service class that handles all the validation logic for a meterReading object.
- */
-@Service
-public class MeterReadingValidationService {
-	// regex for a valid meter id (regex = smart-meter-[any number])
-	private final String validMeterIdRegex = "smart-meter-[0-9]+";
-
-	/**
-	 * Finds if the meter reading is valid or not. Validates meterId and electricity
-	 * readings
-	 * 
-	 * @return true or false depending on whether the meter reading is valid or not
-	 */
-	public void validateMeterReading(String smartMeterId, List<ElectricityReading> electricityReadings)
-				throws InvalidMeterIdException, InvalidElectricityReadingException {
-		if (!isMeterIdValid(smartMeterId)) {
-			throw new InvalidMeterIdException(String.format("Smart meter id is not valid %s", smartMeterId));
-		}
-		
-		if (!areElectricityReadingsValid(electricityReadings)) {
-			throw new InvalidElectricityReadingException("Electricity Readings are not valid");
-		}
-	}
-
-	/**
-	 * Checks if given meter id is valid or not. Assumption:- format for a valid
-	 * meter id is - smart-meter-{number(digit)}
-	 * 
-	 * @param smartMeterId - smart meter id provided by the user
-	 * @return true if meterId is valid false otherwise
-	 */
-	private boolean isMeterIdValid(String smartMeterId) {
-		return smartMeterId != null && !smartMeterId.isEmpty() && smartMeterId.matches(validMeterIdRegex);
-	}
-
-	/**
-	 * Checks if given electricity readings are valid or not Assumption - for
-	 * readings that are invalid i.e. either don't have the required parameters or
-	 * missing a parameter. eg. {"read":0.0503} or {"tim":1606636800,
-	 * "reading":0.0503} We individually check if reading or time is null for any
-	 * electricity reading.
-	 * 
-	 * @param electricityReadings - readings provided by the user
-	 * @return true if reading is valid false otherwise
-	 */
-	private boolean areElectricityReadingsValid(List<ElectricityReading> electricityReadings) {
-		return electricityReadings != null && !electricityReadings.isEmpty() && !electricityReadings.stream()
-				.filter(reading -> reading.time() == null || reading.reading() == null).findFirst().isPresent();
-	}
-}
+package uk.tw.energy.service;
+
+import java.time.Instant;
+import java.util.List;
+
+import org.springframework.stereotype.Service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import uk.tw.energy.domain.ElectricityReading;
+import uk.tw.energy.domain.MeterReadingsBatch;
+import uk.tw.energy.exceptions.InvalidElectricityReadingException;
+import uk.tw.energy.exceptions.InvalidMeterIdException;
+import uk.tw.energy.store.FixedPointReadings;
+
+/**
+ * Service class that handles all the validation logic for a meterReading object.
+ * Rejected uploads are counted by reason.
+ */
+@Service
+public class MeterReadingValidationService {
+	// regex for a valid meter id (regex = smart-meter-[any number])
+	private final String validMeterIdRegex = "smart-meter-[0-9]+";
+	private final Counter invalidMeterIdRejections;
+	private final Counter noReadingsRejections;
+	private final Counter incompleteReadingRejections;
+	private final Counter unrepresentableReadingRejections;
+	private final Counter timeOutOfRangeRejections;
+
+	public MeterReadingValidationService(MeterRegistry meterRegistry) {
+		this.invalidMeterIdRejections = rejectionCounter("invalid_meter_id", "Uploads whose meter id is not valid",
+				meterRegistry);
+		this.noReadingsRejections = rejectionCounter("no_readings", "Uploads without readings", meterRegistry);
+		this.incompleteReadingRejections = rejectionCounter("incomplete_reading",
+				"Uploads with a reading missing its time or value", meterRegistry);
+		this.unrepresentableReadingRejections = rejectionCounter("unrepresentable_reading",
+				"Uploads with a reading of more decimal places than the store keeps", meterRegistry);
+		this.timeOutOfRangeRejections = rejectionCounter("time_out_of_range",
+				"Uploads with a reading time outside the range of Instant", meterRegistry);
+	}
+
+	/**
+	 * Finds if the meter reading is valid or not. Validates meterId and electricity
+	 * readings
+	 * 
+	 * @return true or false depending on whether the meter reading is valid or not
+	 */
+	public void validateMeterReading(String smartMeterId, List<ElectricityReading> electricityReadings)
+				throws InvalidMeterIdException, InvalidElectricityReadingException {
+		if (!isMeterIdValid(smartMeterId)) {
+			invalidMeterIdRejections.increment();
+			throw new InvalidMeterIdException(String.format("Smart meter id is not valid %s", smartMeterId));
+		}
+		
+		Counter rejection = electricityReadingsRejection(electricityReadings);
+		if (rejection == unrepresentableReadingRejections) {
+			rejection.increment();
+			throw new InvalidElectricityReadingException(String.format(
+					"Electricity Readings with more than %d decimal places are not valid", FixedPointReadings.SCALE));
+		}
+		if (rejection != null) {
+			rejection.increment();
+			throw new InvalidElectricityReadingException("Electricity Readings are not valid");
+		}
+	}
+
+	/**
+	 * Finds if the readings of a binary upload are valid or not. Fixed-point readings
+	 * are always representable, so only the meterId, the reading count and that every
+	 * time is within the range of Instant are checked.
+	 */
+	public void validateMeterReading(MeterReadingsBatch batch)
+				throws InvalidMeterIdException, InvalidElectricityReadingException {
+		if (!isMeterIdValid(batch.smartMeterId())) {
+			invalidMeterIdRejections.increment();
+			throw new InvalidMeterIdException(String.format("Smart meter id is not valid %s", batch.smartMeterId()));
+		}
+
+		if (batch.size() == 0) {
+			noReadingsRejections.increment();
+			throw new InvalidElectricityReadingException("Electricity Readings are not valid");
+		}
+		for (long epochSecond : batch.epochSeconds()) {
+			if (epochSecond < Instant.MIN.getEpochSecond() || epochSecond > Instant.MAX.getEpochSecond()) {
+				timeOutOfRangeRejections.increment();
+				throw new InvalidElectricityReadingException("Electricity Readings are not valid");
+			}
+		}
+	}
+
+	/**
+	 * Checks if given meter id is valid or not. Assumption:- format for a valid
+	 * meter id is - smart-meter-{number(digit)}
+	 * 
+	 * @param smartMeterId - smart meter id provided by the user
+	 * @return true if meterId is valid false otherwise
+	 */
+	private boolean isMeterIdValid(String smartMeterId) {
+		return smartMeterId != null && !smartMeterId.isEmpty() && smartMeterId.matches(validMeterIdRegex);
+	}
+
+	/**
+	 * Checks if given electricity readings are valid or not Assumption - for
+	 * readings that are invalid i.e. either don't have the required parameters or
+	 * missing a parameter. eg. {"read":0.0503} or {"tim":1606636800,
+	 * "reading":0.0503} We individually check if reading or time is null for any
+	 * electricity reading. Readings with more decimal places than the store keeps
+	 * (see {@link FixedPointReadings}) are not valid either.
+	 * 
+	 * @param electricityReadings - readings provided by the user
+	 * @return counter of the first reason the readings are not valid, null if they are valid
+	 */
+	private Counter electricityReadingsRejection(List<ElectricityReading> electricityReadings) {
+		if (electricityReadings == null || electricityReadings.isEmpty()) {
+			return noReadingsRejections;
+		}
+		for (ElectricityReading reading : electricityReadings) {
+			if (reading == null || reading.time() == null || reading.reading() == null) {
+				return incompleteReadingRejections;
+			}
+			if (!FixedPointReadings.isRepresentable(reading.reading())) {
+				return unrepresentableReadingRejections;
+			}
+		}
+		return null;
+	}
+
+	private static Counter rejectionCounter(String reason, String description, MeterRegistry meterRegistry) {
+		return Counter.builder("energy.readings.rejections")
+				.tag("reason", reason)
+				.description(description)
+				.register(meterRegistry);
+	}
+}
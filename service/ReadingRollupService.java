@@ -0,0 +1,144 @@
+package uk.tw.energy.service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.springframework.stereotype.Service;
+
+import uk.tw.energy.domain.MeterReadingsBatch;
+import uk.tw.energy.domain.ReadingRollup;
+import uk.tw.energy.domain.ReadingRollupsPage;
+import uk.tw.energy.domain.ReadingsQuery;
+import uk.tw.energy.domain.RollupResolution;
+import uk.tw.energy.exceptions.InvalidReadingsQueryException;
+import uk.tw.energy.store.FixedPointReadings;
+import uk.tw.energy.store.MeterReadingSeries;
+import uk.tw.energy.store.MeterReadingStore;
+import uk.tw.energy.store.ReadingAppendListener;
+import uk.tw.energy.store.ReadingIterator;
+
+/**
+ * This service class maintains per meter rollups - sum, count, minimum and maximum
+ * of the readings per hour and day bucket. Rollups are updated as readings are
+ * stored, so reading a long range at a coarse resolution costs one step per bucket
+ * rather than one per reading. Minute buckets are folded from the readings of the
+ * requested page when read, so they take no memory between requests.
+ * Assumption - a meter's rollups are built from its full series the first time
+ * they are read, and kept up to date from then on.
+ */
+@Service
+public class ReadingRollupService implements ReadingAppendListener {
+
+	private final MeterReadingStore meterReadingStore;
+	private final ConcurrentMap<String, MeterReadingRollups> perMeterRollups = new ConcurrentHashMap<>();
+
+	public ReadingRollupService(MeterReadingStore meterReadingStore) {
+		this.meterReadingStore = meterReadingStore;
+		meterReadingStore.addAppendListener(this);
+	}
+
+	/**
+	 * Gets one page of the rollup buckets of a meter that overlap a time range, if
+	 * the meter has readings. The limit and cursor of the query count buckets.
+	 * 
+	 * @param smartMeterId - the meter id of the associated meter
+	 * @param resolution   - width of the buckets
+	 * @param query        - time range, page size and cursor of the previous page
+	 * @return the page of buckets with the cursor of the next page if there is one
+	 * @throws InvalidReadingsQueryException - if the range or limit is not valid or
+	 *                                       the cursor cannot be decoded
+	 */
+	public Optional<ReadingRollupsPage> getRollups(String smartMeterId, RollupResolution resolution,
+			ReadingsQuery query) throws InvalidReadingsQueryException {
+		MeterReadingService.validateQuery(query);
+		ReadingsCursor cursor = query.cursor() == null ? null : ReadingsCursor.decode(query.cursor());
+		if (!MeterReadingRollups.keeps(resolution)) {
+			return meterReadingStore.getSeries(smartMeterId)
+					.map(series -> findPage(foldPage(series, resolution, query, cursor), resolution, query, cursor));
+		}
+		return getMeterRollups(smartMeterId)
+				.map(rollups -> rollups.read(resolution, columns -> findPage(columns, resolution, query, cursor)));
+	}
+
+	/**
+	 * Folds appended readings into the meter's rollups. Rollups that do not line up
+	 * with the append are dropped and rebuilt on the next read. The rollups' lock is
+	 * taken outside of the map's bin lock, which would otherwise pin a virtual thread
+	 * waiting for a reader.
+	 */
+	@Override
+	public void onAppend(long readingsBefore, MeterReadingsBatch batch) {
+		MeterReadingRollups rollups = perMeterRollups.get(batch.smartMeterId());
+		if (rollups != null && !rollups.add(readingsBefore, MeterReadingSeries.of(batch))) {
+			perMeterRollups.remove(batch.smartMeterId(), rollups);
+		}
+	}
+
+	private Optional<MeterReadingRollups> getMeterRollups(String smartMeterId) {
+		Optional<MeterReadingSeries> series = meterReadingStore.getSeries(smartMeterId);
+		if (!series.isPresent()) {
+			return Optional.empty();
+		}
+		MeterReadingRollups rollups = perMeterRollups.get(smartMeterId);
+		if (rollups != null && rollups.readingCount() >= series.get().size()) {
+			return Optional.of(rollups);
+		}
+		MeterReadingRollups rebuilt = new MeterReadingRollups();
+		rebuilt.add(0, series.get());
+		return Optional.of(perMeterRollups.merge(smartMeterId, rebuilt,
+				(current, candidate) -> current.readingCount() >= candidate.readingCount() ? current : candidate));
+	}
+
+	/**
+	 * Folds the readings of the buckets a page can hold, and of the first bucket after
+	 * them to tell if there is a next page, into rollups at a resolution that is not
+	 * kept. Readings are sorted by time, so buckets are only ever added at the end.
+	 */
+	private static RollupColumns foldPage(MeterReadingSeries series, RollupResolution resolution, ReadingsQuery query,
+			ReadingsCursor cursor) {
+		long start = query.from() == null ? Long.MIN_VALUE : resolution.bucketStart(query.from().getEpochSecond());
+		if (cursor != null) {
+			start = Math.max(start, cursor.epochSecond());
+		}
+		RollupColumns columns = new RollupColumns(resolution);
+		ReadingIterator iterator = series.iterator(series.indexAtOrAfter(start));
+		while (iterator.next()) {
+			long bucketStart = resolution.bucketStart(iterator.epochSecond());
+			if (query.to() != null && bucketStart >= query.to().getEpochSecond()) {
+				break;
+			}
+			if (query.limit() != null && columns.size() > query.limit()
+					&& bucketStart != columns.bucketStart(columns.size() - 1)) {
+				break;
+			}
+			columns.add(iterator.epochSecond(), iterator.reading());
+		}
+		return columns;
+	}
+
+	private ReadingRollupsPage findPage(RollupColumns columns, RollupResolution resolution, ReadingsQuery query,
+			ReadingsCursor cursor) {
+		int start = query.from() == null ? 0
+				: columns.indexAtOrAfter(resolution.bucketStart(query.from().getEpochSecond()));
+		if (cursor != null) {
+			start = Math.max(start, columns.indexAtOrAfter(cursor.epochSecond()));
+		}
+		int end = query.to() == null ? columns.size() : columns.indexAtOrAfter(query.to().getEpochSecond());
+		end = Math.max(start, end);
+		String nextCursor = null;
+		if (query.limit() != null && end - start > query.limit()) {
+			end = start + query.limit();
+			nextCursor = new ReadingsCursor(columns.bucketStart(end), 0).encode();
+		}
+		List<ReadingRollup> rollups = new ArrayList<>(end - start);
+		for (int i = start; i < end; i++) {
+			rollups.add(new ReadingRollup(Instant.ofEpochSecond(columns.bucketStart(i)), columns.sum(i), columns.count(i),
+					FixedPointReadings.toBigDecimal(columns.min(i)), FixedPointReadings.toBigDecimal(columns.max(i))));
+		}
+		return new ReadingRollupsPage(rollups, nextCursor);
+	}
+}
@@ -0,0 +1,13 @@
+package uk.tw.energy.service;
+
+import uk.tw.energy.store.MeterReadingSeries;
+
+/**
+ * One page of readings as a view over the store, for callers that write readings
+ * out without creating domain objects.
+ * 
+ * @param readings   - readings of the page
+ * @param nextCursor - cursor of the next page, null on the last page
+ */
+public record ReadingSeriesPage(MeterReadingSeries readings, String nextCursor) {
+}
@@ -0,0 +1,38 @@
+package uk.tw.energy.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import uk.tw.energy.exceptions.InvalidReadingsQueryException;
+
+/**
+ * Continuation token for paging through the readings of a meter. It points at a
+ * reading by time rather than by position, so readings stored between two page
+ * requests do not shift the page boundary: the next page starts at the first
+ * reading at epochSecond, after skipping the readings at that second already returned.
+ * 
+ * @param epochSecond - time of the first reading of the next page
+ * @param skip        - readings at that time that were on previous pages
+ */
+record ReadingsCursor(long epochSecond, int skip) {
+
+	String encode() {
+		String token = epochSecond + ":" + skip;
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(token.getBytes(StandardCharsets.US_ASCII));
+	}
+
+	static ReadingsCursor decode(String cursor) throws InvalidReadingsQueryException {
+		try {
+			String token = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.US_ASCII);
+			int separator = token.indexOf(':');
+			ReadingsCursor decoded = new ReadingsCursor(Long.parseLong(token.substring(0, separator)),
+					Integer.parseInt(token.substring(separator + 1)));
+			if (decoded.skip() < 0) {
+				throw new IllegalArgumentException("Negative skip");
+			}
+			return decoded;
+		} catch (IllegalArgumentException | IndexOutOfBoundsException ex) {
+			throw new InvalidReadingsQueryException(String.format("Cursor is not valid %s", cursor));
+		}
+	}
+}
@@ -0,0 +1,142 @@
+package uk.tw.energy.service;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+import uk.tw.energy.domain.RollupResolution;
+import uk.tw.energy.store.FixedPointReadings;
+
+/**
+ * Rollup buckets of one meter at one resolution, kept in primitive columns sorted by
+ * bucket start. Each bucket holds the sum, count, minimum and maximum of the
+ * fixed-point readings that fall in it. Readings in time order only touch the last
+ * bucket, a late reading is placed by binary search. Not thread safe, guarded by
+ * the owning {@link MeterReadingRollups}.
+ * <p>
+ * Sums are fixed-point longs, the part of a sum beyond their range is carried as a
+ * decimal, so folding a reading in never overflows or throws.
+ */
+final class RollupColumns {
+	private static final int INITIAL_CAPACITY = 16;
+
+	private final RollupResolution resolution;
+	private long[] bucketStarts = new long[INITIAL_CAPACITY];
+	private long[] sums = new long[INITIAL_CAPACITY];
+	// null until a sum leaves the long range
+	private BigDecimal[] sumOverflows;
+	private int[] counts = new int[INITIAL_CAPACITY];
+	private long[] mins = new long[INITIAL_CAPACITY];
+	private long[] maxs = new long[INITIAL_CAPACITY];
+	private int size;
+
+	RollupColumns(RollupResolution resolution) {
+		this.resolution = resolution;
+	}
+
+	/**
+	 * Folds a reading into the bucket holding its time, creating the bucket if needed.
+	 */
+	void add(long epochSecond, long reading) {
+		long bucketStart = resolution.bucketStart(epochSecond);
+		int index;
+		if (size > 0 && bucketStarts[size - 1] == bucketStart) {
+			index = size - 1;
+		} else if (size == 0 || bucketStarts[size - 1] < bucketStart) {
+			index = insertBucket(size, bucketStart);
+		} else {
+			int found = Arrays.binarySearch(bucketStarts, 0, size, bucketStart);
+			index = found >= 0 ? found : insertBucket(-found - 1, bucketStart);
+		}
+		long sum = sums[index] + reading;
+		if (((sums[index] ^ sum) & (reading ^ sum)) < 0) {
+			// the bucket's sum left the long range, its fixed-point part restarts from the reading
+			if (sumOverflows == null) {
+				sumOverflows = new BigDecimal[bucketStarts.length];
+			}
+			BigDecimal overflow = FixedPointReadings.toBigDecimal(sums[index]);
+			sumOverflows[index] = sumOverflows[index] == null ? overflow : sumOverflows[index].add(overflow);
+			sum = reading;
+		}
+		sums[index] = sum;
+		counts[index]++;
+		mins[index] = Math.min(mins[index], reading);
+		maxs[index] = Math.max(maxs[index], reading);
+	}
+
+	int size() {
+		return size;
+	}
+
+	/**
+	 * @param epochSecond - time in seconds since the epoch
+	 * @return position of the first bucket starting at or after the time, size if none
+	 */
+	int indexAtOrAfter(long epochSecond) {
+		int low = 0;
+		int high = size;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (bucketStarts[middle] < epochSecond) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	long bucketStart(int index) {
+		return bucketStarts[index];
+	}
+
+	/**
+	 * @return sum of the readings in a bucket in kWh
+	 */
+	BigDecimal sum(int index) {
+		BigDecimal sum = FixedPointReadings.toBigDecimal(sums[index]);
+		return sumOverflows == null || sumOverflows[index] == null ? sum : sumOverflows[index].add(sum);
+	}
+
+	int count(int index) {
+		return counts[index];
+	}
+
+	long min(int index) {
+		return mins[index];
+	}
+
+	long max(int index) {
+		return maxs[index];
+	}
+
+	private int insertBucket(int index, long bucketStart) {
+		if (size == bucketStarts.length) {
+			int capacity = bucketStarts.length * 2;
+			bucketStarts = Arrays.copyOf(bucketStarts, capacity);
+			sums = Arrays.copyOf(sums, capacity);
+			counts = Arrays.copyOf(counts, capacity);
+			mins = Arrays.copyOf(mins, capacity);
+			maxs = Arrays.copyOf(maxs, capacity);
+			if (sumOverflows != null) {
+				sumOverflows = Arrays.copyOf(sumOverflows, capacity);
+			}
+		}
+		int moved = size - index;
+		System.arraycopy(bucketStarts, index, bucketStarts, index + 1, moved);
+		System.arraycopy(sums, index, sums, index + 1, moved);
+		System.arraycopy(counts, index, counts, index + 1, moved);
+		System.arraycopy(mins, index, mins, index + 1, moved);
+		System.arraycopy(maxs, index, maxs, index + 1, moved);
+		if (sumOverflows != null) {
+			System.arraycopy(sumOverflows, index, sumOverflows, index + 1, moved);
+			sumOverflows[index] = null;
+		}
+		bucketStarts[index] = bucketStart;
+		sums[index] = 0;
+		counts[index] = 0;
+		mins[index] = Long.MAX_VALUE;
+		maxs[index] = Long.MIN_VALUE;
+		size++;
+		return index;
+	}
+}
@@ -0,0 +1,14 @@
+package uk.tw.energy.service;
+
+import java.util.Map;
+
+import uk.tw.energy.store.MeterReadingSeries;
+
+/**
+ * Readings of all meters at one point in time.
+ * 
+ * @param logPosition - position of the reading log the readings are complete up to
+ * @param series      - readings per meter id
+ */
+public record StoreCheckpoint(long logPosition, Map<String, MeterReadingSeries> series) {
+}
@@ -0,0 +1,35 @@
+package uk.tw.energy.service;
+
+import java.lang.management.ManagementFactory;
+
+import com.sun.management.ThreadMXBean;
+
+/**
+ * Heap allocated by the current thread, for attributing allocation to an operation.
+ * Measuring is a read of a thread-local counter, cheap enough to do per request
+ * while a recording is running. The JDK does not measure virtual threads.
+ */
+final class ThreadAllocation {
+	private static final ThreadMXBean THREADS = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+	private static final boolean SUPPORTED = THREADS.isThreadAllocatedMemorySupported()
+			&& THREADS.isThreadAllocatedMemoryEnabled();
+
+	private ThreadAllocation() {
+	}
+
+	/**
+	 * @return bytes allocated by the current thread so far, -1 if it cannot be measured
+	 */
+	static long allocatedBytes() {
+		return SUPPORTED ? THREADS.getCurrentThreadAllocatedBytes() : -1;
+	}
+
+	/**
+	 * @param allocatedBefore - bytes allocated by the current thread at the start of the operation
+	 * @return bytes allocated by the current thread since, -1 if it cannot be measured
+	 */
+	static long allocatedSince(long allocatedBefore) {
+		long allocated = allocatedBytes();
+		return allocatedBefore < 0 || allocated < 0 ? -1 : allocated - allocatedBefore;
+	}
+}
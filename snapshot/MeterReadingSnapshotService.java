@@ -0,0 +1,85 @@
+package uk.tw.energy.snapshot;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import uk.tw.energy.service.MeterReadingService;
+import uk.tw.energy.service.StoreCheckpoint;
+import uk.tw.energy.store.MeterReadingSnapshot;
+import uk.tw.energy.wal.ReadingLog;
+
+/**
+ * Periodically writes the reading store to a snapshot file, so startup maps the
+ * snapshot and only replays the log written since.
+ * <p>
+ * A snapshot is written to a temporary file next to the target and moved into
+ * place once synced, the previous snapshot stays readable until then. Log segments
+ * the snapshot covers are deleted only once the directory is synced too, so a
+ * crash cannot leave the previous snapshot in place without the log it needs.
+ */
+@Service
+public class MeterReadingSnapshotService {
+	private static final Logger LOGGER = LoggerFactory.getLogger(MeterReadingSnapshotService.class);
+
+	private final MeterReadingService meterReadingService;
+	private final ReadingLog readingLog;
+	private final boolean enabled;
+	private final Path path;
+
+	public MeterReadingSnapshotService(MeterReadingService meterReadingService, ReadingLog readingLog,
+			@Value("${energy.snapshot.enabled:false}") boolean enabled,
+			@Value("${energy.snapshot.path:data/readings.snapshot}") String path) {
+		this.meterReadingService = meterReadingService;
+		this.readingLog = readingLog;
+		this.enabled = enabled;
+		this.path = Path.of(path);
+	}
+
+	@Scheduled(initialDelayString = "${energy.snapshot.interval-ms:300000}",
+			fixedDelayString = "${energy.snapshot.interval-ms:300000}")
+	public void scheduledSnapshot() throws IOException {
+		if (enabled) {
+			writeSnapshot();
+		}
+	}
+
+	/**
+	 * Writes a snapshot of all readings stored so far.
+	 * 
+	 * @throws IOException - if the snapshot cannot be written, the previous snapshot
+	 *                     and the log are left untouched
+	 */
+	public void writeSnapshot() throws IOException {
+		long start = System.nanoTime();
+		StoreCheckpoint checkpoint = meterReadingService.checkpoint();
+		Path directory = path.toAbsolutePath().getParent();
+		Files.createDirectories(directory);
+		Path temporary = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+		try {
+			MeterReadingSnapshot.write(temporary, checkpoint.logPosition(), checkpoint.series());
+			Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temporary);
+		}
+		syncDirectory(directory);
+		readingLog.discardBefore(checkpoint.logPosition());
+		LOGGER.info("Wrote snapshot of {} meters to {} in {} ms", checkpoint.series().size(), path,
+				(System.nanoTime() - start) / 1_000_000);
+	}
+
+	private static void syncDirectory(Path directory) throws IOException {
+		try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+			channel.force(true);
+		}
+	}
+}
@@ -0,0 +1,28 @@
+package uk.tw.energy.snapshot;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import uk.tw.energy.store.MeterReadingSnapshot;
+
+/**
+ * Opens the snapshot the reading store is restored from. Snapshots are off unless
+ * {@code energy.snapshot.enabled} is set, in which case the file at
+ * {@code energy.snapshot.path} is mapped if it exists.
+ */
+@Configuration
+public class SnapshotConfiguration {
+
+	@Bean
+	public MeterReadingSnapshot restoredSnapshot(@Value("${energy.snapshot.enabled:false}") boolean enabled,
+			@Value("${energy.snapshot.path:data/readings.snapshot}") String path) throws IOException {
+		if (!enabled) {
+			return MeterReadingSnapshot.EMPTY;
+		}
+		return MeterReadingSnapshot.open(Path.of(path));
+	}
+}
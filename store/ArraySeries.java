@@ -0,0 +1,30 @@
+package uk.tw.energy.store;
+
+import java.util.Objects;
+
+/**
+ * {@link MeterReadingSeries} over the leading positions of a set of column arrays.
+ */
+record ArraySeries(long[] epochSeconds, int[] nanos, long[] readings, byte[] scales, int size)
+		implements MeterReadingSeries {
+
+	@Override
+	public long epochSecond(int index) {
+		return epochSeconds[Objects.checkIndex(index, size)];
+	}
+
+	@Override
+	public int nano(int index) {
+		return nanos[Objects.checkIndex(index, size)];
+	}
+
+	@Override
+	public long reading(int index) {
+		return readings[Objects.checkIndex(index, size)];
+	}
+
+	@Override
+	public int scale(int index) {
+		return scales[Objects.checkIndex(index, size)];
+	}
+}
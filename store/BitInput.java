@@ -0,0 +1,54 @@
+package uk.tw.energy.store;
+
+/**
+ * Reads a bit stream written by {@link BitOutput}.
+ */
+class BitInput {
+	private final long[] words;
+	private long position;
+
+	BitInput(long[] words) {
+		this.words = words;
+	}
+
+	/**
+	 * Reads the next bits as the low bits of a value.
+	 *
+	 * @param bits - number of bits to read, 1 to 64
+	 * @return the bits read
+	 */
+	long read(int bits) {
+		long value = peek(bits);
+		position += bits;
+		return value;
+	}
+
+	/**
+	 * Reads a prefix of up to {@code maximum} one bits ended by a zero bit.
+	 *
+	 * @param maximum - number of one bits after which no zero bit follows, below 64
+	 * @return number of one bits read
+	 */
+	int readOnes(int maximum) {
+		long prefix = peek(maximum) << (Long.SIZE - maximum);
+		int ones = Math.min(maximum, Long.numberOfLeadingZeros(~prefix));
+		position += ones == maximum ? maximum : ones + 1;
+		return ones;
+	}
+
+	/**
+	 * Returns the next bits without consuming them. Bits past the end of the
+	 * stream read as zero.
+	 */
+	private long peek(int bits) {
+		int wordIndex = (int) (position >>> 6);
+		int offset = (int) (position & 63);
+		int available = Long.SIZE - offset;
+		if (bits <= available) {
+			return (words[wordIndex] << offset) >>> (Long.SIZE - bits);
+		}
+		long high = (words[wordIndex] & ((1L << available) - 1)) << (bits - available);
+		long next = wordIndex + 1 < words.length ? words[wordIndex + 1] : 0;
+		return high | (next >>> (Long.SIZE - (bits - available)));
+	}
+}
@@ -0,0 +1,40 @@
+package uk.tw.energy.store;
+
+import java.util.Arrays;
+
+/**
+ * Growable bit stream, filling each long from its most significant bit.
+ */
+class BitOutput {
+	private long[] words = new long[16];
+	private long bitLength;
+
+	/**
+	 * Appends the low bits of a value, most significant first.
+	 *
+	 * @param value - value to append
+	 * @param bits  - number of low bits to append, 1 to 64
+	 */
+	void write(long value, int bits) {
+		int wordIndex = (int) (bitLength >>> 6);
+		if (wordIndex + 1 >= words.length) {
+			words = Arrays.copyOf(words, words.length * 2);
+		}
+		long masked = bits == Long.SIZE ? value : value & ((1L << bits) - 1);
+		int free = Long.SIZE - (int) (bitLength & 63);
+		if (bits <= free) {
+			words[wordIndex] |= masked << (free - bits);
+		} else {
+			words[wordIndex] |= masked >>> (bits - free);
+			words[wordIndex + 1] |= masked << (Long.SIZE - (bits - free));
+		}
+		bitLength += bits;
+	}
+
+	/**
+	 * @return the written words, trimmed to the bits written
+	 */
+	long[] toWords() {
+		return Arrays.copyOf(words, (int) ((bitLength + 63) >>> 6));
+	}
+}
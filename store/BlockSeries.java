@@ -0,0 +1,161 @@
+package uk.tw.energy.store;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * {@link MeterReadingSeries} over a run of {@link CompressedBlock}s. Iterating
+ * decodes the blocks as a stream. Positional access decodes the block holding the
+ * position and keeps the last decoded block, so walking the series by position
+ * decodes each block once.
+ */
+final class BlockSeries implements MeterReadingSeries {
+	private final CompressedBlock[] blocks;
+	// position of the first reading of each block, followed by the series size
+	private final int[] blockStarts;
+	private volatile DecodedBlock lastDecoded;
+
+	BlockSeries(CompressedBlock[] blocks) {
+		this.blocks = blocks;
+		this.blockStarts = new int[blocks.length + 1];
+		for (int i = 0; i < blocks.length; i++) {
+			blockStarts[i + 1] = blockStarts[i] + blocks[i].size();
+		}
+	}
+
+	@Override
+	public int size() {
+		return blockStarts[blocks.length];
+	}
+
+	@Override
+	public long epochSecond(int index) {
+		DecodedBlock block = decodedBlockOf(Objects.checkIndex(index, size()));
+		return block.epochSeconds()[index - blockStarts[block.blockIndex()]];
+	}
+
+	@Override
+	public int nano(int index) {
+		DecodedBlock block = decodedBlockOf(Objects.checkIndex(index, size()));
+		return block.nanos()[index - blockStarts[block.blockIndex()]];
+	}
+
+	@Override
+	public long reading(int index) {
+		DecodedBlock block = decodedBlockOf(Objects.checkIndex(index, size()));
+		return block.readings()[index - blockStarts[block.blockIndex()]];
+	}
+
+	@Override
+	public int scale(int index) {
+		DecodedBlock block = decodedBlockOf(Objects.checkIndex(index, size()));
+		return block.scales()[index - blockStarts[block.blockIndex()]];
+	}
+
+	@Override
+	public int indexAtOrAfter(long epochSecond) {
+		int low = 0;
+		int high = blocks.length;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (blocks[middle].lastEpochSecond() < epochSecond) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		if (low == blocks.length) {
+			return size();
+		}
+		if (blocks[low].firstEpochSecond() >= epochSecond) {
+			return blockStarts[low];
+		}
+		ReadingIterator iterator = blocks[low].iterator();
+		int index = blockStarts[low];
+		while (iterator.next() && iterator.epochSecond() < epochSecond) {
+			index++;
+		}
+		return index;
+	}
+
+	@Override
+	public ReadingIterator iterator(int fromIndex) {
+		Objects.checkFromToIndex(fromIndex, size(), size());
+		int firstBlock = blockIndexOf(fromIndex);
+		return new ReadingIterator() {
+			private int blockIndex = firstBlock;
+			private ReadingIterator block = firstBlock < blocks.length ? blocks[firstBlock].iterator() : null;
+
+			{
+				for (int skipped = fromIndex - blockStarts[firstBlock]; skipped > 0; skipped--) {
+					block.next();
+				}
+			}
+
+			@Override
+			public boolean next() {
+				while (block != null) {
+					if (block.next()) {
+						return true;
+					}
+					block = ++blockIndex < blocks.length ? blocks[blockIndex].iterator() : null;
+				}
+				return false;
+			}
+
+			@Override
+			public long epochSecond() {
+				return block.epochSecond();
+			}
+
+			@Override
+			public int nano() {
+				return block.nano();
+			}
+
+			@Override
+			public long reading() {
+				return block.reading();
+			}
+
+			@Override
+			public int scale() {
+				return block.scale();
+			}
+		};
+	}
+
+	/**
+	 * @return bytes taken by the compressed readings of all blocks
+	 */
+	long compressedBytes() {
+		long bytes = 0;
+		for (CompressedBlock block : blocks) {
+			bytes += block.compressedBytes();
+		}
+		return bytes;
+	}
+
+	private int blockIndexOf(int index) {
+		int found = Arrays.binarySearch(blockStarts, 0, blocks.length, index);
+		return found >= 0 ? found : -found - 2;
+	}
+
+	private DecodedBlock decodedBlockOf(int index) {
+		DecodedBlock decoded = lastDecoded;
+		if (decoded != null && index >= blockStarts[decoded.blockIndex()]
+				&& index < blockStarts[decoded.blockIndex() + 1]) {
+			return decoded;
+		}
+		int blockIndex = blockIndexOf(index);
+		CompressedBlock block = blocks[blockIndex];
+		decoded = new DecodedBlock(blockIndex, new long[block.size()], new int[block.size()], new long[block.size()],
+				new byte[block.size()]);
+		block.decodeInto(decoded.epochSeconds(), decoded.nanos(), decoded.readings(), decoded.scales());
+		lastDecoded = decoded;
+		return decoded;
+	}
+
+	private record DecodedBlock(int blockIndex, long[] epochSeconds, int[] nanos, long[] readings, byte[] scales) {
+	}
+}
@@ -0,0 +1,439 @@
+package uk.tw.energy.store;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Cold tier for sealed reading blocks. The words of sealed blocks of all meters
+ * share one heap budget: the least recently used blocks beyond it are written to
+ * a spill file and dropped from the heap, and read back into it when used again.
+ * A block keeps its place in the spill file once written, so dropping it again
+ * costs no write.
+ * <p>
+ * Blocks a meter unseals to merge in late readings are released: their place in
+ * the spill file is freed, merged with free neighbours and reused for later
+ * blocks, and the file is truncated when its end is freed.
+ * <p>
+ * The spill file only extends the heap of the running application - readings are
+ * recovered from the snapshot and the reading log after a restart - so it is
+ * not synced, and is recreated when the store is opened.
+ * <p>
+ * Blocks are read back on whichever thread iterates them. An interrupt during I/O
+ * closes a file channel for every thread using it, so the spill file is reopened
+ * when that happens, and interrupts are held back while the I/O runs.
+ */
+public final class ColdBlockStore implements AutoCloseable {
+	/**
+	 * Cold tier that never spills, every sealed block stays on the heap.
+	 */
+	public static final ColdBlockStore NONE = new ColdBlockStore(null, null, Long.MAX_VALUE);
+
+	private static final String SPILL_FILE = "cold-blocks.bin";
+
+	private final Path file;
+	private final long heapBudgetBytes;
+	// replaced when closed by an interrupt, guarded by channelLock
+	private volatile FileChannel channel;
+	private boolean closed;
+	private final ReentrantLock channelLock = new ReentrantLock();
+
+	// guards the resident blocks, the spill state of every block and the spill file's extents
+	private final ReentrantLock lock = new ReentrantLock();
+	private final LinkedHashMap<CompressedBlock, Boolean> resident = new LinkedHashMap<>(16, 0.75f, true);
+	private long residentBytes;
+	// free extents of the spill file by position, adjacent extents merged
+	private final TreeMap<Long, Long> freeExtents = new TreeMap<>();
+	private long freeBytes;
+	private long fileBytes;
+
+	// held to read a spilled block so its extent is not freed and reused meanwhile
+	private final ReentrantReadWriteLock extentLock = new ReentrantReadWriteLock();
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+
+	private ColdBlockStore(Path file, FileChannel channel, long heapBudgetBytes) {
+		this.file = file;
+		this.channel = channel;
+		this.heapBudgetBytes = heapBudgetBytes;
+	}
+
+	/**
+	 * Creates a cold tier spilling to a directory.
+	 *
+	 * @param directory       - directory of the spill file, created if missing
+	 * @param heapBudgetBytes - heap taken at most by the words of sealed blocks
+	 * @return the cold tier
+	 * @throws IOException - if the spill file cannot be created
+	 */
+	public static ColdBlockStore open(Path directory, long heapBudgetBytes) throws IOException {
+		if (heapBudgetBytes < 0) {
+			throw new IllegalArgumentException("Heap budget must not be negative");
+		}
+		Files.createDirectories(directory);
+		Path file = directory.resolve(SPILL_FILE);
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		return new ColdBlockStore(file, channel, heapBudgetBytes);
+	}
+
+	/**
+	 * Starts tracking a newly sealed, resident block, spilling the least recently used
+	 * blocks if the heap budget is exceeded.
+	 */
+	void admit(CompressedBlock block) {
+		if (file == null) {
+			return;
+		}
+		List<CompressedBlock> spills;
+		lock.lock();
+		try {
+			if (resident.put(block, Boolean.TRUE) == null) {
+				residentBytes += block.compressedBytes();
+			}
+			spills = evictOverBudget();
+		} finally {
+			lock.unlock();
+		}
+		spill(spills);
+	}
+
+	/**
+	 * Gets the words of a block, reading them back from the spill file if the block
+	 * is not resident.
+	 */
+	long[] wordsOf(CompressedBlock block) {
+		long[] words = block.residentWords();
+		if (file == null) {
+			return words;
+		}
+		if (words != null) {
+			hits.increment();
+			lock.lock();
+			try {
+				resident.get(block);
+			} finally {
+				lock.unlock();
+			}
+			return words;
+		}
+		misses.increment();
+		extentLock.readLock().lock();
+		try {
+			words = block.residentWords();
+			if (words != null) {
+				// released or read back meanwhile
+				return words;
+			}
+			words = readFromFile(block.spillPosition(), block.wordCount());
+		} finally {
+			extentLock.readLock().unlock();
+		}
+		List<CompressedBlock> spills;
+		lock.lock();
+		try {
+			if (block.residentWords() != null) {
+				return block.residentWords();
+			}
+			block.setWords(words);
+			resident.put(block, Boolean.TRUE);
+			residentBytes += block.compressedBytes();
+			spills = evictOverBudget();
+		} finally {
+			lock.unlock();
+		}
+		spill(spills);
+		return words;
+	}
+
+	/**
+	 * Stops tracking a block a meter no longer holds, freeing its place in the spill
+	 * file. The block stays resident, outside the budget, for series handed out
+	 * before it was released.
+	 */
+	void release(CompressedBlock block) {
+		if (file == null) {
+			return;
+		}
+		extentLock.writeLock().lock();
+		lock.lock();
+		try {
+			if (block.isReleased()) {
+				return;
+			}
+			if (block.residentWords() == null) {
+				block.setWords(readFromFile(block.spillPosition(), block.wordCount()));
+			} else if (resident.remove(block) != null) {
+				residentBytes -= block.compressedBytes();
+			}
+			block.setReleased();
+			if (block.spillPosition() >= 0) {
+				free(block.spillPosition(), block.compressedBytes());
+			}
+		} finally {
+			lock.unlock();
+			extentLock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * @return reads of sealed blocks served from the heap
+	 */
+	public long cacheHits() {
+		return hits.sum();
+	}
+
+	/**
+	 * @return reads of sealed blocks that went to the spill file
+	 */
+	public long cacheMisses() {
+		return misses.sum();
+	}
+
+	/**
+	 * @return sealed blocks dropped from the heap to stay within the budget
+	 */
+	public long cacheEvictions() {
+		return evictions.sum();
+	}
+
+	/**
+	 * @return heap taken by the words of sealed blocks
+	 */
+	public long cachedBytes() {
+		lock.lock();
+		try {
+			return residentBytes;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return size of the spill file
+	 */
+	public long spilledBytes() {
+		lock.lock();
+		try {
+			return fileBytes;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return bytes of the spill file freed by released blocks and not reused yet
+	 */
+	public long reusableSpilledBytes() {
+		lock.lock();
+		try {
+			return freeBytes;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (file == null) {
+			return;
+		}
+		channelLock.lock();
+		try {
+			closed = true;
+			channel.close();
+		} finally {
+			channelLock.unlock();
+		}
+	}
+
+	/**
+	 * Drops the least recently used blocks from the heap until the budget is met.
+	 * Blocks already in the spill file are dropped right away, the others get a place
+	 * in it and are returned to be written. Must be called holding {@link #lock}.
+	 */
+	private List<CompressedBlock> evictOverBudget() {
+		List<CompressedBlock> spills = new ArrayList<>();
+		Iterator<CompressedBlock> leastRecentlyUsed = resident.keySet().iterator();
+		while (residentBytes > heapBudgetBytes && leastRecentlyUsed.hasNext()) {
+			CompressedBlock block = leastRecentlyUsed.next();
+			leastRecentlyUsed.remove();
+			residentBytes -= block.compressedBytes();
+			evictions.increment();
+			if (block.spillPosition() >= 0) {
+				block.setWords(null);
+			} else {
+				spills.add(block);
+			}
+		}
+		return spills;
+	}
+
+	/**
+	 * Writes blocks evicted from the heap to the spill file, then drops their words
+	 * unless they were released or read back meanwhile.
+	 */
+	private void spill(List<CompressedBlock> blocks) {
+		for (CompressedBlock block : blocks) {
+			long[] words = block.residentWords();
+			long position;
+			lock.lock();
+			try {
+				position = allocate(block.compressedBytes());
+			} finally {
+				lock.unlock();
+			}
+			write(words, position);
+			lock.lock();
+			try {
+				if (block.isReleased()) {
+					free(position, block.compressedBytes());
+				} else {
+					block.setSpillPosition(position);
+					if (!resident.containsKey(block)) {
+						block.setWords(null);
+					}
+				}
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * First fit in the free extents, or the end of the file. Must be called holding
+	 * {@link #lock}.
+	 */
+	private long allocate(long bytes) {
+		for (Map.Entry<Long, Long> extent : freeExtents.entrySet()) {
+			long position = extent.getKey();
+			long extentBytes = extent.getValue();
+			if (extentBytes >= bytes) {
+				freeExtents.remove(position);
+				if (extentBytes > bytes) {
+					freeExtents.put(position + bytes, extentBytes - bytes);
+				}
+				freeBytes -= bytes;
+				return position;
+			}
+		}
+		long position = fileBytes;
+		fileBytes += bytes;
+		return position;
+	}
+
+	/**
+	 * Returns an extent to the free extents, merged with its free neighbours, or
+	 * truncates the file if the extent ends it. Must be called holding {@link #lock}.
+	 */
+	private void free(long position, long bytes) {
+		Map.Entry<Long, Long> before = freeExtents.floorEntry(position);
+		if (before != null && before.getKey() + before.getValue() == position) {
+			freeExtents.remove(before.getKey());
+			freeBytes -= before.getValue();
+			position = before.getKey();
+			bytes += before.getValue();
+		}
+		Long after = freeExtents.get(position + bytes);
+		if (after != null) {
+			freeExtents.remove(position + bytes);
+			freeBytes -= after;
+			bytes += after;
+		}
+		if (position + bytes == fileBytes) {
+			fileBytes = position;
+			long size = position;
+			onChannel("Failed to truncate the spill file", channel -> channel.truncate(size));
+		} else {
+			freeExtents.put(position, bytes);
+			freeBytes += bytes;
+		}
+	}
+
+	private void write(long[] words, long position) {
+		ByteBuffer buffer = ByteBuffer.allocate(words.length * Long.BYTES);
+		buffer.asLongBuffer().put(words);
+		onChannel("Failed to spill reading block", channel -> {
+			buffer.rewind();
+			while (buffer.hasRemaining()) {
+				channel.write(buffer, position + buffer.position());
+			}
+		});
+	}
+
+	private long[] readFromFile(long position, int wordCount) {
+		ByteBuffer buffer = ByteBuffer.allocate(wordCount * Long.BYTES);
+		onChannel("Failed to read spilled reading block", channel -> {
+			buffer.clear();
+			while (buffer.hasRemaining()) {
+				if (channel.read(buffer, position + buffer.position()) < 0) {
+					throw new IOException("Spill file ends before the block");
+				}
+			}
+		});
+		long[] words = new long[wordCount];
+		buffer.flip().asLongBuffer().get(words);
+		return words;
+	}
+
+	/**
+	 * Runs I/O on the spill file with the thread's interrupt held back, retrying on a
+	 * reopened file if another thread's interrupt closed the channel meanwhile.
+	 */
+	private void onChannel(String failure, ChannelOperation operation) {
+		boolean interrupted = Thread.interrupted();
+		try {
+			while (true) {
+				FileChannel current = channel;
+				try {
+					operation.run(current);
+					return;
+				} catch (ClosedChannelException e) {
+					interrupted |= Thread.interrupted();
+					reopen(current, e);
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(failure, e);
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private void reopen(FileChannel closedChannel, ClosedChannelException cause) throws IOException {
+		channelLock.lock();
+		try {
+			if (closed) {
+				throw cause;
+			}
+			if (channel == closedChannel) {
+				channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			}
+		} finally {
+			channelLock.unlock();
+		}
+	}
+
+	@FunctionalInterface
+	private interface ChannelOperation {
+		void run(FileChannel channel) throws IOException;
+	}
+}
@@ -0,0 +1,132 @@
+package uk.tw.energy.store;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import uk.tw.energy.domain.MeterReadingsBatch;
+
+/**
+ * {@link MeterReadingStore} keeping each meter's readings in primitive columns
+ * instead of one object graph per reading.
+ * <p>
+ * Appends to the same meter are serialised through a fixed set of striped locks,
+ * so uploads for different meters rarely contend. Readers never lock: they get the
+ * snapshot published by the last completed append. Append listeners run inside the
+ * meter's lock, after the new snapshot has been published. A listener that throws
+ * is logged and does not fail the append.
+ */
+public class ColumnarMeterReadingStore implements MeterReadingStore {
+	private static final Logger LOGGER = LoggerFactory.getLogger(ColumnarMeterReadingStore.class);
+	private static final int DEFAULT_LOCK_STRIPES = 64;
+
+	private final ConcurrentMap<String, MeterReadingColumns> perMeterColumns = new ConcurrentHashMap<>();
+	private final ReentrantLock[] stripes;
+	private final List<ReadingAppendListener> appendListeners = new CopyOnWriteArrayList<>();
+	private final ColdBlockStore coldBlockStore;
+	private final LongAdder readingCount = new LongAdder();
+
+	public ColumnarMeterReadingStore() {
+		this(DEFAULT_LOCK_STRIPES, ColdBlockStore.NONE);
+	}
+
+	/**
+	 * @param lockStripes    - number of locks shared by all meters, rounded up to a power of two
+	 * @param coldBlockStore - tier older sealed blocks are spilled to
+	 */
+	public ColumnarMeterReadingStore(int lockStripes, ColdBlockStore coldBlockStore) {
+		this.coldBlockStore = coldBlockStore;
+		int stripeCount = Integer.highestOneBit(Math.max(1, lockStripes - 1) << 1);
+		this.stripes = new ReentrantLock[stripeCount];
+		for (int i = 0; i < stripeCount; i++) {
+			stripes[i] = new ReentrantLock();
+		}
+	}
+
+	/**
+	 * Creates a store holding the readings of a snapshot. The snapshot's series are
+	 * used in place - they are not copied - and new readings are kept on the heap
+	 * after them.
+	 *
+	 * @param snapshot       - snapshot to restore, must stay open while the store is used
+	 * @param coldBlockStore - tier older sealed blocks are spilled to
+	 */
+	public ColumnarMeterReadingStore(MeterReadingSnapshot snapshot, ColdBlockStore coldBlockStore) {
+		this(DEFAULT_LOCK_STRIPES, coldBlockStore);
+		snapshot.series().forEach((smartMeterId, series) -> {
+			perMeterColumns.put(smartMeterId, new MeterReadingColumns(series, 0, coldBlockStore));
+			readingCount.add(series.size());
+		});
+	}
+
+	@Override
+	public void append(MeterReadingsBatch batch) {
+		String smartMeterId = batch.smartMeterId();
+		MeterReadingColumns columns = perMeterColumns.computeIfAbsent(smartMeterId, k -> new MeterReadingColumns(MeterReadingColumns.EMPTY, batch.size(), coldBlockStore));
+		ReentrantLock lock = stripeFor(smartMeterId);
+		lock.lock();
+		try {
+			long readingsBefore = columns.snapshot().size();
+			columns.append(batch);
+			readingCount.add(columns.snapshot().size() - readingsBefore);
+			for (ReadingAppendListener listener : appendListeners) {
+				try {
+					listener.onAppend(readingsBefore, batch);
+				} catch (RuntimeException e) {
+					// the readings are stored, a listener's derived state catches up from the series
+					LOGGER.error("Append listener failed for meter {}", smartMeterId, e);
+				}
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public Optional<MeterReadingSeries> getSeries(String smartMeterId) {
+		return Optional.ofNullable(perMeterColumns.get(smartMeterId))
+				.map(MeterReadingColumns::snapshot)
+				.filter(series -> series.size() > 0);
+	}
+
+	@Override
+	public Map<String, MeterReadingSeries> getAllSeries() {
+		Map<String, MeterReadingSeries> allSeries = new LinkedHashMap<>();
+		perMeterColumns.forEach((smartMeterId, columns) -> {
+			MeterReadingSeries series = columns.snapshot();
+			if (series.size() > 0) {
+				allSeries.put(smartMeterId, series);
+			}
+		});
+		return allSeries;
+	}
+
+	@Override
+	public int meterCount() {
+		return perMeterColumns.size();
+	}
+
+	@Override
+	public long readingCount() {
+		return readingCount.sum();
+	}
+
+	@Override
+	public void addAppendListener(ReadingAppendListener listener) {
+		appendListeners.add(listener);
+	}
+
+	private ReentrantLock stripeFor(String smartMeterId) {
+		int hash = smartMeterId.hashCode();
+		return stripes[(hash ^ (hash >>> 16)) & (stripes.length - 1)];
+	}
+}
@@ -0,0 +1,257 @@
+package uk.tw.energy.store;
+
+/**
+ * Compressed run of readings of one meter, sorted by time. The readings never
+ * change, only where their words are held.
+ * <p>
+ * The first reading is written in full. Every following time is encoded as the
+ * difference between its delta and the previous delta, and every following
+ * reading as its difference to the previous reading, each zig-zag encoded into
+ * the smallest of a few bit widths announced by a unary prefix:
+ *
+ * <pre>
+ * time delta-of-delta          reading delta
+ * 0     same interval          0     unchanged
+ * 10    + 7 bits               10    + 6 bits
+ * 110   + 9 bits               110   + 13 bits
+ * 1110  + 12 bits              1110  + 20 bits
+ * 1111  + 64 bits              1111  + 64 bits
+ * </pre>
+ *
+ * A meter reporting at a fixed interval spends one bit per time. Readings are
+ * fixed-point integers rather than floating point values, so they are delta
+ * encoded instead of XOR encoded against the previous value.
+ * <p>
+ * The nanoseconds of the time and the scale of the reading follow each reading,
+ * a zero bit if they are the same as the previous reading's, otherwise a one bit
+ * and the value in 30 and 8 bits. Readings taken at whole seconds and uploaded at
+ * the same scale spend two bits on them.
+ * <p>
+ * A block's words are on the heap, in the spill file of its {@link ColdBlockStore}
+ * or both. The cold block store moves them between the two within its heap budget,
+ * a block that is not resident reads its words back through it when iterated.
+ */
+final class CompressedBlock {
+	private static final int[] TIME_WIDTHS = { 7, 9, 12, Long.SIZE };
+	private static final int[] READING_WIDTHS = { 6, 13, 20, Long.SIZE };
+	private static final int NANO_BITS = 30;
+	private static final int SCALE_BITS = Byte.SIZE;
+
+	private final int size;
+	private final long firstEpochSecond;
+	private final long lastEpochSecond;
+	private final int lastNano;
+	private final int wordCount;
+	private final ColdBlockStore coldBlockStore;
+	// the fields below are written holding the cold block store's lock, null while not resident
+	private volatile long[] words;
+	// -1 until written to the spill file
+	private long spillPosition = -1;
+	// no longer part of a meter's series, kept resident for series handed out before
+	private boolean released;
+
+	private CompressedBlock(int size, long firstEpochSecond, long lastEpochSecond, int lastNano, long[] words,
+			ColdBlockStore coldBlockStore) {
+		this.size = size;
+		this.firstEpochSecond = firstEpochSecond;
+		this.lastEpochSecond = lastEpochSecond;
+		this.lastNano = lastNano;
+		this.wordCount = words.length;
+		this.words = words;
+		this.coldBlockStore = coldBlockStore;
+	}
+
+	/**
+	 * Compresses a range of time ordered columns.
+	 *
+	 * @param epochSeconds   - reading times in seconds since the epoch
+	 * @param nanos          - nanoseconds within the second of the reading times
+	 * @param readings       - fixed-point readings
+	 * @param scales         - scales the readings were stored with
+	 * @param offset         - position of the first reading to compress
+	 * @param count          - number of readings to compress, at least one
+	 * @param coldBlockStore - cold tier the block can be spilled to once admitted
+	 * @return the compressed block, resident
+	 */
+	static CompressedBlock encode(long[] epochSeconds, int[] nanos, long[] readings, byte[] scales, int offset,
+			int count, ColdBlockStore coldBlockStore) {
+		BitOutput output = new BitOutput();
+		output.write(epochSeconds[offset], Long.SIZE);
+		output.write(readings[offset], Long.SIZE);
+		output.write(nanos[offset], NANO_BITS);
+		output.write(scales[offset], SCALE_BITS);
+		long previousDelta = 0;
+		for (int i = offset + 1; i < offset + count; i++) {
+			long delta = epochSeconds[i] - epochSeconds[i - 1];
+			writeZigZag(output, delta - previousDelta, TIME_WIDTHS);
+			writeZigZag(output, readings[i] - readings[i - 1], READING_WIDTHS);
+			writeIfChanged(output, nanos[i], nanos[i - 1], NANO_BITS);
+			writeIfChanged(output, scales[i], scales[i - 1], SCALE_BITS);
+			previousDelta = delta;
+		}
+		int last = offset + count - 1;
+		return new CompressedBlock(count, epochSeconds[offset], epochSeconds[last], nanos[last], output.toWords(),
+				coldBlockStore);
+	}
+
+	int size() {
+		return size;
+	}
+
+	long firstEpochSecond() {
+		return firstEpochSecond;
+	}
+
+	long lastEpochSecond() {
+		return lastEpochSecond;
+	}
+
+	int lastNano() {
+		return lastNano;
+	}
+
+	/**
+	 * @return bytes taken by the compressed readings
+	 */
+	long compressedBytes() {
+		return (long) wordCount * Long.BYTES;
+	}
+
+	int wordCount() {
+		return wordCount;
+	}
+
+	/**
+	 * @return the words if the block is resident, otherwise null
+	 */
+	long[] residentWords() {
+		return words;
+	}
+
+	void setWords(long[] words) {
+		this.words = words;
+	}
+
+	long spillPosition() {
+		return spillPosition;
+	}
+
+	void setSpillPosition(long spillPosition) {
+		this.spillPosition = spillPosition;
+	}
+
+	boolean isReleased() {
+		return released;
+	}
+
+	void setReleased() {
+		this.released = true;
+	}
+
+	/**
+	 * Decodes all readings into columns.
+	 */
+	void decodeInto(long[] epochSeconds, int[] nanos, long[] readings, byte[] scales) {
+		ReadingIterator iterator = iterator();
+		for (int i = 0; iterator.next(); i++) {
+			epochSeconds[i] = iterator.epochSecond();
+			nanos[i] = iterator.nano();
+			readings[i] = iterator.reading();
+			scales[i] = (byte) iterator.scale();
+		}
+	}
+
+	/**
+	 * @return iterator decoding the readings in order
+	 */
+	ReadingIterator iterator() {
+		BitInput input = new BitInput(coldBlockStore.wordsOf(this));
+		return new ReadingIterator() {
+			private int index = -1;
+			private long epochSecond;
+			private int nano;
+			private long reading;
+			private int scale;
+			private long delta;
+
+			@Override
+			public boolean next() {
+				if (index + 1 >= size) {
+					return false;
+				}
+				if (++index == 0) {
+					epochSecond = input.read(Long.SIZE);
+					reading = input.read(Long.SIZE);
+					nano = (int) input.read(NANO_BITS);
+					scale = (byte) input.read(SCALE_BITS);
+				} else {
+					delta += readZigZag(input, TIME_WIDTHS);
+					epochSecond += delta;
+					reading += readZigZag(input, READING_WIDTHS);
+					if (input.read(1) == 1) {
+						nano = (int) input.read(NANO_BITS);
+					}
+					if (input.read(1) == 1) {
+						scale = (byte) input.read(SCALE_BITS);
+					}
+				}
+				return true;
+			}
+
+			@Override
+			public long epochSecond() {
+				return epochSecond;
+			}
+
+			@Override
+			public int nano() {
+				return nano;
+			}
+
+			@Override
+			public long reading() {
+				return reading;
+			}
+
+			@Override
+			public int scale() {
+				return scale;
+			}
+		};
+	}
+
+	private static void writeIfChanged(BitOutput output, int value, int previous, int bits) {
+		if (value == previous) {
+			output.write(0, 1);
+		} else {
+			output.write(1, 1);
+			output.write(value, bits);
+		}
+	}
+
+	private static void writeZigZag(BitOutput output, long value, int[] widths) {
+		if (value == 0) {
+			output.write(0, 1);
+			return;
+		}
+		long zigZag = (value << 1) ^ (value >> 63);
+		for (int i = 0; i < widths.length; i++) {
+			if (i == widths.length - 1 || zigZag >>> widths[i] == 0) {
+				// i + 1 one bits, ended by a zero bit unless it is the widest prefix
+				int prefixBits = i == widths.length - 1 ? i + 1 : i + 2;
+				output.write(i == widths.length - 1 ? (1L << prefixBits) - 1 : ((1L << (i + 1)) - 1) << 1, prefixBits);
+				output.write(zigZag, widths[i]);
+				return;
+			}
+		}
+	}
+
+	private static long readZigZag(BitInput input, int[] widths) {
+		int ones = input.readOnes(widths.length);
+		if (ones == 0) {
+			return 0;
+		}
+		long zigZag = input.read(widths[ones - 1]);
+		return (zigZag >>> 1) ^ -(zigZag & 1);
+	}
+}
@@ -0,0 +1,93 @@
+package uk.tw.energy.store;
+
+import java.util.Objects;
+
+/**
+ * {@link MeterReadingSeries} made of two series, the readings of {@code tail} all
+ * at or after the readings of {@code head}.
+ */
+record ConcatenatedSeries(MeterReadingSeries head, MeterReadingSeries tail) implements MeterReadingSeries {
+
+	@Override
+	public int size() {
+		return head.size() + tail.size();
+	}
+
+	@Override
+	public long epochSecond(int index) {
+		int headSize = head.size();
+		return index < headSize ? head.epochSecond(index) : tail.epochSecond(Objects.checkIndex(index - headSize, tail.size()));
+	}
+
+	@Override
+	public int nano(int index) {
+		int headSize = head.size();
+		return index < headSize ? head.nano(index) : tail.nano(Objects.checkIndex(index - headSize, tail.size()));
+	}
+
+	@Override
+	public long reading(int index) {
+		int headSize = head.size();
+		return index < headSize ? head.reading(index) : tail.reading(Objects.checkIndex(index - headSize, tail.size()));
+	}
+
+	@Override
+	public int scale(int index) {
+		int headSize = head.size();
+		return index < headSize ? head.scale(index) : tail.scale(Objects.checkIndex(index - headSize, tail.size()));
+	}
+
+	@Override
+	public int indexAtOrAfter(long epochSecond) {
+		int headSize = head.size();
+		if (headSize > 0 && epochSecond <= head.epochSecond(headSize - 1)) {
+			return head.indexAtOrAfter(epochSecond);
+		}
+		return headSize + tail.indexAtOrAfter(epochSecond);
+	}
+
+	@Override
+	public ReadingIterator iterator(int fromIndex) {
+		Objects.checkFromToIndex(fromIndex, size(), size());
+		int headSize = head.size();
+		if (fromIndex >= headSize) {
+			return tail.iterator(fromIndex - headSize);
+		}
+		ReadingIterator headIterator = head.iterator(fromIndex);
+		return new ReadingIterator() {
+			private ReadingIterator current = headIterator;
+
+			@Override
+			public boolean next() {
+				if (current.next()) {
+					return true;
+				}
+				if (current == headIterator) {
+					current = tail.iterator();
+					return current.next();
+				}
+				return false;
+			}
+
+			@Override
+			public long epochSecond() {
+				return current.epochSecond();
+			}
+
+			@Override
+			public int nano() {
+				return current.nano();
+			}
+
+			@Override
+			public long reading() {
+				return current.reading();
+			}
+
+			@Override
+			public int scale() {
+				return current.scale();
+			}
+		};
+	}
+}
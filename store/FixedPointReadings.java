@@ -0,0 +1,125 @@
+package uk.tw.energy.store;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+
+import uk.tw.energy.domain.ElectricityReading;
+import uk.tw.energy.domain.MeterReadingsBatch;
+
+/**
+ * Conversions between the decimal kWh readings used at the REST boundary and the
+ * fixed-point longs kept in the reading store. A reading is stored as its value in
+ * units of 10^-{@value #SCALE} kWh, the precision used by the readings generator,
+ * together with the scale it was uploaded with, so it is returned as it was stored.
+ * Readings with more significant decimal places than {@value #SCALE} are rejected
+ * rather than rounded.
+ */
+public final class FixedPointReadings {
+
+	public static final int SCALE = 4;
+
+	private FixedPointReadings() {
+	}
+
+	/**
+	 * Checks if a reading can be stored without losing precision.
+	 *
+	 * @param reading - reading in kWh
+	 * @return true if the reading has at most {@value #SCALE} significant decimal places,
+	 *         fits in a long and has a scale that fits in a byte
+	 */
+	public static boolean isRepresentable(BigDecimal reading) {
+		if (reading == null || reading.scale() < Byte.MIN_VALUE || reading.scale() > Byte.MAX_VALUE) {
+			return false;
+		}
+		BigDecimal stripped = reading.stripTrailingZeros();
+		return stripped.scale() <= SCALE && stripped.precision() - stripped.scale() + SCALE < 19;
+	}
+
+	/**
+	 * Converts a reading to its fixed-point representation.
+	 *
+	 * @param reading - reading in kWh
+	 * @return reading in units of 10^-{@value #SCALE} kWh
+	 * @throws ArithmeticException if the reading is not representable
+	 */
+	public static long toFixedPoint(BigDecimal reading) {
+		return reading.movePointRight(SCALE).longValueExact();
+	}
+
+	/**
+	 * Converts a fixed-point reading back to kWh.
+	 *
+	 * @param fixedPointReading - reading in units of 10^-{@value #SCALE} kWh
+	 * @return reading in kWh with a scale of {@value #SCALE}
+	 */
+	public static BigDecimal toBigDecimal(long fixedPointReading) {
+		return BigDecimal.valueOf(fixedPointReading, SCALE);
+	}
+
+	/**
+	 * Converts a fixed-point reading back to kWh at the scale it was stored with.
+	 *
+	 * @param fixedPointReading - reading in units of 10^-{@value #SCALE} kWh
+	 * @param scale             - scale of the reading as stored
+	 * @return reading in kWh equal to the stored one, scale included
+	 */
+	public static BigDecimal toBigDecimal(long fixedPointReading, int scale) {
+		return BigDecimal.valueOf(fixedPointReading, SCALE).setScale(scale);
+	}
+
+	/**
+	 * Converts a stored reading back to its domain form.
+	 *
+	 * @param epochSecond       - time of the reading in seconds since the epoch
+	 * @param nano              - nanoseconds within the second
+	 * @param fixedPointReading - reading in units of 10^-{@value #SCALE} kWh
+	 * @param scale             - scale of the reading as stored
+	 * @return the reading as it was stored
+	 */
+	public static ElectricityReading toElectricityReading(long epochSecond, int nano, long fixedPointReading, int scale) {
+		return new ElectricityReading(Instant.ofEpochSecond(epochSecond, nano), toBigDecimal(fixedPointReading, scale));
+	}
+
+	/**
+	 * Wraps fixed-point readings taken at whole seconds, returned with a scale of
+	 * {@value #SCALE}.
+	 *
+	 * @param smartMeterId - meter the readings belong to
+	 * @param epochSeconds - reading times in seconds since the epoch
+	 * @param readings     - readings in units of 10^-{@value #SCALE} kWh
+	 * @return readings as a batch
+	 */
+	public static MeterReadingsBatch toBatch(String smartMeterId, long[] epochSeconds, long[] readings) {
+		byte[] scales = new byte[readings.length];
+		Arrays.fill(scales, (byte) SCALE);
+		return new MeterReadingsBatch(smartMeterId, epochSeconds, new int[epochSeconds.length], readings, scales);
+	}
+
+	/**
+	 * Converts domain readings to their primitive form, keeping the time and the
+	 * scale of each reading.
+	 *
+	 * @param smartMeterId        - meter the readings belong to
+	 * @param electricityReadings - readings to convert
+	 * @return readings as fixed-point columns
+	 * @throws ArithmeticException if a reading is not representable
+	 */
+	public static MeterReadingsBatch toBatch(String smartMeterId, List<ElectricityReading> electricityReadings) {
+		int count = electricityReadings.size();
+		long[] epochSeconds = new long[count];
+		int[] nanos = new int[count];
+		long[] readings = new long[count];
+		byte[] scales = new byte[count];
+		for (int i = 0; i < count; i++) {
+			ElectricityReading electricityReading = electricityReadings.get(i);
+			epochSeconds[i] = electricityReading.time().getEpochSecond();
+			nanos[i] = electricityReading.time().getNano();
+			readings[i] = toFixedPoint(electricityReading.reading());
+			scales[i] = (byte) electricityReading.reading().scale();
+		}
+		return new MeterReadingsBatch(smartMeterId, epochSeconds, nanos, readings, scales);
+	}
+}
@@ -0,0 +1,270 @@
+package uk.tw.energy.store;
+
+import java.util.Arrays;
+
+import uk.tw.energy.domain.MeterReadingsBatch;
+
+/**
+ * Readings of one meter, sorted by time. New readings go to growable primitive
+ * columns; once those hold a full block of {@value #BLOCK_SIZE} readings, the block
+ * is sealed into an immutable {@link CompressedBlock}.
+ * <p>
+ * Positions below {@link #size} are never rewritten, so a series handed out by
+ * {@link #snapshot()} stays valid while further readings are appended. Sealing
+ * and readings older than the latest stored one move the columns to fresh arrays
+ * instead.
+ * <p>
+ * Sealed blocks are admitted to the {@link ColdBlockStore}, which spills the least
+ * recently used blocks of all meters beyond its heap budget.
+ * <p>
+ * Columns restored from a snapshot file start with a read-only base series the
+ * appended readings follow. A reading older than the latest sealed or base reading
+ * brings the readings from the first block ending after it - or from its position
+ * in the base series - back to the columns before it is merged in, to be sealed
+ * again. Earlier blocks and the base series before that position stay as they are.
+ * <p>
+ * Appends must be serialised by the caller. Snapshots are published through a
+ * volatile field after each append and can be taken without locking.
+ */
+class MeterReadingColumns {
+	static final int BLOCK_SIZE = 1024;
+	private static final int INITIAL_CAPACITY = 16;
+	static final MeterReadingSeries EMPTY = MeterReadingSeries.of(new long[0], new int[0], new long[0], new byte[0], 0);
+
+	private final ColdBlockStore coldBlockStore;
+	private MeterReadingSeries base;
+	private CompressedBlock[] sealedBlocks = new CompressedBlock[0];
+	private BlockSeries sealed;
+	private long[] epochSeconds;
+	private int[] nanos;
+	private long[] readings;
+	private byte[] scales;
+	private int size;
+	private volatile MeterReadingSeries snapshot;
+
+	MeterReadingColumns(MeterReadingSeries base, int expectedSize, ColdBlockStore coldBlockStore) {
+		int capacity = Math.max(INITIAL_CAPACITY, expectedSize);
+		this.coldBlockStore = coldBlockStore;
+		this.base = base;
+		this.epochSeconds = new long[capacity];
+		this.nanos = new int[capacity];
+		this.readings = new long[capacity];
+		this.scales = new byte[capacity];
+		publishSnapshot();
+	}
+
+	void append(MeterReadingsBatch batch) {
+		if (!isSorted(batch)) {
+			batch = sortByTime(batch);
+		}
+		int count = batch.size();
+		if (count > 0 && isBeforeLatestSealed(batch.epochSeconds()[0], batch.nanos()[0])) {
+			moveSealedToColumns(batch.epochSeconds()[0], batch.nanos()[0]);
+		}
+		if (size > 0 && count > 0
+				&& compareTimes(batch.epochSeconds()[0], batch.nanos()[0], epochSeconds[size - 1], nanos[size - 1]) < 0) {
+			merge(batch);
+		} else {
+			ensureCapacity(size + count);
+			System.arraycopy(batch.epochSeconds(), 0, epochSeconds, size, count);
+			System.arraycopy(batch.nanos(), 0, nanos, size, count);
+			System.arraycopy(batch.readings(), 0, readings, size, count);
+			System.arraycopy(batch.scales(), 0, scales, size, count);
+		}
+		size += count;
+		sealFullBlocks();
+		publishSnapshot();
+	}
+
+	MeterReadingSeries snapshot() {
+		return snapshot;
+	}
+
+	private void publishSnapshot() {
+		MeterReadingSeries series = MeterReadingSeries.of(epochSeconds, nanos, readings, scales, size);
+		if (sealed != null) {
+			series = new ConcatenatedSeries(sealed, series);
+		}
+		snapshot = base.size() == 0 ? series : new ConcatenatedSeries(base, series);
+	}
+
+	private boolean isBeforeLatestSealed(long epochSecond, int nano) {
+		if (sealedBlocks.length > 0) {
+			CompressedBlock latest = sealedBlocks[sealedBlocks.length - 1];
+			return compareTimes(epochSecond, nano, latest.lastEpochSecond(), latest.lastNano()) < 0;
+		}
+		int last = base.size() - 1;
+		return last >= 0 && compareTimes(epochSecond, nano, base.epochSecond(last), base.nano(last)) < 0;
+	}
+
+	private void sealFullBlocks() {
+		int fullBlocks = size / BLOCK_SIZE;
+		if (fullBlocks == 0) {
+			return;
+		}
+		CompressedBlock[] blocks = Arrays.copyOf(sealedBlocks, sealedBlocks.length + fullBlocks);
+		for (int i = 0; i < fullBlocks; i++) {
+			blocks[sealedBlocks.length + i] = CompressedBlock.encode(epochSeconds, nanos, readings, scales,
+					i * BLOCK_SIZE, BLOCK_SIZE, coldBlockStore);
+		}
+		int remaining = size - fullBlocks * BLOCK_SIZE;
+		int capacity = Math.max(INITIAL_CAPACITY, remaining);
+		epochSeconds = Arrays.copyOfRange(epochSeconds, fullBlocks * BLOCK_SIZE, fullBlocks * BLOCK_SIZE + capacity);
+		nanos = Arrays.copyOfRange(nanos, fullBlocks * BLOCK_SIZE, fullBlocks * BLOCK_SIZE + capacity);
+		readings = Arrays.copyOfRange(readings, fullBlocks * BLOCK_SIZE, fullBlocks * BLOCK_SIZE + capacity);
+		scales = Arrays.copyOfRange(scales, fullBlocks * BLOCK_SIZE, fullBlocks * BLOCK_SIZE + capacity);
+		size = remaining;
+		for (int i = sealedBlocks.length; i < blocks.length; i++) {
+			coldBlockStore.admit(blocks[i]);
+		}
+		sealedBlocks = blocks;
+		sealed = new BlockSeries(blocks);
+	}
+
+	/**
+	 * Moves the readings after a time from the sealed blocks and the base series back
+	 * to the columns, ahead of the readings already there.
+	 */
+	private void moveSealedToColumns(long epochSecond, int nano) {
+		int keptBlocks = firstBlockEndingAfter(epochSecond, nano);
+		MeterReadingSeries moved = keptBlocks == sealedBlocks.length ? EMPTY
+				: new BlockSeries(Arrays.copyOfRange(sealedBlocks, keptBlocks, sealedBlocks.length));
+		if (keptBlocks == 0) {
+			int keptBase = indexAfter(base, epochSecond, nano);
+			if (keptBase < base.size()) {
+				moved = new ConcatenatedSeries(base.subSeries(keptBase, base.size()), moved);
+				base = keptBase == 0 ? EMPTY : base.subSeries(0, keptBase);
+			}
+		}
+		int movedSize = moved.size();
+		int capacity = Math.max(movedSize + size, epochSeconds.length);
+		long[] movedEpochSeconds = new long[capacity];
+		int[] movedNanos = new int[capacity];
+		long[] movedReadings = new long[capacity];
+		byte[] movedScales = new byte[capacity];
+		ReadingIterator iterator = moved.iterator();
+		for (int i = 0; iterator.next(); i++) {
+			movedEpochSeconds[i] = iterator.epochSecond();
+			movedNanos[i] = iterator.nano();
+			movedReadings[i] = iterator.reading();
+			movedScales[i] = (byte) iterator.scale();
+		}
+		System.arraycopy(epochSeconds, 0, movedEpochSeconds, movedSize, size);
+		System.arraycopy(nanos, 0, movedNanos, movedSize, size);
+		System.arraycopy(readings, 0, movedReadings, movedSize, size);
+		System.arraycopy(scales, 0, movedScales, movedSize, size);
+		epochSeconds = movedEpochSeconds;
+		nanos = movedNanos;
+		readings = movedReadings;
+		scales = movedScales;
+		size += movedSize;
+		for (int i = keptBlocks; i < sealedBlocks.length; i++) {
+			coldBlockStore.release(sealedBlocks[i]);
+		}
+		sealedBlocks = Arrays.copyOf(sealedBlocks, keptBlocks);
+		sealed = keptBlocks == 0 ? null : new BlockSeries(sealedBlocks);
+	}
+
+	private int firstBlockEndingAfter(long epochSecond, int nano) {
+		int low = 0;
+		int high = sealedBlocks.length;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			CompressedBlock block = sealedBlocks[middle];
+			if (compareTimes(block.lastEpochSecond(), block.lastNano(), epochSecond, nano) <= 0) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * @return position of the first reading of a series after a time - readings at
+	 *         the time go first, as they were stored before
+	 */
+	private static int indexAfter(MeterReadingSeries series, long epochSecond, int nano) {
+		int index = series.indexAtOrAfter(epochSecond, nano);
+		ReadingIterator iterator = series.iterator(index);
+		while (iterator.next() && compareTimes(iterator.epochSecond(), iterator.nano(), epochSecond, nano) == 0) {
+			index++;
+		}
+		return index;
+	}
+
+	private void merge(MeterReadingsBatch batch) {
+		int count = batch.size();
+		int capacity = Math.max(size + count, epochSeconds.length);
+		long[] mergedEpochSeconds = new long[capacity];
+		int[] mergedNanos = new int[capacity];
+		long[] mergedReadings = new long[capacity];
+		byte[] mergedScales = new byte[capacity];
+		int existing = 0;
+		int added = 0;
+		for (int i = 0; i < size + count; i++) {
+			// existing readings go first on equal times, keeping the order they were stored in
+			if (added == count || (existing < size && compareTimes(epochSeconds[existing], nanos[existing],
+					batch.epochSeconds()[added], batch.nanos()[added]) <= 0)) {
+				mergedEpochSeconds[i] = epochSeconds[existing];
+				mergedNanos[i] = nanos[existing];
+				mergedReadings[i] = readings[existing];
+				mergedScales[i] = scales[existing++];
+			} else {
+				mergedEpochSeconds[i] = batch.epochSeconds()[added];
+				mergedNanos[i] = batch.nanos()[added];
+				mergedReadings[i] = batch.readings()[added];
+				mergedScales[i] = batch.scales()[added++];
+			}
+		}
+		epochSeconds = mergedEpochSeconds;
+		nanos = mergedNanos;
+		readings = mergedReadings;
+		scales = mergedScales;
+	}
+
+	private static int compareTimes(long epochSecond, int nano, long otherEpochSecond, int otherNano) {
+		int bySecond = Long.compare(epochSecond, otherEpochSecond);
+		return bySecond != 0 ? bySecond : Integer.compare(nano, otherNano);
+	}
+
+	private static boolean isSorted(MeterReadingsBatch batch) {
+		for (int i = 1; i < batch.size(); i++) {
+			if (compareTimes(batch.epochSeconds()[i], batch.nanos()[i], batch.epochSeconds()[i - 1],
+					batch.nanos()[i - 1]) < 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static MeterReadingsBatch sortByTime(MeterReadingsBatch batch) {
+		int count = batch.size();
+		Integer[] order = new Integer[count];
+		for (int i = 0; i < count; i++) {
+			order[i] = i;
+		}
+		long[] epochSeconds = batch.epochSeconds();
+		int[] nanos = batch.nanos();
+		Arrays.sort(order, (left, right) -> compareTimes(epochSeconds[left], nanos[left], epochSeconds[right], nanos[right]));
+		MeterReadingsBatch sorted = new MeterReadingsBatch(batch.smartMeterId(), new long[count], new int[count],
+				new long[count], new byte[count]);
+		for (int i = 0; i < count; i++) {
+			sorted.epochSeconds()[i] = epochSeconds[order[i]];
+			sorted.nanos()[i] = nanos[order[i]];
+			sorted.readings()[i] = batch.readings()[order[i]];
+			sorted.scales()[i] = batch.scales()[order[i]];
+		}
+		return sorted;
+	}
+
+	private void ensureCapacity(int required) {
+		if (required > epochSeconds.length) {
+			int capacity = Math.max(required, epochSeconds.length + (epochSeconds.length >> 1));
+			epochSeconds = Arrays.copyOf(epochSeconds, capacity);
+			nanos = Arrays.copyOf(nanos, capacity);
+			readings = Arrays.copyOf(readings, capacity);
+			scales = Arrays.copyOf(scales, capacity);
+		}
+	}
+}
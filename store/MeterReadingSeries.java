@@ -0,0 +1,273 @@
+package uk.tw.energy.store;
+
+import java.util.AbstractList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+import uk.tw.energy.domain.ElectricityReading;
+import uk.tw.energy.domain.MeterReadingsBatch;
+
+/**
+ * Read-only view over the readings of a single meter. Readings are held as primitive
+ * columns - epoch seconds, nanoseconds within the second, fixed-point values (see
+ * {@link FixedPointReadings}) and the scale of each value as stored - ordered by time,
+ * readings with the same time in the order they were stored.
+ * <p>
+ * Positional access may have to decode compressed readings, {@link #iterator()}
+ * should be preferred to visit a range of readings.
+ */
+public interface MeterReadingSeries {
+
+	/**
+	 * @return number of readings in the series
+	 */
+	int size();
+
+	/**
+	 * @param index - position of the reading
+	 * @return time of the reading in seconds since the epoch
+	 */
+	long epochSecond(int index);
+
+	/**
+	 * @param index - position of the reading
+	 * @return nanoseconds within the second of the reading time
+	 */
+	int nano(int index);
+
+	/**
+	 * @param index - position of the reading
+	 * @return reading in units of 10^-{@value FixedPointReadings#SCALE} kWh
+	 */
+	long reading(int index);
+
+	/**
+	 * @param index - position of the reading
+	 * @return scale the reading was stored with
+	 */
+	int scale(int index);
+
+	/**
+	 * @return iterator over all readings
+	 */
+	default ReadingIterator iterator() {
+		return iterator(0);
+	}
+
+	/**
+	 * Iterator over the readings from a position on.
+	 *
+	 * @param fromIndex - position of the first reading to visit
+	 * @return iterator over the readings from the position
+	 */
+	default ReadingIterator iterator(int fromIndex) {
+		Objects.checkFromToIndex(fromIndex, size(), size());
+		MeterReadingSeries series = this;
+		return new ReadingIterator() {
+			private int index = fromIndex - 1;
+
+			@Override
+			public boolean next() {
+				return ++index < series.size();
+			}
+
+			@Override
+			public long epochSecond() {
+				return series.epochSecond(index);
+			}
+
+			@Override
+			public int nano() {
+				return series.nano(index);
+			}
+
+			@Override
+			public long reading() {
+				return series.reading(index);
+			}
+
+			@Override
+			public int scale() {
+				return series.scale(index);
+			}
+		};
+	}
+
+	/**
+	 * Binary search for the first reading at or after a time.
+	 *
+	 * @param epochSecond - time in seconds since the epoch
+	 * @return index of the first reading not before the time, {@link #size()} if none
+	 */
+	default int indexAtOrAfter(long epochSecond) {
+		int low = 0;
+		int high = size();
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (epochSecond(middle) < epochSecond) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Search for the first reading at or after a time with sub-second precision.
+	 * Readings within the time's second are visited in order.
+	 *
+	 * @param epochSecond - time in seconds since the epoch
+	 * @param nano        - nanoseconds within the second
+	 * @return index of the first reading not before the time, {@link #size()} if none
+	 */
+	default int indexAtOrAfter(long epochSecond, int nano) {
+		int index = indexAtOrAfter(epochSecond);
+		if (nano == 0) {
+			return index;
+		}
+		ReadingIterator iterator = iterator(index);
+		while (iterator.next() && iterator.epochSecond() == epochSecond && iterator.nano() < nano) {
+			index++;
+		}
+		return index;
+	}
+
+	/**
+	 * View over a range of positions of this series.
+	 *
+	 * @param fromIndex - first position, inclusive
+	 * @param toIndex   - last position, exclusive
+	 * @return series over the range
+	 */
+	default MeterReadingSeries subSeries(int fromIndex, int toIndex) {
+		Objects.checkFromToIndex(fromIndex, toIndex, size());
+		MeterReadingSeries parent = this;
+		return new MeterReadingSeries() {
+			@Override
+			public int size() {
+				return toIndex - fromIndex;
+			}
+
+			@Override
+			public long epochSecond(int index) {
+				return parent.epochSecond(fromIndex + Objects.checkIndex(index, size()));
+			}
+
+			@Override
+			public int nano(int index) {
+				return parent.nano(fromIndex + Objects.checkIndex(index, size()));
+			}
+
+			@Override
+			public long reading(int index) {
+				return parent.reading(fromIndex + Objects.checkIndex(index, size()));
+			}
+
+			@Override
+			public int scale(int index) {
+				return parent.scale(fromIndex + Objects.checkIndex(index, size()));
+			}
+
+			@Override
+			public ReadingIterator iterator(int index) {
+				Objects.checkFromToIndex(index, size(), size());
+				return ReadingIterator.limit(parent.iterator(fromIndex + index), size() - index);
+			}
+
+			@Override
+			public MeterReadingSeries subSeries(int from, int to) {
+				Objects.checkFromToIndex(from, to, size());
+				return parent.subSeries(fromIndex + from, fromIndex + to);
+			}
+		};
+	}
+
+	/**
+	 * Wraps primitive columns as a series without copying them.
+	 *
+	 * @param epochSeconds - reading times in seconds since the epoch
+	 * @param nanos        - nanoseconds within the second of the reading times
+	 * @param readings     - fixed-point readings
+	 * @param scales       - scales the readings were stored with
+	 * @param size         - number of readings to expose from the arrays
+	 * @return series over the first {@code size} positions of the arrays
+	 */
+	static MeterReadingSeries of(long[] epochSeconds, int[] nanos, long[] readings, byte[] scales, int size) {
+		return new ArraySeries(epochSeconds, nanos, readings, scales, size);
+	}
+
+	/**
+	 * Wraps the columns of a batch as a series without copying them.
+	 *
+	 * @param batch - readings, ordered by time
+	 * @return series over the batch
+	 */
+	static MeterReadingSeries of(MeterReadingsBatch batch) {
+		return of(batch.epochSeconds(), batch.nanos(), batch.readings(), batch.scales(), batch.size());
+	}
+
+	/**
+	 * Creates an {@link ElectricityReading} for a single position of the series.
+	 *
+	 * @param index - position of the reading
+	 * @return the reading as a domain object
+	 */
+	default ElectricityReading electricityReading(int index) {
+		return FixedPointReadings.toElectricityReading(epochSecond(index), nano(index), reading(index), scale(index));
+	}
+
+	/**
+	 * Lazy list view of the series. Domain objects are only created as the list is
+	 * iterated, which keeps them out of the store itself.
+	 *
+	 * @return unmodifiable list of electricity readings
+	 */
+	default List<ElectricityReading> asElectricityReadings() {
+		return new ElectricityReadingListView(this);
+	}
+
+	final class ElectricityReadingListView extends AbstractList<ElectricityReading> {
+		private final MeterReadingSeries series;
+
+		private ElectricityReadingListView(MeterReadingSeries series) {
+			this.series = series;
+		}
+
+		@Override
+		public ElectricityReading get(int index) {
+			return series.electricityReading(index);
+		}
+
+		@Override
+		public int size() {
+			return series.size();
+		}
+
+		@Override
+		public Iterator<ElectricityReading> iterator() {
+			ReadingIterator readings = series.iterator();
+			return new Iterator<ElectricityReading>() {
+				private boolean hasNext = readings.next();
+
+				@Override
+				public boolean hasNext() {
+					return hasNext;
+				}
+
+				@Override
+				public ElectricityReading next() {
+					if (!hasNext) {
+						throw new NoSuchElementException();
+					}
+					ElectricityReading reading = FixedPointReadings.toElectricityReading(readings.epochSecond(),
+							readings.nano(), readings.reading(), readings.scale());
+					hasNext = readings.next();
+					return reading;
+				}
+			};
+		}
+	}
+}
@@ -0,0 +1,400 @@
+package uk.tw.energy.store;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32C;
+
+/**
+ * Columnar file holding the readings of all meters at one point in time, read
+ * through memory mapping.
+ * <p>
+ * The file starts with a header - magic number, position of the reading log the
+ * snapshot covers, number of meters and size of the index - followed by the index
+ * of meter id, reading count, offset and CRC32C of the meter's columns, and the
+ * CRC32C of the header and index. The columns of a meter are stored back to back:
+ * all epoch seconds, all fixed-point readings, all nanoseconds within the second
+ * and all reading scales, padded to a multiple of eight bytes.
+ * <p>
+ * Opening a snapshot reads and verifies only the header and index, so it takes the
+ * same time whatever the number of readings. The file is mapped in regions of at
+ * most {@value #REGION_BYTES} bytes the first time a meter in them is read, and the
+ * columns of each meter are slices of its region, so a pass over every meter needs
+ * a handful of mappings rather than some per meter. A meter's columns are checked
+ * against their checksum the first time the meter is read. The page cache rather
+ * than the heap holds the readings.
+ */
+public final class MeterReadingSnapshot implements AutoCloseable {
+	/**
+	 * Snapshot of an empty store, used when there is no snapshot file to restore.
+	 */
+	public static final MeterReadingSnapshot EMPTY = new MeterReadingSnapshot(null, 0, Collections.emptyMap());
+
+	private static final long MAGIC = 0x54574D52534E5034L; // "TWMRSNP4"
+	private static final int HEADER_BYTES = 3 * Long.BYTES + Integer.BYTES;
+	private static final int CHECKSUM_BYTES = Integer.BYTES;
+	private static final int IO_BUFFER_BYTES = 1 << 20;
+	private static final long REGION_BYTES = 1L << 30;
+
+	private final FileChannel channel;
+	private final long logPosition;
+	private final Map<String, MeterReadingSeries> series;
+
+	private MeterReadingSnapshot(FileChannel channel, long logPosition, Map<String, MeterReadingSeries> series) {
+		this.channel = channel;
+		this.logPosition = logPosition;
+		this.series = series;
+	}
+
+	/**
+	 * Writes a snapshot file. The file is synced to disk before returning, the
+	 * directory entry is not.
+	 *
+	 * @param file        - file to write, replaced if it exists
+	 * @param logPosition - position of the reading log up to which the series are complete
+	 * @param series      - readings per meter
+	 * @throws IOException - if the file cannot be written
+	 */
+	public static void write(Path file, long logPosition, Map<String, MeterReadingSeries> series) throws IOException {
+		Map<String, byte[]> smartMeterIds = new LinkedHashMap<>();
+		long indexBytes = 0;
+		for (String smartMeterId : series.keySet()) {
+			byte[] encodedId = smartMeterId.getBytes(StandardCharsets.UTF_8);
+			smartMeterIds.put(smartMeterId, encodedId);
+			indexBytes += indexEntryBytes(encodedId.length);
+		}
+		long dataOffset = alignToLong(HEADER_BYTES + indexBytes + CHECKSUM_BYTES);
+		if (dataOffset > Integer.MAX_VALUE) {
+			throw new IOException(String.format("Index of %d meters is too large for a snapshot", series.size()));
+		}
+		// the index is written last, once the checksums of the columns are known
+		ByteBuffer index = ByteBuffer.allocate((int) dataOffset);
+		index.putLong(MAGIC).putLong(logPosition).putInt(series.size()).putLong(indexBytes);
+		try (FileChannel out = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			ColumnsWriter columnsWriter = new ColumnsWriter(out, dataOffset);
+			long columnsOffset = dataOffset;
+			for (Map.Entry<String, byte[]> entry : smartMeterIds.entrySet()) {
+				MeterReadingSeries meterSeries = series.get(entry.getKey());
+				int columnsChecksum = columnsWriter.write(meterSeries);
+				index.putShort((short) entry.getValue().length).put(entry.getValue()).putInt(meterSeries.size())
+						.putLong(columnsOffset).putInt(columnsChecksum);
+				columnsOffset += columnsBytes(meterSeries.size());
+			}
+			columnsWriter.flush();
+			CRC32C checksum = new CRC32C();
+			checksum.update(index.array(), 0, index.position());
+			index.putInt((int) checksum.getValue());
+			index.clear();
+			while (index.hasRemaining()) {
+				out.write(index, index.position());
+			}
+			out.force(true);
+		}
+	}
+
+	/**
+	 * Opens a snapshot file, reading and verifying its index. The columns of a meter
+	 * are verified when the meter is first read.
+	 *
+	 * @param file - snapshot file
+	 * @return the snapshot, {@link #EMPTY} if the file does not exist
+	 * @throws IOException - if the file cannot be read, is not a snapshot or its index is damaged
+	 */
+	public static MeterReadingSnapshot open(Path file) throws IOException {
+		if (!Files.exists(file)) {
+			return EMPTY;
+		}
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+		try {
+			long size = channel.size();
+			ByteBuffer header = read(file, channel, 0, HEADER_BYTES);
+			if (header.getLong() != MAGIC) {
+				throw new IOException(String.format("%s is not a meter reading snapshot", file));
+			}
+			long logPosition = header.getLong();
+			int meterCount = header.getInt();
+			long indexBytes = header.getLong();
+			if (meterCount < 0 || indexBytes < 0 || HEADER_BYTES + indexBytes + CHECKSUM_BYTES > Math.min(size,
+					Integer.MAX_VALUE)) {
+				throw new IOException(String.format("%s is truncated", file));
+			}
+			ByteBuffer index = read(file, channel, HEADER_BYTES, (int) indexBytes + CHECKSUM_BYTES);
+			CRC32C checksum = new CRC32C();
+			checksum.update(header.flip());
+			checksum.update(index.slice(0, (int) indexBytes));
+			if (index.getInt((int) indexBytes) != (int) checksum.getValue()) {
+				throw new IOException(String.format("%s is damaged, the checksum of its index does not match", file));
+			}
+			Map<String, MeterReadingSeries> series = new LinkedHashMap<>();
+			MappedRegion region = null;
+			for (int i = 0; i < meterCount; i++) {
+				byte[] encodedId = new byte[Short.toUnsignedInt(index.getShort())];
+				index.get(encodedId);
+				int count = index.getInt();
+				long columnsOffset = index.getLong();
+				int columnsChecksum = index.getInt();
+				long columnsEnd = columnsOffset + columnsBytes(count);
+				if (count < 0 || columnsEnd > size) {
+					throw new IOException(String.format("%s is truncated", file));
+				}
+				if (columnsEnd - columnsOffset > Integer.MAX_VALUE) {
+					throw new IOException(String.format("%s holds a meter with too many readings to map", file));
+				}
+				// columns are stored in index order, a region ends before the meter that would take it past its size
+				if (region == null || columnsOffset < region.start() || columnsEnd - region.start() > REGION_BYTES) {
+					region = new MappedRegion(channel, columnsOffset,
+							Math.min(size - columnsOffset, Math.max(REGION_BYTES, columnsEnd - columnsOffset)));
+				}
+				series.put(new String(encodedId, StandardCharsets.UTF_8),
+						new MappedSeries(region, columnsOffset, count, columnsChecksum));
+			}
+			return new MeterReadingSnapshot(channel, logPosition, Collections.unmodifiableMap(series));
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * @return position of the reading log up to which the snapshot is complete
+	 */
+	public long logPosition() {
+		return logPosition;
+	}
+
+	/**
+	 * @return readings per meter, mapped from the file when first read
+	 */
+	public Map<String, MeterReadingSeries> series() {
+		return series;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (channel != null) {
+			channel.close();
+		}
+	}
+
+	/**
+	 * @return bytes taken by the columns of a meter with {@code count} readings
+	 */
+	private static long columnsBytes(int count) {
+		return alignToLong((long) count * (2 * Long.BYTES + Integer.BYTES + Byte.BYTES));
+	}
+
+	private static long indexEntryBytes(int encodedIdBytes) {
+		return Short.BYTES + encodedIdBytes + Integer.BYTES + Long.BYTES + Integer.BYTES;
+	}
+
+	private static long alignToLong(long offset) {
+		return (offset + Long.BYTES - 1) & -Long.BYTES;
+	}
+
+	private static ByteBuffer read(Path file, FileChannel channel, long position, int bytes) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(bytes);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) {
+				throw new IOException(String.format("%s is truncated", file));
+			}
+		}
+		return buffer.flip();
+	}
+
+	/**
+	 * Writes the columns of meter after meter from the data offset on, computing the
+	 * checksum of each meter's columns.
+	 */
+	private static final class ColumnsWriter {
+		private final FileChannel out;
+		private final ByteBuffer buffer = ByteBuffer.allocate(IO_BUFFER_BYTES);
+		private final CRC32C checksum = new CRC32C();
+		private long position;
+		// start of the current meter's bytes in the buffer not yet added to its checksum
+		private int checksumFrom;
+
+		private ColumnsWriter(FileChannel out, long position) {
+			this.out = out;
+			this.position = position;
+		}
+
+		/**
+		 * @return CRC32C of the meter's columns, padding included
+		 */
+		int write(MeterReadingSeries meterSeries) throws IOException {
+			checksum.reset();
+			checksumFrom = buffer.position();
+			ReadingIterator epochSeconds = meterSeries.iterator();
+			while (epochSeconds.next()) {
+				ensureRemaining(Long.BYTES);
+				buffer.putLong(epochSeconds.epochSecond());
+			}
+			ReadingIterator readings = meterSeries.iterator();
+			while (readings.next()) {
+				ensureRemaining(Long.BYTES);
+				buffer.putLong(readings.reading());
+			}
+			ReadingIterator nanos = meterSeries.iterator();
+			while (nanos.next()) {
+				ensureRemaining(Integer.BYTES);
+				buffer.putInt(nanos.nano());
+			}
+			ReadingIterator scales = meterSeries.iterator();
+			while (scales.next()) {
+				ensureRemaining(Byte.BYTES);
+				buffer.put((byte) scales.scale());
+			}
+			ensureRemaining(Long.BYTES);
+			buffer.put(new byte[(int) (columnsBytes(meterSeries.size()) - 21L * meterSeries.size())]);
+			updateChecksum();
+			return (int) checksum.getValue();
+		}
+
+		void flush() throws IOException {
+			updateChecksum();
+			buffer.flip();
+			while (buffer.hasRemaining()) {
+				position += out.write(buffer, position);
+			}
+			buffer.clear();
+			checksumFrom = 0;
+		}
+
+		private void ensureRemaining(int bytes) throws IOException {
+			if (buffer.remaining() < bytes) {
+				flush();
+			}
+		}
+
+		private void updateChecksum() {
+			checksum.update(buffer.duplicate().flip().position(checksumFrom));
+			checksumFrom = buffer.position();
+		}
+	}
+
+	/**
+	 * Region of the file the columns of consecutive meters are sliced from, mapped
+	 * when first used. Mappings stay valid after the channel is closed or the file
+	 * replaced.
+	 */
+	private static final class MappedRegion {
+		private final FileChannel channel;
+		private final long start;
+		private final long size;
+		private final ReentrantLock lock = new ReentrantLock();
+		private volatile ByteBuffer mapped;
+
+		private MappedRegion(FileChannel channel, long start, long size) {
+			this.channel = channel;
+			this.start = start;
+			this.size = size;
+		}
+
+		long start() {
+			return start;
+		}
+
+		/**
+		 * @return bytes of the file at an offset, sharing the region's mapping
+		 */
+		ByteBuffer slice(long offset, int bytes) {
+			ByteBuffer region = mapped;
+			if (region == null) {
+				lock.lock();
+				try {
+					region = mapped;
+					if (region == null) {
+						region = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+						mapped = region;
+					}
+				} catch (IOException e) {
+					throw new UncheckedIOException("Failed to map snapshot columns", e);
+				} finally {
+					lock.unlock();
+				}
+			}
+			return region.slice((int) (offset - start), bytes);
+		}
+	}
+
+	/**
+	 * Series over the columns of one meter, sliced from its region and verified
+	 * against their checksum on first access.
+	 */
+	private static final class MappedSeries implements MeterReadingSeries {
+		private final MappedRegion region;
+		private final long columnsOffset;
+		private final int size;
+		private final int columnsChecksum;
+		private volatile MappedColumns columns;
+
+		private MappedSeries(MappedRegion region, long columnsOffset, int size, int columnsChecksum) {
+			this.region = region;
+			this.columnsOffset = columnsOffset;
+			this.size = size;
+			this.columnsChecksum = columnsChecksum;
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+
+		@Override
+		public long epochSecond(int index) {
+			return columns().epochSeconds().get(Objects.checkIndex(index, size));
+		}
+
+		@Override
+		public int nano(int index) {
+			return columns().nanos().get(Objects.checkIndex(index, size));
+		}
+
+		@Override
+		public long reading(int index) {
+			return columns().readings().get(Objects.checkIndex(index, size));
+		}
+
+		@Override
+		public int scale(int index) {
+			return columns().scales().get(Objects.checkIndex(index, size));
+		}
+
+		private MappedColumns columns() {
+			MappedColumns sliced = columns;
+			if (sliced == null) {
+				ByteBuffer bytes = region.slice(columnsOffset, (int) columnsBytes(size));
+				CRC32C checksum = new CRC32C();
+				checksum.update(bytes.duplicate());
+				if ((int) checksum.getValue() != columnsChecksum) {
+					throw new UncheckedIOException(new IOException(String.format(
+							"Snapshot columns at offset %d are damaged, their checksum does not match", columnsOffset)));
+				}
+				int longColumnBytes = size * Long.BYTES;
+				int nanosOffset = 2 * longColumnBytes;
+				int scalesOffset = nanosOffset + size * Integer.BYTES;
+				sliced = new MappedColumns(bytes.slice(0, longColumnBytes).asLongBuffer(),
+						bytes.slice(nanosOffset, size * Integer.BYTES).asIntBuffer(),
+						bytes.slice(longColumnBytes, longColumnBytes).asLongBuffer(), bytes.slice(scalesOffset, size));
+				columns = sliced;
+			}
+			return sliced;
+		}
+	}
+
+	private record MappedColumns(LongBuffer epochSeconds, IntBuffer nanos, LongBuffer readings, ByteBuffer scales) {
+	}
+}
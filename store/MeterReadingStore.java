@@ -0,0 +1,75 @@
+package uk.tw.energy.store;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import uk.tw.energy.domain.ElectricityReading;
+import uk.tw.energy.domain.MeterReadingsBatch;
+
+/**
+ * Storage for the readings of all smart meters.
+ */
+public interface MeterReadingStore {
+
+	/**
+	 * Appends readings to the series of a meter, creating the series if needed.
+	 *
+	 * @param batch - readings of one meter, fixed-point as described in {@link FixedPointReadings}
+	 */
+	void append(MeterReadingsBatch batch);
+
+	/**
+	 * Appends domain readings to the series of a meter. Reading times and the scale
+	 * of each reading are kept as they are.
+	 *
+	 * @param smartMeterId        - meter the readings belong to
+	 * @param electricityReadings - readings to store
+	 */
+	default void append(String smartMeterId, List<ElectricityReading> electricityReadings) {
+		append(FixedPointReadings.toBatch(smartMeterId, electricityReadings));
+	}
+
+	/**
+	 * Gets the readings of a meter if any were stored.
+	 *
+	 * @param smartMeterId - meter id
+	 * @return view over the readings of the meter
+	 */
+	Optional<MeterReadingSeries> getSeries(String smartMeterId);
+
+	/**
+	 * Gets the readings of every meter with readings. Each series is taken when the
+	 * meter is visited, appends made meanwhile may or may not be included.
+	 *
+	 * @return view over the readings per meter id
+	 */
+	Map<String, MeterReadingSeries> getAllSeries();
+
+	/**
+	 * @return number of meters with readings
+	 */
+	default int meterCount() {
+		return getAllSeries().size();
+	}
+
+	/**
+	 * @return number of readings of all meters
+	 */
+	default long readingCount() {
+		long readingCount = 0;
+		for (MeterReadingSeries series : getAllSeries().values()) {
+			readingCount += series.size();
+		}
+		return readingCount;
+	}
+
+	/**
+	 * Registers a listener called for every subsequent append. Readings already in
+	 * the store are not replayed, listeners are expected to catch up lazily from
+	 * {@link #getSeries(String)}.
+	 *
+	 * @param listener - listener to register
+	 */
+	void addAppendListener(ReadingAppendListener listener);
+}
@@ -0,0 +1,22 @@
+package uk.tw.energy.store;
+
+import uk.tw.energy.domain.MeterReadingsBatch;
+
+/**
+ * Callback for state derived from the readings of a meter that is kept up to date
+ * as readings arrive. Listeners are called while the meter's append lock is held,
+ * so calls for one meter never overlap and arrive in append order. They must be
+ * quick and must not throw - an exception is logged by the store and the listener's
+ * state for the meter is left behind the series, to be caught up from it.
+ */
+@FunctionalInterface
+public interface ReadingAppendListener {
+
+	/**
+	 * Called after readings were appended to the series of a meter.
+	 *
+	 * @param readingsBefore - size of the meter's series before the append
+	 * @param batch          - appended readings and the meter they were appended to
+	 */
+	void onAppend(long readingsBefore, MeterReadingsBatch batch);
+}
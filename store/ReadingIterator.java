@@ -0,0 +1,74 @@
+package uk.tw.energy.store;
+
+/**
+ * Forward-only iterator over the readings of a {@link MeterReadingSeries}. Series
+ * held in compressed blocks decode readings one at a time as they are iterated, so
+ * iterating is the cheapest way to visit a range of readings.
+ */
+public interface ReadingIterator {
+
+	/**
+	 * Moves to the next reading.
+	 *
+	 * @return false if there are no more readings
+	 */
+	boolean next();
+
+	/**
+	 * @return time of the current reading in seconds since the epoch
+	 */
+	long epochSecond();
+
+	/**
+	 * @return nanoseconds within the second of the current reading time
+	 */
+	int nano();
+
+	/**
+	 * @return current reading in units of 10^-{@value FixedPointReadings#SCALE} kWh
+	 */
+	long reading();
+
+	/**
+	 * @return scale the current reading was stored with
+	 */
+	int scale();
+
+	/**
+	 * Limits an iterator to its next readings.
+	 *
+	 * @param iterator - iterator to limit
+	 * @param count    - number of readings to return at most
+	 * @return iterator stopping after {@code count} readings
+	 */
+	static ReadingIterator limit(ReadingIterator iterator, int count) {
+		return new ReadingIterator() {
+			private int remaining = count;
+
+			@Override
+			public boolean next() {
+				return remaining-- > 0 && iterator.next();
+			}
+
+			@Override
+			public long epochSecond() {
+				return iterator.epochSecond();
+			}
+
+			@Override
+			public int nano() {
+				return iterator.nano();
+			}
+
+			@Override
+			public long reading() {
+				return iterator.reading();
+			}
+
+			@Override
+			public int scale() {
+				return iterator.scale();
+			}
+		};
+	}
+}
@@ -0,0 +1,59 @@
+package uk.tw.energy.codec;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.Instant;
+
+import org.junit.jupiter.api.Test;
+
+import uk.tw.energy.domain.MeterReadingsBatch;
+import uk.tw.energy.store.FixedPointReadings;
+
+class MeterReadingsBinaryCodecTest {
+	private static final String SMART_METER_ID = "smart-meter-7";
+	private static final int MAX_READINGS = 100;
+
+	@Test
+	void decodesWhatWasEncoded() throws IOException {
+		long start = Instant.parse("2024-03-04T10:15:30Z").getEpochSecond();
+		MeterReadingsBatch batch = FixedPointReadings.toBatch(SMART_METER_ID,
+				new long[] { start, start + 10, start + 5, Instant.MIN.getEpochSecond(), Instant.MAX.getEpochSecond() },
+				new long[] { 503, -1, 0, Long.MAX_VALUE, Long.MIN_VALUE });
+
+		MeterReadingsBatch decoded = MeterReadingsBinaryCodec
+				.decode(new ByteArrayInputStream(MeterReadingsBinaryCodec.encode(batch)), MAX_READINGS);
+
+		assertEquals(SMART_METER_ID, decoded.smartMeterId());
+		assertArrayEquals(batch.epochSeconds(), decoded.epochSeconds());
+		assertArrayEquals(batch.readings(), decoded.readings());
+	}
+
+	@Test
+	void rejectsTimesOutsideTheRangeOfInstant() {
+		assertThrows(IOException.class, () -> decode(Instant.MAX.getEpochSecond() + 1));
+		assertThrows(IOException.class, () -> decode(Instant.MIN.getEpochSecond() - 1));
+	}
+
+	@Test
+	void rejectsTimeDeltasThatOverflow() {
+		assertThrows(IOException.class, () -> decode(Instant.MAX.getEpochSecond(), Long.MAX_VALUE));
+		assertThrows(IOException.class, () -> decode(Instant.MIN.getEpochSecond(), Long.MIN_VALUE));
+	}
+
+	private static MeterReadingsBatch decode(long... timeDeltas) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(1);
+		MeterReadingsBinaryCodec.writeVarLong(out, 7);
+		MeterReadingsBinaryCodec.writeVarLong(out, timeDeltas.length);
+		for (long timeDelta : timeDeltas) {
+			MeterReadingsBinaryCodec.writeVarLong(out, MeterReadingsBinaryCodec.zigZag(timeDelta));
+			MeterReadingsBinaryCodec.writeVarLong(out, 0);
+		}
+		return MeterReadingsBinaryCodec.decode(new ByteArrayInputStream(out.toByteArray()), MAX_READINGS);
+	}
+}
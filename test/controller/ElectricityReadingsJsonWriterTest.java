@@ -0,0 +1,45 @@
+package uk.tw.energy.controller;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+
+import uk.tw.energy.domain.ElectricityReading;
+import uk.tw.energy.store.ColumnarMeterReadingStore;
+
+class ElectricityReadingsJsonWriterTest {
+	private static final String SMART_METER_ID = "smart-meter-0";
+	private static final Instant START = Instant.parse("2024-03-04T10:15:30Z");
+
+	@Test
+	void writesWhatTheObjectMapperWritesForTheReadingList() throws IOException {
+		List<ElectricityReading> readings = new ArrayList<>();
+		for (int i = 0; i < 1500; i++) {
+			readings.add(new ElectricityReading(START.plusMillis(250L * i), BigDecimal.valueOf(i, i % 5)));
+		}
+		ColumnarMeterReadingStore store = new ColumnarMeterReadingStore();
+		store.append(SMART_METER_ID, readings);
+
+		for (boolean datesAsTimestamps : new boolean[] { false, true }) {
+			ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule())
+					.configure(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, datesAsTimestamps);
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+			new ElectricityReadingsJsonWriter(objectMapper).write(store.getAllSeries().get(SMART_METER_ID), out);
+
+			assertEquals(objectMapper.writeValueAsString(readings), out.toString(StandardCharsets.UTF_8));
+		}
+	}
+}
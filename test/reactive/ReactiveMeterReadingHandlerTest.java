@@ -0,0 +1,315 @@
+package uk.tw.energy.reactive;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import uk.tw.energy.domain.ElectricityReading;
+import uk.tw.energy.domain.MeterReadings;
+import uk.tw.energy.service.BatchIngestionService;
+import uk.tw.energy.service.MeterReadingService;
+import uk.tw.energy.service.MeterReadingValidationService;
+import uk.tw.energy.store.ColumnarMeterReadingStore;
+import uk.tw.energy.store.MeterReadingStore;
+import uk.tw.energy.wal.ReadingLog;
+
+/**
+ * Boots the non-blocking ingestion server on a free port with one store thread,
+ * and holds the store back to check what clients see while it is busy.
+ */
+class ReactiveMeterReadingHandlerTest {
+	private static final Instant START = Instant.parse("2024-03-04T10:15:30Z");
+	private static final int STORE_QUEUE_CAPACITY = 1;
+	private static final int PREFETCH = 4;
+	private static final int MAX_RECORD_BYTES = 64 * 1024;
+	// appends for this meter are never held
+	private static final String UNGATED_SMART_METER_ID = "smart-meter-ungated";
+
+	private final MeterReadingStore meterReadingStore = new ColumnarMeterReadingStore();
+	private final MeterReadingService meterReadingService = new MeterReadingService(meterReadingStore,
+			ReadingLog.NONE, new MeterReadingValidationService(new SimpleMeterRegistry()), new SimpleMeterRegistry());
+	private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+	private final HttpClient httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+	private final StoreGate storeGate = new StoreGate();
+	private final ReactiveIngestionServer server;
+
+	ReactiveMeterReadingHandlerTest() {
+		meterReadingStore.addAppendListener((readingsBefore, batch) -> {
+			if (!UNGATED_SMART_METER_ID.equals(batch.smartMeterId())) {
+				storeGate.pass();
+			}
+		});
+		server = new ReactiveIngestionConfiguration().reactiveIngestionServer(meterReadingService,
+				new BatchIngestionService(meterReadingService, objectMapper, MAX_RECORD_BYTES), objectMapper, true,
+				"127.0.0.1", 0, 1, STORE_QUEUE_CAPACITY, PREFETCH, MAX_RECORD_BYTES);
+	}
+
+	@AfterEach
+	void stopServer() {
+		storeGate.open();
+		server.close();
+	}
+
+	@Test
+	void aCancelledUploadIsStoredWithoutInterruptingTheStore() throws Exception {
+		CompletableFuture<HttpResponse<String>> upload = httpClient.sendAsync(storeRequest("smart-meter-0", 3),
+				HttpResponse.BodyHandlers.ofString());
+		assertTrue(storeGate.awaitEntered(), "upload did not reach the store");
+
+		upload.cancel(true);
+		// the server notices the closed connection and cancels the request meanwhile
+		Thread.sleep(500);
+		storeGate.open();
+
+		assertTrue(awaitStored("smart-meter-0", 3), "cancelled upload was not stored");
+		assertFalse(storeGate.wasInterrupted(), "store was interrupted");
+	}
+
+	@Test
+	void uploadsBeyondTheStoreQueueAreAnsweredWith503() throws Exception {
+		CompletableFuture<HttpResponse<String>> first = httpClient.sendAsync(storeRequest("smart-meter-0", 1),
+				HttpResponse.BodyHandlers.ofString());
+		assertTrue(storeGate.awaitEntered(), "upload did not reach the store");
+		List<CompletableFuture<HttpResponse<String>>> waiting = new ArrayList<>();
+		for (int i = 1; i <= STORE_QUEUE_CAPACITY + 1; i++) {
+			waiting.add(httpClient.sendAsync(storeRequest("smart-meter-" + i, 1), HttpResponse.BodyHandlers.ofString()));
+		}
+
+		// one upload is held by the store and the queue is full, so the first answer is a refusal
+		HttpResponse<?> refused = (HttpResponse<?>) CompletableFuture.anyOf(waiting.toArray(new CompletableFuture<?>[0]))
+				.get(10, TimeUnit.SECONDS);
+		assertEquals(503, refused.statusCode());
+		assertEquals("1", refused.headers().firstValue("Retry-After").orElse(null));
+		storeGate.open();
+		assertEquals(200, first.get(10, TimeUnit.SECONDS).statusCode());
+	}
+
+	@Test
+	void recordsRefusedOnceABatchRecordIsStoredAreRejectedRatherThanFailingTheUpload() throws Exception {
+		CountDownLatch resumed = new CountDownLatch(1);
+		byte[] secondRecord = (objectMapper.writeValueAsString(meterReadings(UNGATED_SMART_METER_ID, 1, 1)) + "\n")
+				.getBytes(StandardCharsets.UTF_8);
+		InputStream body = new SequenceInputStream(
+				new ByteArrayInputStream((objectMapper.writeValueAsString(meterReadings(UNGATED_SMART_METER_ID, 1)) + "\n")
+						.getBytes(StandardCharsets.UTF_8)),
+				new ByteArrayInputStream(secondRecord) {
+					@Override
+					public int read(byte[] buffer, int offset, int length) {
+						try {
+							resumed.await();
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+						}
+						return super.read(buffer, offset, length);
+					}
+				});
+		CompletableFuture<HttpResponse<String>> upload = httpClient.sendAsync(
+				HttpRequest.newBuilder(uri("/readings/store-batch"))
+						.header("Content-Type", "application/x-ndjson")
+						.POST(HttpRequest.BodyPublishers.ofInputStream(() -> body))
+						.build(),
+				HttpResponse.BodyHandlers.ofString());
+		assertTrue(awaitStored(UNGATED_SMART_METER_ID, 1), "first record was not stored");
+
+		// hold the store and fill its queue before the second record is sent
+		CompletableFuture<HttpResponse<String>> held = httpClient.sendAsync(storeRequest("smart-meter-0", 1),
+				HttpResponse.BodyHandlers.ofString());
+		assertTrue(storeGate.awaitEntered(), "upload did not reach the store");
+		List<CompletableFuture<HttpResponse<String>>> waiting = new ArrayList<>();
+		for (int i = 1; i <= STORE_QUEUE_CAPACITY + 1; i++) {
+			waiting.add(httpClient.sendAsync(storeRequest("smart-meter-" + i, 1), HttpResponse.BodyHandlers.ofString()));
+		}
+		HttpResponse<?> refused = (HttpResponse<?>) CompletableFuture.anyOf(waiting.toArray(new CompletableFuture<?>[0]))
+				.get(10, TimeUnit.SECONDS);
+		assertEquals(503, refused.statusCode());
+		resumed.countDown();
+
+		HttpResponse<String> response = upload.get(10, TimeUnit.SECONDS);
+		assertEquals(200, response.statusCode());
+		JsonNode result = objectMapper.readTree(response.body());
+		assertEquals(1, result.get("accepted").asInt());
+		assertEquals(1, result.get("rejected").asInt());
+		assertEquals(2, result.get("rejections").get(0).get("record").asInt());
+		assertEquals("Too many pending requests", result.get("rejections").get(0).get("reason").asText());
+		storeGate.open();
+		assertEquals(200, held.get(10, TimeUnit.SECONDS).statusCode());
+	}
+
+	@Test
+	void aBatchUploadIsReadNoFurtherAheadOfTheStoreThanTheConnectionBuffers() throws Exception {
+		int records = 40_000;
+		RecordStream body = new RecordStream(records, i -> {
+			try {
+				return (objectMapper.writeValueAsString(meterReadings("smart-meter-0", i * 20, 20)) + "\n")
+						.getBytes(StandardCharsets.UTF_8);
+			} catch (Exception e) {
+				throw new IllegalStateException(e);
+			}
+		});
+		long bodyBytes = body.estimatedBytes();
+		CompletableFuture<HttpResponse<String>> upload = httpClient.sendAsync(
+				HttpRequest.newBuilder(uri("/readings/store-batch"))
+						.header("Content-Type", "application/x-ndjson")
+						.POST(HttpRequest.BodyPublishers.ofInputStream(() -> body))
+						.build(),
+				HttpResponse.BodyHandlers.ofString());
+		assertTrue(storeGate.awaitEntered(), "upload did not reach the store");
+
+		// the client stalls once the prefetched records and the socket buffers are full
+		long sent;
+		do {
+			sent = body.bytesRead();
+			Thread.sleep(500);
+		} while (body.bytesRead() != sent && sent < bodyBytes / 4);
+		assertTrue(sent < bodyBytes / 4, String.format("%d of %d bytes sent while the store was held", sent, bodyBytes));
+		storeGate.open();
+
+		HttpResponse<String> response = upload.get(60, TimeUnit.SECONDS);
+		assertEquals(200, response.statusCode());
+		assertEquals(records, objectMapper.readTree(response.body()).get("accepted").asInt());
+	}
+
+	private HttpRequest storeRequest(String smartMeterId, int readings) throws Exception {
+		return HttpRequest.newBuilder(uri("/readings/store"))
+				.header("Content-Type", "application/json")
+				.POST(HttpRequest.BodyPublishers.ofString(
+						objectMapper.writeValueAsString(meterReadings(smartMeterId, readings))))
+				.timeout(Duration.ofSeconds(30))
+				.build();
+	}
+
+	private static MeterReadings meterReadings(String smartMeterId, int readings) {
+		return meterReadings(smartMeterId, 0, readings);
+	}
+
+	private static MeterReadings meterReadings(String smartMeterId, int first, int readings) {
+		List<ElectricityReading> electricityReadings = new ArrayList<>();
+		for (int i = first; i < first + readings; i++) {
+			electricityReadings.add(new ElectricityReading(START.plusSeconds(i), BigDecimal.valueOf(i % 1000, 2)));
+		}
+		return new MeterReadings(smartMeterId, electricityReadings);
+	}
+
+	private URI uri(String path) {
+		return URI.create("http://127.0.0.1:" + server.port() + path);
+	}
+
+	private boolean awaitStored(String smartMeterId, int readings) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while (System.nanoTime() < deadline) {
+			if (meterReadingService.getReadings(smartMeterId).map(List::size).orElse(0) == readings) {
+				return true;
+			}
+			Thread.sleep(10);
+		}
+		return false;
+	}
+
+	/**
+	 * Holds every append until opened, noting if a held append was interrupted.
+	 */
+	private static final class StoreGate {
+		private final CountDownLatch entered = new CountDownLatch(1);
+		private final CountDownLatch opened = new CountDownLatch(1);
+		private final AtomicBoolean interrupted = new AtomicBoolean();
+
+		void pass() {
+			entered.countDown();
+			try {
+				opened.await();
+			} catch (InterruptedException e) {
+				interrupted.set(true);
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		boolean awaitEntered() throws InterruptedException {
+			return entered.await(10, TimeUnit.SECONDS);
+		}
+
+		void open() {
+			opened.countDown();
+		}
+
+		boolean wasInterrupted() {
+			return interrupted.get();
+		}
+	}
+
+	/**
+	 * Newline delimited records generated as the client reads them, counting the
+	 * bytes read so far.
+	 */
+	private static final class RecordStream extends InputStream {
+		private final int records;
+		private final IntFunction<byte[]> recordAt;
+		private final AtomicLong bytesRead = new AtomicLong();
+		private byte[] record;
+		private int recordIndex;
+		private int position;
+
+		RecordStream(int records, IntFunction<byte[]> recordAt) {
+			this.records = records;
+			this.recordAt = recordAt;
+			this.record = recordAt.apply(0);
+		}
+
+		long estimatedBytes() {
+			return (long) records * record.length;
+		}
+
+		long bytesRead() {
+			return bytesRead.get();
+		}
+
+		@Override
+		public int read() {
+			byte[] one = new byte[1];
+			return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int length) {
+			if (position == record.length) {
+				if (recordIndex + 1 == records) {
+					return -1;
+				}
+				record = recordAt.apply(++recordIndex);
+				position = 0;
+			}
+			int count = Math.min(length, record.length - position);
+			System.arraycopy(record, position, buffer, offset, count);
+			position += count;
+			bytesRead.addAndGet(count);
+			return count;
+		}
+	}
+}
@@ -0,0 +1,73 @@
+package uk.tw.energy.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import uk.tw.energy.domain.BatchStoreResult;
+import uk.tw.energy.domain.BatchStoreResult.RecordRejection;
+import uk.tw.energy.domain.ElectricityReading;
+import uk.tw.energy.domain.MeterReadings;
+import uk.tw.energy.store.ColumnarMeterReadingStore;
+import uk.tw.energy.wal.ReadingLog;
+
+class BatchIngestionServiceTest {
+	private static final Instant START = Instant.parse("2024-03-04T10:15:30Z");
+	private static final int MAX_RECORD_BYTES = 1024;
+
+	private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+	private final MeterReadingService meterReadingService = new MeterReadingService(new ColumnarMeterReadingStore(),
+			ReadingLog.NONE, new MeterReadingValidationService(new SimpleMeterRegistry()), new SimpleMeterRegistry());
+	private final BatchIngestionService batchIngestionService = new BatchIngestionService(meterReadingService,
+			objectMapper, MAX_RECORD_BYTES);
+
+	@Test
+	void aRecordBeyondTheSizeLimitIsRejectedAndTheRestOfTheUploadStored() throws Exception {
+		String tooLarge = record("smart-meter-1", 200);
+		String upload = record("smart-meter-0", 3) + "\n" + tooLarge + "\n\n" + record("smart-meter-2", 3);
+
+		// longer than the read buffer as well as the limit
+		assertTrue(tooLarge.length() > 8192);
+
+		BatchStoreResult result = batchIngestionService
+				.storeReadings(new ByteArrayInputStream(upload.getBytes(StandardCharsets.UTF_8)));
+
+		assertEquals(new BatchStoreResult(2, 1,
+				List.of(new RecordRejection(2, null, BatchIngestionService.RECORD_TOO_LARGE))), result);
+		assertEquals(3, meterReadingService.getReadings("smart-meter-0").orElseThrow().size());
+		assertFalse(meterReadingService.getReadings("smart-meter-1").isPresent());
+		assertEquals(3, meterReadingService.getReadings("smart-meter-2").orElseThrow().size());
+	}
+
+	@Test
+	void aRecordUpToTheSizeLimitIsStored() throws Exception {
+		String record = record("smart-meter-0", 3);
+		String padded = record + " ".repeat(MAX_RECORD_BYTES - record.length());
+
+		BatchStoreResult result = batchIngestionService
+				.storeReadings(new ByteArrayInputStream((padded + "\n").getBytes(StandardCharsets.UTF_8)));
+
+		assertEquals(new BatchStoreResult(1, 0, List.of()), result);
+	}
+
+	private String record(String smartMeterId, int readings) throws Exception {
+		List<ElectricityReading> electricityReadings = new ArrayList<>();
+		for (int i = 0; i < readings; i++) {
+			electricityReadings.add(new ElectricityReading(START.plusSeconds(i), BigDecimal.valueOf(i % 1000, 2)));
+		}
+		return objectMapper.writeValueAsString(new MeterReadings(smartMeterId, electricityReadings));
+	}
+}
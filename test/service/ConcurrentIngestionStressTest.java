@@ -0,0 +1,129 @@
+package uk.tw.energy.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import uk.tw.energy.domain.ElectricityReading;
+import uk.tw.energy.domain.MeterReadings;
+import uk.tw.energy.store.ColumnarMeterReadingStore;
+import uk.tw.energy.store.MeterReadingStore;
+import uk.tw.energy.wal.ReadingLog;
+
+/**
+ * Stores readings from 64 concurrent writers, several per meter, while readers
+ * iterate the meters' readings, and checks that no reading is lost or reordered.
+ */
+class ConcurrentIngestionStressTest {
+	private static final int WRITERS = 64;
+	private static final int READERS = 4;
+	private static final int METERS = 16;
+	private static final int WRITERS_PER_METER = WRITERS / METERS;
+	private static final int UPLOADS_PER_WRITER = 250;
+	private static final int READINGS_PER_UPLOAD = 10;
+	private static final Instant START = Instant.parse("2024-03-04T00:00:00Z");
+
+	private final MeterReadingStore meterReadingStore = new ColumnarMeterReadingStore();
+	private final MeterReadingService meterReadingService = new MeterReadingService(meterReadingStore,
+			ReadingLog.NONE, new MeterReadingValidationService(new SimpleMeterRegistry()), new SimpleMeterRegistry());
+
+	@Test
+	void noReadingsAreLostUnderConcurrentWriters() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(WRITERS + READERS);
+		CountDownLatch start = new CountDownLatch(1);
+		AtomicBoolean writing = new AtomicBoolean(true);
+		try {
+			List<Future<?>> writers = new ArrayList<>();
+			for (int writer = 0; writer < WRITERS; writer++) {
+				int writerIndex = writer;
+				writers.add(executor.submit(() -> {
+					start.await();
+					write(writerIndex);
+					return null;
+				}));
+			}
+			List<Future<?>> readers = new ArrayList<>();
+			for (int reader = 0; reader < READERS; reader++) {
+				readers.add(executor.submit(() -> {
+					start.await();
+					while (writing.get()) {
+						readInOrder(meterId(ThreadLocalRandom.current().nextInt(METERS)));
+					}
+					return null;
+				}));
+			}
+
+			start.countDown();
+			for (Future<?> writer : writers) {
+				writer.get(60, TimeUnit.SECONDS);
+			}
+			writing.set(false);
+			for (Future<?> reader : readers) {
+				reader.get(60, TimeUnit.SECONDS);
+			}
+		} finally {
+			writing.set(false);
+			executor.shutdownNow();
+		}
+
+		int readingsPerMeter = WRITERS_PER_METER * UPLOADS_PER_WRITER * READINGS_PER_UPLOAD;
+		assertEquals((long) METERS * readingsPerMeter, meterReadingStore.readingCount());
+		for (int meter = 0; meter < METERS; meter++) {
+			List<ElectricityReading> readings = readInOrder(meterId(meter));
+			assertEquals(readingsPerMeter, readings.size());
+			Set<ElectricityReading> distinct = new HashSet<>(readings);
+			for (int writer = meter; writer < WRITERS; writer += METERS) {
+				for (int upload = 0; upload < UPLOADS_PER_WRITER; upload++) {
+					assertTrue(distinct.containsAll(upload(writer, upload)), "missing upload of writer " + writer);
+				}
+			}
+		}
+	}
+
+	private void write(int writer) {
+		for (int upload = 0; upload < UPLOADS_PER_WRITER; upload++) {
+			meterReadingService.storeReadings(new MeterReadings(meterId(writer % METERS), upload(writer, upload)));
+		}
+	}
+
+	/**
+	 * Readings of one upload. The writers of a meter take turns over its times, so
+	 * uploads racing for the same meter arrive out of order.
+	 */
+	private static List<ElectricityReading> upload(int writer, int upload) {
+		List<ElectricityReading> readings = new ArrayList<>(READINGS_PER_UPLOAD);
+		for (int reading = 0; reading < READINGS_PER_UPLOAD; reading++) {
+			long slot = ((long) upload * READINGS_PER_UPLOAD + reading) * WRITERS_PER_METER + writer / METERS;
+			readings.add(new ElectricityReading(START.plusSeconds(slot * 60), BigDecimal.valueOf(writer * 10_000L + upload, 4)));
+		}
+		return readings;
+	}
+
+	private List<ElectricityReading> readInOrder(String smartMeterId) {
+		List<ElectricityReading> readings = new ArrayList<>(meterReadingService.getReadings(smartMeterId).orElse(List.of()));
+		for (int i = 1; i < readings.size(); i++) {
+			assertTrue(!readings.get(i).time().isBefore(readings.get(i - 1).time()), "readings out of order");
+		}
+		return readings;
+	}
+
+	private static String meterId(int meter) {
+		return "smart-meter-" + meter;
+	}
+}
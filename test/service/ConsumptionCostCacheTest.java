@@ -0,0 +1,34 @@
+package uk.tw.energy.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.math.BigDecimal;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+class ConsumptionCostCacheTest {
+	private static final String SMART_METER_ID = "smart-meter-0";
+	private static final Map<String, BigDecimal> COSTS = Map.of("price-plan-0", BigDecimal.TEN);
+
+	private final ConsumptionCostCache consumptionCostCache = new ConsumptionCostCache(10, 60_000);
+
+	@Test
+	void anEntryNewerThanTheCallerIsKept() {
+		consumptionCostCache.put(SMART_METER_ID, 5, COSTS);
+
+		assertNull(consumptionCostCache.get(SMART_METER_ID, 4));
+		assertEquals(COSTS, consumptionCostCache.get(SMART_METER_ID, 5));
+		assertEquals(1, consumptionCostCache.size());
+	}
+
+	@Test
+	void anEntryOlderThanTheCallerIsRemoved() {
+		consumptionCostCache.put(SMART_METER_ID, 5, COSTS);
+
+		assertNull(consumptionCostCache.get(SMART_METER_ID, 6));
+		assertEquals(0, consumptionCostCache.size());
+		assertNull(consumptionCostCache.get(SMART_METER_ID, 5));
+	}
+}
@@ -0,0 +1,155 @@
+package uk.tw.energy.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import uk.tw.energy.domain.ElectricityReading;
+import uk.tw.energy.domain.PricePlan;
+import uk.tw.energy.domain.PricePlan.PeakTimeMultiplier;
+import uk.tw.energy.store.ColumnarMeterReadingStore;
+import uk.tw.energy.store.MeterReadingStore;
+
+/**
+ * Compares the costs priced from consumption aggregates with the full scan over
+ * every reading that the aggregates replaced.
+ */
+class ConsumptionCostServiceTest {
+	private static final String SMART_METER_ID = "smart-meter-0";
+	private static final Instant START = Instant.parse("2024-03-04T10:15:30.125Z");
+
+	private final List<PricePlan> pricePlans = List.of(
+			new PricePlan("price-plan-0", "Dr Evil's Dark Energy", BigDecimal.TEN, List.of()),
+			new PricePlan("price-plan-1", "The Green Eco", new BigDecimal("2"),
+					List.of(new PeakTimeMultiplier(DayOfWeek.SATURDAY, new BigDecimal("0.5")))),
+			new PricePlan("price-plan-2", "Power for Everyone", new BigDecimal("1.5"),
+					List.of(new PeakTimeMultiplier(DayOfWeek.MONDAY, 17, 20, new BigDecimal("2.25")))),
+			new PricePlan("price-plan-3", "Flat Rate", new BigDecimal("0.175"), List.of()));
+
+	@Test
+	void costsMatchTheFullScanForReadingsBelowTheStoredScale() {
+		List<ElectricityReading> readings = randomReadings(new Random(1), 3000, 3);
+
+		for (CostArithmetic arithmetic : CostArithmetic.values()) {
+			assertEquals(fullScanCostPerPlan(readings), consumptionCostService(readings, arithmetic)
+					.computeConsumptionCostPerPlan(SMART_METER_ID), arithmetic.name());
+		}
+	}
+
+	@Test
+	void costsMatchTheFullScanForWholeNumberReadings() {
+		List<ElectricityReading> readings = randomReadings(new Random(2), 200, 0);
+
+		for (CostArithmetic arithmetic : CostArithmetic.values()) {
+			assertEquals(fullScanCostPerPlan(readings), consumptionCostService(readings, arithmetic)
+					.computeConsumptionCostPerPlan(SMART_METER_ID), arithmetic.name());
+		}
+	}
+
+	@Test
+	void elapsedTimeIsTakenToTheWholeSecondLikeTheFullScan() {
+		List<ElectricityReading> readings = List.of(
+				new ElectricityReading(START.plusMillis(900), new BigDecimal("0.5")),
+				new ElectricityReading(START.plusSeconds(3600).plusMillis(100), new BigDecimal("1.25")));
+
+		for (CostArithmetic arithmetic : CostArithmetic.values()) {
+			assertEquals(fullScanCostPerPlan(readings), consumptionCostService(readings, arithmetic)
+					.computeConsumptionCostPerPlan(SMART_METER_ID), arithmetic.name());
+		}
+	}
+
+	@Test
+	void cheapestPlansMatchTheFullScan() {
+		List<ElectricityReading> readings = randomReadings(new Random(3), 500, 2);
+		Map<String, BigDecimal> fullScanCostPerPlan = fullScanCostPerPlan(readings);
+		List<Map.Entry<String, BigDecimal>> expected = new ArrayList<>(fullScanCostPerPlan.entrySet());
+		expected.sort(Map.Entry.<String, BigDecimal>comparingByValue().thenComparing(Map.Entry.comparingByKey()));
+
+		for (CostArithmetic arithmetic : CostArithmetic.values()) {
+			assertEquals(expected.subList(0, 2),
+					consumptionCostService(readings, arithmetic).findCheapestPlans(SMART_METER_ID, 2), arithmetic.name());
+		}
+	}
+
+	@Test
+	void costsMatchTheFullScanWhenSlotTotalsExceedTheFixedPointRange() {
+		List<ElectricityReading> readings = new ArrayList<>();
+		for (int i = 0; i < 30; i++) {
+			// near the largest representable reading, all in the same hour
+			BigDecimal reading = new BigDecimal(i % 5 == 4 ? "-99999999999999.9999" : "99999999999999.9999");
+			readings.add(new ElectricityReading(START.plusSeconds(60L * i), reading));
+		}
+
+		for (CostArithmetic arithmetic : CostArithmetic.values()) {
+			MeterReadingStore meterReadingStore = new ColumnarMeterReadingStore();
+			meterReadingStore.append(SMART_METER_ID, readings.subList(0, 2));
+			ConsumptionCostService consumptionCostService = new ConsumptionCostService(pricePlans,
+					new ConsumptionAggregateService(meterReadingStore), new ConsumptionCostCache(0, 0), arithmetic,
+					new SimpleMeterRegistry());
+			consumptionCostService.computeConsumptionCostPerPlan(SMART_METER_ID);
+			// folded into the aggregate as they are stored
+			meterReadingStore.append(SMART_METER_ID, readings.subList(2, readings.size()));
+
+			assertEquals(fullScanCostPerPlan(readings),
+					consumptionCostService.computeConsumptionCostPerPlan(SMART_METER_ID), arithmetic.name());
+			assertEquals(fullScanCostPerPlan(readings),
+					consumptionCostService(readings, arithmetic).computeConsumptionCostPerPlan(SMART_METER_ID),
+					arithmetic.name());
+		}
+	}
+
+	private ConsumptionCostService consumptionCostService(List<ElectricityReading> readings, CostArithmetic arithmetic) {
+		MeterReadingStore meterReadingStore = new ColumnarMeterReadingStore();
+		meterReadingStore.append(SMART_METER_ID, readings);
+		return new ConsumptionCostService(pricePlans, new ConsumptionAggregateService(meterReadingStore),
+				new ConsumptionCostCache(0, 0), arithmetic, new SimpleMeterRegistry());
+	}
+
+	/**
+	 * Readings at irregular, sub-second times over a few weeks, with values of the
+	 * given number of decimal places.
+	 */
+	private static List<ElectricityReading> randomReadings(Random random, int count, int scale) {
+		List<ElectricityReading> readings = new ArrayList<>(count);
+		Instant time = START;
+		for (int i = 0; i < count; i++) {
+			time = time.plusMillis(1 + random.nextInt(3_600_000));
+			readings.add(new ElectricityReading(time, BigDecimal.valueOf(random.nextInt(100_000), scale)));
+		}
+		return readings;
+	}
+
+	/**
+	 * The cost of every plan as it was computed before consumption was aggregated:
+	 * reading x price summed over every reading, divided by the whole hours elapsed.
+	 */
+	private Map<String, BigDecimal> fullScanCostPerPlan(List<ElectricityReading> readings) {
+		Instant first = readings.stream().map(ElectricityReading::time).min(Comparator.naturalOrder()).orElseThrow();
+		Instant last = readings.stream().map(ElectricityReading::time).max(Comparator.naturalOrder()).orElseThrow();
+		BigDecimal timeElapsed = BigDecimal.valueOf(Duration.between(first, last).getSeconds() / 3600.0);
+		Map<String, BigDecimal> costPerPlan = new HashMap<>();
+		for (PricePlan pricePlan : pricePlans) {
+			BigDecimal totalCost = readings.stream()
+					.map(reading -> reading.reading()
+							.multiply(pricePlan.getPrice(LocalDateTime.ofInstant(reading.time(), ZoneId.systemDefault()))))
+					.reduce(BigDecimal.ZERO, BigDecimal::add);
+			costPerPlan.put(pricePlan.getPlanName(), totalCost.divide(timeElapsed, RoundingMode.HALF_UP));
+		}
+		return costPerPlan;
+	}
+}
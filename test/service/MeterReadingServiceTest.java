@@ -0,0 +1,99 @@
+package uk.tw.energy.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import uk.tw.energy.domain.ElectricityReading;
+import uk.tw.energy.domain.MeterReadings;
+import uk.tw.energy.domain.MeterReadingsBatch;
+import uk.tw.energy.domain.ReadingsQuery;
+import uk.tw.energy.exceptions.InvalidElectricityReadingException;
+import uk.tw.energy.store.ColumnarMeterReadingStore;
+import uk.tw.energy.store.FixedPointReadings;
+import uk.tw.energy.wal.ReadingLog;
+
+class MeterReadingServiceTest {
+	private static final String SMART_METER_ID = "smart-meter-0";
+	private static final Instant START = Instant.parse("2024-03-04T10:15:30Z");
+
+	private final MeterReadingService meterReadingService = new MeterReadingService(new ColumnarMeterReadingStore(),
+			ReadingLog.NONE, new MeterReadingValidationService(new SimpleMeterRegistry()), new SimpleMeterRegistry());
+
+	@Test
+	void storedReadingsKeepTheirScaleAndSubSecondTime() {
+		List<ElectricityReading> readings = List.of(
+				new ElectricityReading(START, new BigDecimal("0.05")),
+				new ElectricityReading(START.plusMillis(250), new BigDecimal("1.2000")),
+				new ElectricityReading(START.plusNanos(999_999_999), new BigDecimal("3")),
+				new ElectricityReading(START.plusSeconds(1), new BigDecimal("1E+1")));
+
+		meterReadingService.storeReadings(new MeterReadings(SMART_METER_ID, readings));
+
+		assertEquals(readings, meterReadingService.getReadings(SMART_METER_ID).orElseThrow());
+	}
+
+	@Test
+	void readingsKeepTheirScaleAndSubSecondTimeOnceCompressed() {
+		List<ElectricityReading> readings = new ArrayList<>();
+		for (int i = 0; i < 5000; i++) {
+			readings.add(new ElectricityReading(START.plusMillis(250L * i), BigDecimal.valueOf(i % 1000, i % 5)));
+		}
+
+		// later readings first, so the earlier ones are merged into sealed blocks
+		for (int from = 4000; from >= 0; from -= 1000) {
+			meterReadingService.storeReadings(new MeterReadings(SMART_METER_ID, readings.subList(from, from + 1000)));
+		}
+
+		assertEquals(readings, meterReadingService.getReadings(SMART_METER_ID).orElseThrow());
+	}
+
+	@Test
+	void readingsWithMoreThanFourDecimalPlacesAreRejected() {
+		List<ElectricityReading> readings = List.of(new ElectricityReading(START, new BigDecimal("0.12345")));
+
+		assertThrows(InvalidElectricityReadingException.class,
+				() -> meterReadingService.storeReadings(new MeterReadings(SMART_METER_ID, readings)));
+	}
+
+	@Test
+	void binaryReadingsWithTimesOutsideTheRangeOfInstantAreRejected() {
+		MeterReadingsBatch batch = FixedPointReadings.toBatch(SMART_METER_ID,
+				new long[] { START.getEpochSecond(), Instant.MAX.getEpochSecond() + 1 }, new long[] { 1, 2 });
+
+		assertThrows(InvalidElectricityReadingException.class, () -> meterReadingService.storeReadings(batch));
+		assertEquals(Optional.empty(), meterReadingService.getReadings(SMART_METER_ID));
+	}
+
+	@Test
+	void readingsWithTrailingZerosBeyondFourDecimalPlacesAreKept() {
+		List<ElectricityReading> readings = List.of(new ElectricityReading(START, new BigDecimal("0.123400")));
+
+		meterReadingService.storeReadings(new MeterReadings(SMART_METER_ID, readings));
+
+		assertEquals(readings, meterReadingService.getReadings(SMART_METER_ID).orElseThrow());
+	}
+
+	@Test
+	void readingsQueryBoundsAreExactToTheNanosecond() {
+		List<ElectricityReading> readings = List.of(
+				new ElectricityReading(START, BigDecimal.ONE),
+				new ElectricityReading(START.plusMillis(250), BigDecimal.ONE),
+				new ElectricityReading(START.plusMillis(500), BigDecimal.ONE),
+				new ElectricityReading(START.plusSeconds(1), BigDecimal.ONE));
+		meterReadingService.storeReadings(new MeterReadings(SMART_METER_ID, readings));
+
+		ReadingsQuery query = new ReadingsQuery(START.plusMillis(250), START.plusMillis(500), null, null);
+
+		assertEquals(readings.subList(1, 2),
+				meterReadingService.getReadings(SMART_METER_ID, query).orElseThrow().readings());
+	}
+}
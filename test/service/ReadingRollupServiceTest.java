@@ -0,0 +1,110 @@
+package uk.tw.energy.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+
+import uk.tw.energy.domain.ElectricityReading;
+import uk.tw.energy.domain.ReadingRollup;
+import uk.tw.energy.domain.ReadingRollupsPage;
+import uk.tw.energy.domain.ReadingsQuery;
+import uk.tw.energy.domain.RollupResolution;
+import uk.tw.energy.store.ColumnarMeterReadingStore;
+import uk.tw.energy.store.MeterReadingStore;
+
+/**
+ * Compares the rollups served page by page, kept or folded on demand, with buckets
+ * summed from every reading.
+ */
+class ReadingRollupServiceTest {
+	private static final String SMART_METER_ID = "smart-meter-0";
+	private static final Instant START = Instant.parse("2024-03-04T10:15:30Z");
+
+	@Test
+	void rollupsPageThroughTheBucketsOfTheRange() {
+		List<ElectricityReading> readings = new ArrayList<>();
+		Random random = new Random(1);
+		Instant time = START;
+		for (int i = 0; i < 5000; i++) {
+			time = time.plusSeconds(1 + random.nextInt(90));
+			readings.add(new ElectricityReading(time, BigDecimal.valueOf(random.nextInt(100_000), 4)));
+		}
+		MeterReadingStore meterReadingStore = new ColumnarMeterReadingStore();
+		meterReadingStore.append(SMART_METER_ID, readings);
+		ReadingRollupService readingRollupService = new ReadingRollupService(meterReadingStore);
+		Instant from = START.plusSeconds(3600 * 5 + 17);
+		Instant to = START.plusSeconds(3600 * 40 + 45);
+
+		for (RollupResolution resolution : RollupResolution.values()) {
+			assertEquals(expectedRollups(readings, resolution, from, to),
+					allPages(readingRollupService, resolution, from, to, 7), resolution.name());
+		}
+	}
+
+	@Test
+	void sumsBeyondTheFixedPointRangeStayExact() {
+		List<ElectricityReading> readings = new ArrayList<>();
+		for (int i = 0; i < 30; i++) {
+			// near the largest representable reading, all in the same hour and in a few minutes
+			BigDecimal reading = new BigDecimal(i % 5 == 4 ? "-99999999999999.9999" : "99999999999999.9999");
+			readings.add(new ElectricityReading(START.plusSeconds(10L * i), reading));
+		}
+		MeterReadingStore meterReadingStore = new ColumnarMeterReadingStore();
+		meterReadingStore.append(SMART_METER_ID, readings.subList(0, 2));
+		ReadingRollupService readingRollupService = new ReadingRollupService(meterReadingStore);
+		allPages(readingRollupService, RollupResolution.HOUR, null, null, 10);
+		// folded into the kept rollups as they are stored
+		meterReadingStore.append(SMART_METER_ID, readings.subList(2, readings.size()));
+		MeterReadingStore rebuiltStore = new ColumnarMeterReadingStore();
+		rebuiltStore.append(SMART_METER_ID, readings);
+
+		for (RollupResolution resolution : RollupResolution.values()) {
+			List<ReadingRollup> expected = expectedRollups(readings, resolution, null, null);
+			assertEquals(expected, allPages(readingRollupService, resolution, null, null, 10), resolution.name());
+			assertEquals(expected, allPages(new ReadingRollupService(rebuiltStore), resolution, null, null, 10),
+					resolution.name());
+		}
+	}
+
+	private static List<ReadingRollup> allPages(ReadingRollupService readingRollupService,
+			RollupResolution resolution, Instant from, Instant to, int limit) {
+		List<ReadingRollup> rollups = new ArrayList<>();
+		String cursor = null;
+		do {
+			ReadingRollupsPage page = readingRollupService
+					.getRollups(SMART_METER_ID, resolution, new ReadingsQuery(from, to, limit, cursor)).orElseThrow();
+			rollups.addAll(page.rollups());
+			cursor = page.nextCursor();
+		} while (cursor != null);
+		return rollups;
+	}
+
+	/**
+	 * Buckets starting from the one holding the start of the range and before its
+	 * end, summed reading by reading.
+	 */
+	private static List<ReadingRollup> expectedRollups(List<ElectricityReading> readings, RollupResolution resolution,
+			Instant from, Instant to) {
+		TreeMap<Long, List<BigDecimal>> buckets = new TreeMap<>();
+		for (ElectricityReading reading : readings) {
+			long bucketStart = resolution.bucketStart(reading.time().getEpochSecond());
+			if ((from == null || bucketStart >= resolution.bucketStart(from.getEpochSecond()))
+					&& (to == null || bucketStart < to.getEpochSecond())) {
+				buckets.computeIfAbsent(bucketStart, start -> new ArrayList<>()).add(reading.reading().setScale(4));
+			}
+		}
+		List<ReadingRollup> rollups = new ArrayList<>();
+		buckets.forEach((bucketStart, values) -> rollups.add(new ReadingRollup(Instant.ofEpochSecond(bucketStart),
+				values.stream().reduce(BigDecimal.ZERO.setScale(4), BigDecimal::add), values.size(),
+				values.stream().min(BigDecimal::compareTo).orElseThrow(),
+				values.stream().max(BigDecimal::compareTo).orElseThrow())));
+		return rollups;
+	}
+}
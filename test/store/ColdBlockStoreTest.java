@@ -0,0 +1,99 @@
+package uk.tw.energy.store;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import uk.tw.energy.domain.ElectricityReading;
+
+class ColdBlockStoreTest {
+	private static final String SMART_METER_ID = "smart-meter-0";
+	private static final Instant START = Instant.parse("2024-03-04T10:15:30Z");
+	private static final int BLOCKS = 20;
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void sealedBlocksOfAllMetersShareTheHeapBudget() throws IOException {
+		long heapBudgetBytes = 16 * 1024;
+		try (ColdBlockStore coldBlockStore = ColdBlockStore.open(directory, heapBudgetBytes)) {
+			ColumnarMeterReadingStore store = new ColumnarMeterReadingStore(4, coldBlockStore);
+			List<List<ElectricityReading>> readingsPerMeter = new ArrayList<>();
+			for (int meter = 0; meter < 8; meter++) {
+				List<ElectricityReading> readings = readings(BLOCKS * MeterReadingColumns.BLOCK_SIZE, meter);
+				store.append("smart-meter-" + meter, readings);
+				readingsPerMeter.add(readings);
+				assertTrue(coldBlockStore.cachedBytes() <= heapBudgetBytes);
+			}
+
+			for (int meter = 0; meter < 8; meter++) {
+				assertEquals(readingsPerMeter.get(meter),
+						store.getSeries("smart-meter-" + meter).orElseThrow().asElectricityReadings());
+				assertTrue(coldBlockStore.cachedBytes() <= heapBudgetBytes);
+			}
+			assertTrue(coldBlockStore.cacheMisses() > 0);
+		}
+	}
+
+	@Test
+	void spillFileSpaceOfUnsealedBlocksIsReused() throws IOException {
+		try (ColdBlockStore coldBlockStore = ColdBlockStore.open(directory, 0)) {
+			ColumnarMeterReadingStore store = new ColumnarMeterReadingStore(4, coldBlockStore);
+			List<ElectricityReading> readings = readings(BLOCKS * MeterReadingColumns.BLOCK_SIZE, 0);
+			store.append(SMART_METER_ID, readings);
+			long spilledBytes = coldBlockStore.spilledBytes();
+			MeterReadingSeries before = store.getSeries(SMART_METER_ID).orElseThrow();
+
+			List<ElectricityReading> stored = new ArrayList<>(readings);
+			for (int i = 0; i < 50; i++) {
+				// one reading in the middle of the first block, unsealing every block
+				ElectricityReading late = new ElectricityReading(START.plusSeconds(10L * i + 5), BigDecimal.ONE);
+				store.append(SMART_METER_ID, List.of(late));
+				stored.add(2 * i + 1, late);
+			}
+
+			assertEquals(stored, store.getSeries(SMART_METER_ID).orElseThrow().asElectricityReadings());
+			assertEquals(readings, before.asElectricityReadings());
+			assertTrue(coldBlockStore.spilledBytes() <= 2 * spilledBytes,
+					String.format("Spill file grew from %d to %d bytes", spilledBytes, coldBlockStore.spilledBytes()));
+		}
+	}
+
+	@Test
+	void anInterruptedReaderLeavesTheSpillFileUsable() throws IOException {
+		try (ColdBlockStore coldBlockStore = ColdBlockStore.open(directory, 0)) {
+			ColumnarMeterReadingStore store = new ColumnarMeterReadingStore(4, coldBlockStore);
+			List<ElectricityReading> readings = readings(BLOCKS * MeterReadingColumns.BLOCK_SIZE, 0);
+			store.append(SMART_METER_ID, readings);
+
+			Thread.currentThread().interrupt();
+			List<ElectricityReading> readWhileInterrupted;
+			try {
+				readWhileInterrupted = List.copyOf(store.getSeries(SMART_METER_ID).orElseThrow().asElectricityReadings());
+			} finally {
+				assertTrue(Thread.interrupted(), "interrupt was not kept");
+			}
+
+			assertEquals(readings, readWhileInterrupted);
+			assertEquals(readings, store.getSeries(SMART_METER_ID).orElseThrow().asElectricityReadings());
+		}
+	}
+
+	private static List<ElectricityReading> readings(int count, int meter) {
+		List<ElectricityReading> readings = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			readings.add(new ElectricityReading(START.plusSeconds(10L * i), BigDecimal.valueOf((i * 7919L + meter) % 100_000, 4)));
+		}
+		return readings;
+	}
+}
@@ -0,0 +1,98 @@
+package uk.tw.energy.store;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import uk.tw.energy.domain.ElectricityReading;
+
+class ColumnarMeterReadingStoreTest {
+	private static final String SMART_METER_ID = "smart-meter-0";
+	private static final Instant START = Instant.parse("2024-03-04T10:15:30Z");
+	private static final int READINGS = 20 * MeterReadingColumns.BLOCK_SIZE;
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void lateReadingsAreMergedIntoSealedBlocksInTimeOrder() {
+		ColumnarMeterReadingStore store = new ColumnarMeterReadingStore();
+		List<ElectricityReading> stored = new ArrayList<>();
+
+		appendInOrderThenLate(store, stored, new Random(42));
+
+		assertEquals(sortedByTime(stored), store.getSeries(SMART_METER_ID).orElseThrow().asElectricityReadings());
+	}
+
+	@Test
+	void lateReadingsAreMergedIntoARestoredSeriesInTimeOrder() throws IOException {
+		Random random = new Random(7);
+		ColumnarMeterReadingStore store = new ColumnarMeterReadingStore();
+		List<ElectricityReading> stored = new ArrayList<>();
+		appendInOrderThenLate(store, stored, random);
+		Path file = directory.resolve("readings.snapshot");
+		MeterReadingSnapshot.write(file, 0, store.getAllSeries());
+
+		try (MeterReadingSnapshot snapshot = MeterReadingSnapshot.open(file)) {
+			ColumnarMeterReadingStore restored = new ColumnarMeterReadingStore(snapshot, ColdBlockStore.NONE);
+			for (int i = 0; i < 50; i++) {
+				List<ElectricityReading> late = List.of(reading(random.nextInt(READINGS), random));
+				restored.append(SMART_METER_ID, late);
+				stored.addAll(late);
+			}
+
+			assertEquals(sortedByTime(stored),
+					restored.getSeries(SMART_METER_ID).orElseThrow().asElectricityReadings());
+		}
+	}
+
+	/**
+	 * Appends readings in time order in uploads of up to 100, every tenth upload followed
+	 * by a late upload of a few readings at random earlier times, some at the time of a
+	 * stored reading.
+	 */
+	private static void appendInOrderThenLate(ColumnarMeterReadingStore store, List<ElectricityReading> stored,
+			Random random) {
+		int appended = 0;
+		for (int upload = 0; appended < READINGS; upload++) {
+			List<ElectricityReading> readings = new ArrayList<>();
+			for (int end = Math.min(READINGS, appended + 1 + random.nextInt(100)); appended < end; appended++) {
+				readings.add(reading(appended, random));
+			}
+			store.append(SMART_METER_ID, readings);
+			stored.addAll(readings);
+			if (upload % 10 == 9) {
+				List<ElectricityReading> late = new ArrayList<>();
+				for (int i = random.nextInt(4); i >= 0; i--) {
+					late.add(reading(random.nextInt(appended), random));
+				}
+				store.append(SMART_METER_ID, late);
+				stored.addAll(late);
+			}
+		}
+	}
+
+	private static ElectricityReading reading(int slot, Random random) {
+		// every other reading on the second, the rest within it
+		int nano = random.nextBoolean() ? 0 : random.nextInt(1_000_000_000);
+		return new ElectricityReading(START.plusSeconds(10L * slot).plusNanos(nano),
+				BigDecimal.valueOf(random.nextInt(100_000), random.nextInt(5)));
+	}
+
+	// readings at the same time stay in the order they were stored in
+	private static List<ElectricityReading> sortedByTime(List<ElectricityReading> stored) {
+		List<ElectricityReading> sorted = new ArrayList<>(stored);
+		sorted.sort(Comparator.comparing(ElectricityReading::time));
+		return sorted;
+	}
+}
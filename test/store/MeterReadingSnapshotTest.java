@@ -0,0 +1,144 @@
+package uk.tw.energy.store;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import uk.tw.energy.domain.ElectricityReading;
+
+class MeterReadingSnapshotTest {
+	private static final String SMART_METER_ID = "smart-meter-0";
+	private static final Instant START = Instant.parse("2024-03-04T10:15:30Z");
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void restoredReadingsKeepTheirScaleAndSubSecondTime() throws IOException {
+		List<ElectricityReading> readings = new ArrayList<>();
+		for (int i = 0; i < 1500; i++) {
+			readings.add(new ElectricityReading(START.plusMillis(250L * i), BigDecimal.valueOf(i, i % 5)));
+		}
+		ColumnarMeterReadingStore store = new ColumnarMeterReadingStore();
+		store.append(SMART_METER_ID, readings);
+		Path file = directory.resolve("readings.snapshot");
+
+		MeterReadingSnapshot.write(file, 42, store.getAllSeries());
+
+		try (MeterReadingSnapshot snapshot = MeterReadingSnapshot.open(file)) {
+			assertEquals(42, snapshot.logPosition());
+			assertEquals(readings, snapshot.series().get(SMART_METER_ID).asElectricityReadings());
+		}
+	}
+
+	@Test
+	void readingsAppendedToARestoredSeriesAreMergedInTimeOrder() throws IOException {
+		List<ElectricityReading> readings = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			readings.add(new ElectricityReading(START.plusMillis(500L * i), BigDecimal.valueOf(i, 2)));
+		}
+		ColumnarMeterReadingStore store = new ColumnarMeterReadingStore();
+		store.append(SMART_METER_ID, readings.subList(50, 100));
+		Path file = directory.resolve("readings.snapshot");
+		MeterReadingSnapshot.write(file, 0, store.getAllSeries());
+
+		try (MeterReadingSnapshot snapshot = MeterReadingSnapshot.open(file)) {
+			ColumnarMeterReadingStore restored = new ColumnarMeterReadingStore(snapshot, ColdBlockStore.NONE);
+			restored.append(SMART_METER_ID, readings.subList(0, 50));
+
+			assertEquals(readings, restored.getSeries(SMART_METER_ID).orElseThrow().asElectricityReadings());
+		}
+	}
+
+	@Test
+	void everyMeterIsRestoredFromItsSliceOfTheFile() throws IOException {
+		ColumnarMeterReadingStore store = new ColumnarMeterReadingStore();
+		Map<String, List<ElectricityReading>> readingsPerMeter = new LinkedHashMap<>();
+		for (int meter = 0; meter < 200; meter++) {
+			List<ElectricityReading> readings = new ArrayList<>();
+			for (int i = 0; i < meter % 13 * 7; i++) {
+				readings.add(new ElectricityReading(START.plusSeconds(10L * i), BigDecimal.valueOf(i + meter, i % 3)));
+			}
+			String smartMeterId = "smart-meter-" + meter;
+			if (!readings.isEmpty()) {
+				store.append(smartMeterId, readings);
+				readingsPerMeter.put(smartMeterId, readings);
+			}
+		}
+		Path file = directory.resolve("readings.snapshot");
+		MeterReadingSnapshot.write(file, 7, store.getAllSeries());
+
+		try (MeterReadingSnapshot snapshot = MeterReadingSnapshot.open(file)) {
+			assertEquals(readingsPerMeter.keySet(), snapshot.series().keySet());
+			readingsPerMeter.forEach((smartMeterId, readings) -> assertEquals(readings,
+					snapshot.series().get(smartMeterId).asElectricityReadings(), smartMeterId));
+		}
+	}
+
+	@Test
+	void aMeterWithADamagedReadingFailsWhenRead() throws IOException {
+		Path file = writeSnapshotOfTwoMeters();
+		// in the columns of the first meter in the file, which directly follow the index
+		damage(file, Files.size(file) / 4);
+
+		try (MeterReadingSnapshot snapshot = MeterReadingSnapshot.open(file)) {
+			List<String> failed = new ArrayList<>();
+			for (Map.Entry<String, MeterReadingSeries> meter : snapshot.series().entrySet()) {
+				try {
+					assertEquals(100, List.copyOf(meter.getValue().asElectricityReadings()).size());
+				} catch (UncheckedIOException e) {
+					failed.add(meter.getKey());
+				}
+			}
+			assertEquals(List.of(snapshot.series().keySet().iterator().next()), failed);
+		}
+	}
+
+	@Test
+	void aSnapshotWithADamagedIndexIsRejected() throws IOException {
+		Path file = writeSnapshotOfTwoMeters();
+		// the first meter id, right after the header
+		damage(file, 30);
+
+		assertThrows(IOException.class, () -> MeterReadingSnapshot.open(file));
+	}
+
+	private Path writeSnapshotOfTwoMeters() throws IOException {
+		ColumnarMeterReadingStore store = new ColumnarMeterReadingStore();
+		for (String smartMeterId : List.of(SMART_METER_ID, "smart-meter-1")) {
+			List<ElectricityReading> readings = new ArrayList<>();
+			for (int i = 0; i < 100; i++) {
+				readings.add(new ElectricityReading(START.plusSeconds(10L * i), BigDecimal.valueOf(i, 2)));
+			}
+			store.append(smartMeterId, readings);
+		}
+		Path file = directory.resolve("readings.snapshot");
+		MeterReadingSnapshot.write(file, 0, store.getAllSeries());
+		return file;
+	}
+
+	private static void damage(Path file, long offset) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			ByteBuffer damaged = ByteBuffer.allocate(1);
+			channel.read(damaged, offset);
+			damaged.put(0, (byte) (damaged.get(0) ^ 1));
+			channel.write(damaged.rewind(), offset);
+		}
+	}
+}
@@ -0,0 +1,116 @@
+package uk.tw.energy.wal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import uk.tw.energy.domain.ElectricityReading;
+import uk.tw.energy.store.ColumnarMeterReadingStore;
+import uk.tw.energy.store.FixedPointReadings;
+import uk.tw.energy.store.MeterReadingStore;
+
+class WriteAheadLogTest {
+	private static final String SMART_METER_ID = "smart-meter-0";
+	private static final Instant START = Instant.parse("2024-03-04T10:15:30Z");
+	private static final long SEGMENT_SIZE_BYTES = 1 << 20;
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void replayedReadingsKeepTheirScaleAndSubSecondTime() throws Exception {
+		List<ElectricityReading> readings = List.of(
+				new ElectricityReading(START.plusMillis(250), new BigDecimal("0.05")),
+				new ElectricityReading(START.plusSeconds(1), new BigDecimal("1.2000")),
+				new ElectricityReading(START.plusNanos(1_999_999_999), new BigDecimal("3")));
+		try (WriteAheadLog log = open(new ColumnarMeterReadingStore())) {
+			log.append(FixedPointReadings.toBatch(SMART_METER_ID, readings));
+		}
+
+		MeterReadingStore recovered = new ColumnarMeterReadingStore();
+		try (WriteAheadLog log = open(recovered)) {
+			assertEquals(readings, recovered.getSeries(SMART_METER_ID).orElseThrow().asElectricityReadings());
+		}
+	}
+
+	@Test
+	void anInterruptedAppendIsLoggedAndKeepsItsInterrupt() throws Exception {
+		List<ElectricityReading> readings = readings(20);
+		try (WriteAheadLog log = open(new ColumnarMeterReadingStore())) {
+			for (int i = 0; i < readings.size(); i++) {
+				if (i % 2 == 0) {
+					Thread.currentThread().interrupt();
+				}
+				log.append(FixedPointReadings.toBatch(SMART_METER_ID, readings.subList(i, i + 1)));
+				assertEquals(i % 2 == 0, Thread.interrupted());
+			}
+		}
+
+		MeterReadingStore recovered = new ColumnarMeterReadingStore();
+		try (WriteAheadLog log = open(recovered)) {
+			assertEquals(readings, recovered.getSeries(SMART_METER_ID).orElseThrow().asElectricityReadings());
+		}
+	}
+
+	@Test
+	void interruptingAppendingThreadsLosesNoUploads() throws Exception {
+		int writerCount = 4;
+		List<ElectricityReading> readings = readings(200);
+		Queue<Throwable> failures = new ConcurrentLinkedQueue<>();
+		try (WriteAheadLog log = WriteAheadLog.open(directory, DurabilityMode.SYNC, 10, 4096,
+				new ColumnarMeterReadingStore(), 0)) {
+			List<Thread> writers = new ArrayList<>();
+			for (int writer = 0; writer < writerCount; writer++) {
+				String smartMeterId = "smart-meter-" + writer;
+				Thread thread = new Thread(() -> {
+					try {
+						for (int i = 0; i < readings.size(); i++) {
+							log.append(FixedPointReadings.toBatch(smartMeterId, readings.subList(i, i + 1)));
+							Thread.interrupted();
+						}
+					} catch (Throwable e) {
+						failures.add(e);
+					}
+				});
+				thread.start();
+				writers.add(thread);
+			}
+			while (writers.stream().anyMatch(Thread::isAlive)) {
+				writers.get(ThreadLocalRandom.current().nextInt(writerCount)).interrupt();
+				Thread.sleep(0, 100_000);
+			}
+		}
+		assertEquals(List.of(), List.copyOf(failures));
+
+		MeterReadingStore recovered = new ColumnarMeterReadingStore();
+		try (WriteAheadLog log = WriteAheadLog.open(directory, DurabilityMode.SYNC, 10, 4096, recovered, 0)) {
+			for (int writer = 0; writer < writerCount; writer++) {
+				assertEquals(readings,
+						recovered.getSeries("smart-meter-" + writer).orElseThrow().asElectricityReadings());
+			}
+		}
+	}
+
+	private static List<ElectricityReading> readings(int count) {
+		List<ElectricityReading> readings = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			readings.add(new ElectricityReading(START.plusSeconds(10L * i), BigDecimal.valueOf(i, 2)));
+		}
+		return readings;
+	}
+
+	private WriteAheadLog open(MeterReadingStore store) throws IOException {
+		return WriteAheadLog.open(directory, DurabilityMode.SYNC, 10, SEGMENT_SIZE_BYTES, store, 0);
+	}
+}
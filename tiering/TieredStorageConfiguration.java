@@ -0,0 +1,30 @@
+package uk.tw.energy.tiering;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import uk.tw.energy.store.ColdBlockStore;
+
+/**
+ * Creates the cold tier of the reading store. Tiering is off unless
+ * {@code energy.store.tiering.enabled} is set: the sealed blocks of all meters then
+ * share {@code heap-budget-bytes} of heap, the least recently used beyond it are
+ * spilled to disk until read again.
+ */
+@Configuration
+public class TieredStorageConfiguration {
+
+	@Bean
+	public ColdBlockStore coldBlockStore(@Value("${energy.store.tiering.enabled:false}") boolean enabled,
+			@Value("${energy.store.tiering.directory:data/cold}") String directory,
+			@Value("${energy.store.tiering.heap-budget-bytes:268435456}") long heapBudgetBytes) throws IOException {
+		if (!enabled) {
+			return ColdBlockStore.NONE;
+		}
+		return ColdBlockStore.open(Path.of(directory), heapBudgetBytes);
+	}
+}
@@ -0,0 +1,50 @@
+package uk.tw.energy.tiering;
+
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import uk.tw.energy.store.ColdBlockStore;
+
+/**
+ * Publishes the cold tier's cache hit, miss and eviction counts and its heap and
+ * disk usage, to tune the heap budget against.
+ */
+@Component
+public class TieredStorageMetrics implements MeterBinder {
+
+	private final ColdBlockStore coldBlockStore;
+
+	public TieredStorageMetrics(ColdBlockStore coldBlockStore) {
+		this.coldBlockStore = coldBlockStore;
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		FunctionCounter.builder("energy.store.cold.cache.requests", coldBlockStore, ColdBlockStore::cacheHits)
+				.tag("result", "hit")
+				.description("Reads of sealed reading blocks served from the heap")
+				.register(registry);
+		FunctionCounter.builder("energy.store.cold.cache.requests", coldBlockStore, ColdBlockStore::cacheMisses)
+				.tag("result", "miss")
+				.description("Reads of sealed reading blocks that went to disk")
+				.register(registry);
+		FunctionCounter.builder("energy.store.cold.cache.evictions", coldBlockStore, ColdBlockStore::cacheEvictions)
+				.description("Sealed reading blocks dropped from the heap to stay within its budget")
+				.register(registry);
+		Gauge.builder("energy.store.cold.cache.size", coldBlockStore, ColdBlockStore::cachedBytes)
+				.baseUnit("bytes")
+				.description("Heap taken by sealed reading blocks")
+				.register(registry);
+		Gauge.builder("energy.store.cold.spilled", coldBlockStore, ColdBlockStore::spilledBytes)
+				.baseUnit("bytes")
+				.description("Size of the spill file of reading blocks")
+				.register(registry);
+		Gauge.builder("energy.store.cold.spilled.reusable", coldBlockStore, ColdBlockStore::reusableSpilledBytes)
+				.baseUnit("bytes")
+				.description("Spill file space freed by unsealed reading blocks, reused for later blocks")
+				.register(registry);
+	}
+}
@@ -0,0 +1,14 @@
+package uk.tw.energy.wal;
+
+/**
+ * When a stored reading is considered durable, selected with the
+ * {@code energy.wal.durability} property.
+ */
+public enum DurabilityMode {
+	/** Each upload waits for a sync. Uploads arriving during a sync share the next one. */
+	SYNC,
+	/** Logs are synced every group commit interval, uploads wait for the next sync. */
+	GROUP_COMMIT,
+	/** Logs are synced every group commit interval, uploads do not wait. */
+	ASYNC
+}
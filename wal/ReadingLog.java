@@ -0,0 +1,44 @@
+package uk.tw.energy.wal;
+
+import uk.tw.energy.domain.MeterReadingsBatch;
+
+/**
+ * Durable record of stored readings, written before the readings are applied to the
+ * in-memory store.
+ */
+public interface ReadingLog extends AutoCloseable {
+
+	/**
+	 * Log used when durability is switched off - readings only live in memory.
+	 */
+	ReadingLog NONE = batch -> {
+	};
+
+	/**
+	 * Appends readings to the log. Returns once the readings are as durable as the
+	 * log's configuration promises.
+	 * 
+	 * @param batch - readings of one meter
+	 */
+	void append(MeterReadingsBatch batch);
+
+	/**
+	 * @return position after the last appended readings, increasing with every append
+	 */
+	default long position() {
+		return 0;
+	}
+
+	/**
+	 * Allows the log to drop readings before a position, once they are held
+	 * elsewhere - e.g. in a snapshot file.
+	 * 
+	 * @param position - position returned by {@link #position()}
+	 */
+	default void discardBefore(long position) {
+	}
+
+	@Override
+	default void close() {
+	}
+}
@@ -0,0 +1,531 @@
+package uk.tw.energy.wal;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import uk.tw.energy.domain.MeterReadingsBatch;
+import uk.tw.energy.store.MeterReadingStore;
+
+/**
+ * Append-only log of stored readings, split into numbered segment files.
+ * <p>
+ * Every upload is framed as one record - payload length, CRC32C of the payload,
+ * meter id and the reading columns - epoch seconds, fixed-point readings, nanos
+ * and scales - and written at the end of the active segment.
+ * Syncing the segment to disk is decoupled from writing it: positions up to which
+ * the log is durable are tracked, and a single {@link FileChannel#force(boolean)}
+ * covers every record written before it started. With {@link DurabilityMode#SYNC}
+ * the first waiting upload runs the sync while uploads arriving meanwhile queue
+ * for the next one, the other modes sync on a fixed interval.
+ * <p>
+ * Log positions combine the segment number, in the upper 32 bits, with the offset
+ * in the segment, so they stay valid when old segments are deleted.
+ * <p>
+ * Interrupting a thread that uses a {@link FileChannel} closes the channel. An
+ * appending thread's interrupt is held back until its append returns, and a segment
+ * closed by an interrupt that arrives during a write or sync is reopened - dropping
+ * the part of a record written before it - and the write or sync repeated, so one
+ * interrupted upload neither fails nor breaks the log for the others.
+ * <p>
+ * On startup the segments are replayed in order, starting from the position a
+ * restored snapshot covers. A torn record at the end of the last segment - a write
+ * interrupted by a crash - is truncated, a damaged record anywhere else fails the
+ * recovery.
+ */
+public class WriteAheadLog implements ReadingLog {
+	private static final Logger LOGGER = LoggerFactory.getLogger(WriteAheadLog.class);
+	private static final Pattern SEGMENT_NAME = Pattern.compile("readings-(\\d{20})\\.wal");
+	private static final int RECORD_HEADER_BYTES = 2 * Integer.BYTES;
+	// epoch second, reading, nanos and scale
+	private static final int READING_BYTES = 2 * Long.BYTES + Integer.BYTES + Byte.BYTES;
+	private static final long SEGMENT_OFFSET_MASK = 0xFFFFFFFFL;
+
+	private final Path directory;
+	private final DurabilityMode durabilityMode;
+	private final long segmentSizeBytes;
+	private final ScheduledExecutorService syncScheduler;
+
+	// guards the active segment and the written position
+	private final ReentrantLock writeLock = new ReentrantLock();
+	private FileChannel segment;
+	private long segmentNumber;
+	private long writtenPosition;
+	private boolean closed;
+
+	// guards the durable position
+	private final ReentrantLock syncLock = new ReentrantLock();
+	private final Condition synced = syncLock.newCondition();
+	private long syncedPosition;
+	private boolean syncInProgress;
+	private IOException syncFailure;
+
+	private WriteAheadLog(Path directory, DurabilityMode durabilityMode, long groupCommitIntervalMillis,
+			long segmentSizeBytes, long segmentNumber, long position) throws IOException {
+		this.directory = directory;
+		this.durabilityMode = durabilityMode;
+		this.segmentSizeBytes = segmentSizeBytes;
+		this.segmentNumber = segmentNumber;
+		this.segment = openSegment(segmentPath(directory, segmentNumber));
+		this.writtenPosition = position;
+		this.syncedPosition = position;
+		if (durabilityMode == DurabilityMode.SYNC) {
+			this.syncScheduler = null;
+		} else {
+			this.syncScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "wal-group-commit");
+				thread.setDaemon(true);
+				return thread;
+			});
+			syncScheduler.scheduleWithFixedDelay(this::scheduledSync, groupCommitIntervalMillis,
+					groupCommitIntervalMillis, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Opens the log in a directory, replaying the readings logged from a position
+	 * on into a store before new records are accepted.
+	 *
+	 * @param directory                 - directory of the segment files, created if missing
+	 * @param durabilityMode            - when appends are acknowledged
+	 * @param groupCommitIntervalMillis - interval between syncs unless the mode is
+	 *                                  {@link DurabilityMode#SYNC}
+	 * @param segmentSizeBytes          - size after which a new segment is started
+	 * @param store                     - store the logged readings are replayed into
+	 * @param replayFrom                - position of the first record to replay, records
+	 *                                  before it are already in the store
+	 * @return the opened log
+	 * @throws IOException - if the segments cannot be read or a record other than
+	 *                     the last one is damaged
+	 */
+	public static WriteAheadLog open(Path directory, DurabilityMode durabilityMode, long groupCommitIntervalMillis,
+			long segmentSizeBytes, MeterReadingStore store, long replayFrom) throws IOException {
+		if (groupCommitIntervalMillis <= 0 || segmentSizeBytes <= 0 || segmentSizeBytes > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Group commit interval and segment size must be positive, "
+					+ "segments are limited to 2 GiB");
+		}
+		Files.createDirectories(directory);
+		List<Long> segmentNumbers = listSegments(directory);
+		long replayFromSegment = replayFrom >>> 32;
+		long recovered = 0;
+		for (int i = 0; i < segmentNumbers.size(); i++) {
+			long segmentNumber = segmentNumbers.get(i);
+			if (segmentNumber >= replayFromSegment) {
+				long skipBytes = segmentNumber == replayFromSegment ? replayFrom & SEGMENT_OFFSET_MASK : 0;
+				recovered += replay(segmentPath(directory, segmentNumber), store, skipBytes,
+						i == segmentNumbers.size() - 1);
+			}
+		}
+		LOGGER.info("Recovered {} logged uploads from segment {} offset {} on in {}", recovered, replayFromSegment,
+				replayFrom & SEGMENT_OFFSET_MASK, directory);
+
+		// new records go to a fresh segment, past any position a snapshot may cover even
+		// if the log lost its unsynced tail
+		long activeSegment = Math.max(replayFromSegment,
+				segmentNumbers.isEmpty() ? 0 : segmentNumbers.get(segmentNumbers.size() - 1)) + 1;
+		return new WriteAheadLog(directory, durabilityMode, groupCommitIntervalMillis, segmentSizeBytes, activeSegment,
+				activeSegment << 32);
+	}
+
+	/**
+	 * Writes the readings as one record and waits as long as the durability mode
+	 * requires.
+	 *
+	 * @param batch - readings of one meter
+	 * @throws UncheckedIOException - if the record cannot be written or synced
+	 */
+	@Override
+	public void append(MeterReadingsBatch batch) {
+		ByteBuffer record = encode(batch);
+		boolean interrupted = Thread.interrupted();
+		try {
+			long recordEnd;
+			writeLock.lock();
+			try {
+				long segmentOffset = writtenPosition & SEGMENT_OFFSET_MASK;
+				if (segmentOffset > 0 && segmentOffset + record.remaining() > segmentSizeBytes) {
+					rollSegment();
+				}
+				long recordStart = writtenPosition;
+				while (record.hasRemaining()) {
+					try {
+						writtenPosition += segment.write(record);
+					} catch (ClosedChannelException e) {
+						// the channel was closed by an interrupt, possibly in the middle of the record
+						interrupted |= Thread.interrupted();
+						writtenPosition = recordStart;
+						interrupted |= reopenSegment(e);
+						record.rewind();
+					}
+				}
+				recordEnd = writtenPosition;
+			} catch (IOException e) {
+				throw new UncheckedIOException("Failed to write readings to the log", e);
+			} finally {
+				writeLock.unlock();
+			}
+			if (durabilityMode != DurabilityMode.ASYNC) {
+				awaitSynced(recordEnd);
+			}
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	@Override
+	public long position() {
+		writeLock.lock();
+		try {
+			return writtenPosition;
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	/**
+	 * Deletes the segments that only hold records before a position.
+	 *
+	 * @param position - position returned by {@link #position()}
+	 * @throws UncheckedIOException - if a segment cannot be deleted
+	 */
+	@Override
+	public void discardBefore(long position) {
+		writeLock.lock();
+		try {
+			for (long discarded : listSegments(directory)) {
+				if (discarded < position >>> 32 && discarded != segmentNumber) {
+					Files.delete(segmentPath(directory, discarded));
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("Failed to delete log segments", e);
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	/**
+	 * Syncs everything written so far and closes the active segment.
+	 */
+	@Override
+	public void close() {
+		if (syncScheduler != null) {
+			syncScheduler.shutdown();
+		}
+		writeLock.lock();
+		try {
+			forceSegment();
+			closed = true;
+			segment.close();
+			markSynced(writtenPosition);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Failed to close the log", e);
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	private void awaitSynced(long position) {
+		syncLock.lock();
+		try {
+			while (syncedPosition < position) {
+				if (syncFailure != null) {
+					throw new UncheckedIOException("Failed to sync the log", syncFailure);
+				}
+				if (durabilityMode == DurabilityMode.SYNC && !syncInProgress) {
+					runSync();
+				} else {
+					synced.awaitUninterruptibly();
+				}
+			}
+		} finally {
+			syncLock.unlock();
+		}
+	}
+
+	private void scheduledSync() {
+		syncLock.lock();
+		try {
+			if (!syncInProgress) {
+				runSync();
+			}
+		} finally {
+			syncLock.unlock();
+		}
+	}
+
+	/**
+	 * Forces the active segment with {@link #syncLock} released, so appends can
+	 * write - and start waiting for the next sync - while this one runs. Must be
+	 * called holding {@link #syncLock} with no sync in progress.
+	 */
+	private void runSync() {
+		syncInProgress = true;
+		syncLock.unlock();
+		long target;
+		IOException failure = null;
+		boolean interrupted = false;
+		try {
+			FileChannel channel;
+			writeLock.lock();
+			try {
+				channel = segment;
+				target = writtenPosition;
+			} finally {
+				writeLock.unlock();
+			}
+			try {
+				while (channel != null) {
+					try {
+						channel.force(false);
+						channel = null;
+					} catch (ClosedChannelException e) {
+						interrupted |= Thread.interrupted();
+						writeLock.lock();
+						try {
+							if (closed || target >>> 32 != segmentNumber) {
+								// closing the log or rolling the segment synced it completely
+								channel = null;
+							} else {
+								if (segment == channel) {
+									interrupted |= reopenSegment(e);
+								}
+								channel = segment;
+							}
+						} finally {
+							writeLock.unlock();
+						}
+					}
+				}
+			} catch (IOException e) {
+				failure = e;
+			}
+		} finally {
+			syncLock.lock();
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		if (failure == null) {
+			syncedPosition = Math.max(syncedPosition, target);
+		} else {
+			LOGGER.error("Failed to sync the log", failure);
+			syncFailure = failure;
+		}
+		syncInProgress = false;
+		synced.signalAll();
+	}
+
+	/**
+	 * Replaces the active segment's channel after an interrupt closed it, dropping
+	 * anything written past the written position. Must be called holding
+	 * {@link #writeLock}.
+	 *
+	 * @param cause - exception of the operation that found the channel closed,
+	 *              rethrown if the log itself was closed
+	 * @return whether the calling thread was interrupted meanwhile, its interrupt is
+	 *         cleared so the channel can be used
+	 */
+	private boolean reopenSegment(ClosedChannelException cause) throws IOException {
+		if (closed) {
+			throw cause;
+		}
+		boolean interrupted = false;
+		while (!segment.isOpen()) {
+			LOGGER.warn("Reopening log segment {} closed by an interrupt", segmentNumber);
+			interrupted |= Thread.interrupted();
+			FileChannel reopened = FileChannel.open(segmentPath(directory, segmentNumber), StandardOpenOption.WRITE);
+			try {
+				reopened.truncate(writtenPosition & SEGMENT_OFFSET_MASK);
+				reopened.position(writtenPosition & SEGMENT_OFFSET_MASK);
+				segment = reopened;
+			} catch (ClosedChannelException e) {
+				// interrupted again, the loop reopens it once more
+			}
+		}
+		return interrupted;
+	}
+
+	/**
+	 * Forces the active segment, reopening it if an interrupt closes it. Must be
+	 * called holding {@link #writeLock}.
+	 */
+	private void forceSegment() throws IOException {
+		boolean interrupted = false;
+		try {
+			while (true) {
+				try {
+					segment.force(false);
+					return;
+				} catch (ClosedChannelException e) {
+					interrupted |= Thread.interrupted();
+					interrupted |= reopenSegment(e);
+				}
+			}
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private void rollSegment() throws IOException {
+		forceSegment();
+		segment.close();
+		markSynced(writtenPosition);
+		segmentNumber++;
+		segment = openSegment(segmentPath(directory, segmentNumber));
+		writtenPosition = segmentNumber << 32;
+	}
+
+	private void markSynced(long position) {
+		syncLock.lock();
+		try {
+			syncedPosition = Math.max(syncedPosition, position);
+			synced.signalAll();
+		} finally {
+			syncLock.unlock();
+		}
+	}
+
+	private static ByteBuffer encode(MeterReadingsBatch batch) {
+		byte[] smartMeterId = batch.smartMeterId().getBytes(StandardCharsets.UTF_8);
+		int count = batch.size();
+		int payloadBytes = Short.BYTES + smartMeterId.length + Integer.BYTES + count * READING_BYTES;
+		ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_BYTES + payloadBytes);
+		record.putInt(payloadBytes).putInt(0);
+		record.putShort((short) smartMeterId.length).put(smartMeterId).putInt(count);
+		for (int i = 0; i < count; i++) {
+			record.putLong(batch.epochSeconds()[i]);
+		}
+		for (int i = 0; i < count; i++) {
+			record.putLong(batch.readings()[i]);
+		}
+		for (int i = 0; i < count; i++) {
+			record.putInt(batch.nanos()[i]);
+		}
+		record.put(batch.scales(), 0, count);
+		CRC32C crc = new CRC32C();
+		crc.update(record.array(), RECORD_HEADER_BYTES, payloadBytes);
+		record.putInt(Integer.BYTES, (int) crc.getValue());
+		return record.flip();
+	}
+
+	/**
+	 * Decodes a record payload, returning null if it is damaged.
+	 */
+	private static MeterReadingsBatch decode(ByteBuffer payload, int checksum) {
+		CRC32C crc = new CRC32C();
+		crc.update(payload.duplicate());
+		if ((int) crc.getValue() != checksum || payload.remaining() < Short.BYTES) {
+			return null;
+		}
+		int idLength = Short.toUnsignedInt(payload.getShort());
+		if (payload.remaining() < idLength + Integer.BYTES) {
+			return null;
+		}
+		byte[] smartMeterId = new byte[idLength];
+		payload.get(smartMeterId);
+		int count = payload.getInt();
+		if (count < 0 || payload.remaining() != (long) count * READING_BYTES) {
+			return null;
+		}
+		long[] epochSeconds = new long[count];
+		int[] nanos = new int[count];
+		long[] readings = new long[count];
+		byte[] scales = new byte[count];
+		payload.asLongBuffer().get(epochSeconds).get(readings);
+		payload.position(payload.position() + count * 2 * Long.BYTES);
+		payload.asIntBuffer().get(nanos);
+		payload.position(payload.position() + count * Integer.BYTES);
+		payload.get(scales);
+		return new MeterReadingsBatch(new String(smartMeterId, StandardCharsets.UTF_8), epochSeconds, nanos, readings,
+				scales);
+	}
+
+	private static long replay(Path segmentPath, MeterReadingStore store, long skipBytes, boolean last)
+			throws IOException {
+		try (FileChannel channel = FileChannel.open(segmentPath, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			ByteBuffer contents = ByteBuffer.allocate(Math.toIntExact(channel.size()));
+			while (contents.hasRemaining() && channel.read(contents) >= 0) {
+			}
+			contents.flip();
+			contents.position((int) Math.min(skipBytes, contents.limit()));
+			long records = 0;
+			while (contents.remaining() >= RECORD_HEADER_BYTES) {
+				int recordStart = contents.position();
+				int payloadBytes = contents.getInt();
+				int checksum = contents.getInt();
+				MeterReadingsBatch batch = null;
+				if (payloadBytes >= 0 && payloadBytes <= contents.remaining()) {
+					batch = decode(contents.slice(contents.position(), payloadBytes), checksum);
+				}
+				if (batch == null) {
+					contents.position(recordStart);
+					break;
+				}
+				contents.position(contents.position() + payloadBytes);
+				if (batch.size() > 0) {
+					store.append(batch);
+				}
+				records++;
+			}
+			if (contents.hasRemaining()) {
+				if (!last) {
+					throw new IOException(String.format("Damaged record at offset %d of %s", contents.position(),
+							segmentPath));
+				}
+				LOGGER.warn("Truncating {} bytes of incomplete records at the end of {}", contents.remaining(),
+						segmentPath);
+				channel.truncate(contents.position());
+				channel.force(false);
+			}
+			return records;
+		}
+	}
+
+	private static List<Long> listSegments(Path directory) throws IOException {
+		List<Long> segmentNumbers = new ArrayList<>();
+		try (Stream<Path> files = Files.list(directory)) {
+			files.forEach(file -> {
+				Matcher matcher = SEGMENT_NAME.matcher(file.getFileName().toString());
+				if (matcher.matches()) {
+					segmentNumbers.add(Long.parseLong(matcher.group(1)));
+				}
+			});
+		}
+		segmentNumbers.sort(null);
+		return segmentNumbers;
+	}
+
+	private static Path segmentPath(Path directory, long segmentNumber) {
+		return directory.resolve(String.format("readings-%020d.wal", segmentNumber));
+	}
+
+	private static FileChannel openSegment(Path segmentPath) throws IOException {
+		// the active segment always follows every existing one
+		return FileChannel.open(segmentPath, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+	}
+}
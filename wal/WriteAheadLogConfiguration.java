@@ -0,0 +1,35 @@
+package uk.tw.energy.wal;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import uk.tw.energy.store.MeterReadingSnapshot;
+import uk.tw.energy.store.MeterReadingStore;
+
+/**
+ * Creates the {@link ReadingLog} used when storing readings. Logging is off unless
+ * {@code energy.wal.enabled} is set, in which case the log in
+ * {@code energy.wal.directory} is replayed into the store before the application
+ * accepts requests, starting after the readings of the restored snapshot.
+ */
+@Configuration
+public class WriteAheadLogConfiguration {
+
+	@Bean
+	public ReadingLog readingLog(MeterReadingStore meterReadingStore, MeterReadingSnapshot restoredSnapshot,
+			@Value("${energy.wal.enabled:false}") boolean enabled,
+			@Value("${energy.wal.directory:data/wal}") String directory,
+			@Value("${energy.wal.durability:GROUP_COMMIT}") DurabilityMode durabilityMode,
+			@Value("${energy.wal.group-commit-interval-ms:5}") long groupCommitIntervalMillis,
+			@Value("${energy.wal.segment-size-bytes:67108864}") long segmentSizeBytes) throws IOException {
+		if (!enabled) {
+			return ReadingLog.NONE;
+		}
+		return WriteAheadLog.open(Path.of(directory), durabilityMode, groupCommitIntervalMillis, segmentSizeBytes,
+				meterReadingStore, restoredSnapshot.logPosition());
+	}
+}
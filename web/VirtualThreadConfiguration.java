@@ -0,0 +1,64 @@
+package uk.tw.energy.web;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * Chooses the threads requests are handled on. By default Tomcat's pool of platform
+ * threads handles them, so slow clients and large uploads can hold every thread of
+ * the pool while the CPU is idle. With {@code spring.threads.virtual.enabled} set,
+ * every request, and every streamed response body, runs on its own virtual thread
+ * instead.
+ * <p>
+ * The application is built for JDK 17 and virtual threads need JDK 21 at runtime,
+ * so their executor is looked up when this configuration is loaded. Setting the
+ * property on an older JDK fails the startup rather than silently using platform
+ * threads.
+ * <p>
+ * Code on the request path waits on {@link java.util.concurrent.locks.ReentrantLock}s
+ * and conditions rather than monitors, and takes no lock inside a
+ * {@link java.util.concurrent.ConcurrentHashMap} compute, so a waiting request
+ * releases its carrier thread.
+ */
+@Configuration
+@ConditionalOnProperty(name = "spring.threads.virtual.enabled", havingValue = "true")
+public class VirtualThreadConfiguration implements WebMvcConfigurer {
+	private static final Logger LOGGER = LoggerFactory.getLogger(VirtualThreadConfiguration.class);
+
+	@Bean
+	public TomcatProtocolHandlerCustomizer<?> requestExecutorCustomizer() {
+		ExecutorService executor = newVirtualThreadPerTaskExecutor();
+		LOGGER.info("Handling requests on virtual threads");
+		return protocolHandler -> protocolHandler.setExecutor(executor);
+	}
+
+	@Override
+	public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+		configurer.setTaskExecutor(new TaskExecutorAdapter(newVirtualThreadPerTaskExecutor()));
+	}
+
+	/**
+	 * @return executor starting a virtual thread per task
+	 * @throws IllegalStateException - if the JDK has no virtual threads
+	 */
+	static ExecutorService newVirtualThreadPerTaskExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (NoSuchMethodException e) {
+			throw new IllegalStateException(
+					String.format("Virtual threads need JDK 21 or later, running on %s", Runtime.version()), e);
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("Failed to create a virtual thread executor", e);
+		}
+	}
+}